@@ -0,0 +1,228 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The benchmarks' side of the analyzer (see benchmarks.Workload for why it is a
+ * separate class in the default package). Queries run against one analyzer loaded
+ * up front with records kept, which is what the GUI does.
+ */
+public class LogWorkload implements benchmarks.Workload {
+    private static final int SAMPLE_LINES = 100_000;
+
+    private final Path log;
+    private final String file;
+    private final boolean generated;
+    private final int threads = Runtime.getRuntime().availableProcessors();
+
+    private String[] sampleLines;
+    private LogAnalyzer analyzer;
+    private LogAnalyzer cachingAnalyzer;
+    private LocalDate firstDay;
+    private LocalDate lastDay;
+    private LocalDate midDay;
+    private Date weekStart;
+    private Date weekEnd;
+    private HashMap<String, Integer> visits;
+    private HashMap<String, ArrayList<String>> dayToIPs;
+    private String busiestDay;
+
+    public LogWorkload(String logFile, long lines, long seed) throws IOException {
+        generated = logFile == null || logFile.isEmpty();
+        if (generated) {
+            log = Files.createTempFile("synthetic-", ".log");
+            long start = System.nanoTime();
+            new SyntheticLog(seed).write(log, lines);
+            System.out.printf(Locale.ROOT, "Generated %d lines (seed %d, %.1f MB) in %.1f s%n",
+                    lines, seed, Files.size(log) / 1e6, (System.nanoTime() - start) / 1e9);
+        } else {
+            log = Paths.get(logFile);
+        }
+        file = log.toString();
+    }
+
+    @Override
+    public void loadSample() throws IOException {
+        // The parser is timed on lines already in memory, so file IO does not count
+        List<String> sample = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            String line;
+            while (sample.size() < SAMPLE_LINES && (line = reader.readLine()) != null) sample.add(line);
+        }
+        sampleLines = sample.toArray(new String[0]);
+    }
+
+    @Override
+    public void loadAnalyzers() throws IOException {
+        analyzer = newAnalyzer();
+        analyzer.getQueryCache().setCapacity(0); // The query scores measure the queries, not the cache
+        analyzer.readFileParallel(file, threads);
+        cachingAnalyzer = newAnalyzer();
+        cachingAnalyzer.readFileParallel(file, threads);
+
+        ZoneId zone = ZoneId.systemDefault();
+        firstDay = analyzer.getMinDate().toInstant().atZone(zone).toLocalDate();
+        lastDay = analyzer.getMaxDate().toInstant().atZone(zone).toLocalDate();
+        midDay = firstDay.plusDays((lastDay.toEpochDay() - firstDay.toEpochDay()) / 2);
+        weekStart = Date.from(midDay.atStartOfDay(zone).toInstant());
+        weekEnd = Date.from(midDay.plusDays(6).atStartOfDay(zone).toInstant());
+        visits = analyzer.countVisitsPerIP();
+        dayToIPs = analyzer.iPsForDays();
+        busiestDay = analyzer.dayWithMostIPVisits(dayToIPs);
+    }
+
+    // Readers print a line per file otherwise, which would end up in the benchmark output
+    private static LogAnalyzer newAnalyzer() {
+        LogAnalyzer a = new LogAnalyzer();
+        a.setVerbose(false);
+        return a;
+    }
+
+    @Override
+    public void parseEntry(Blackhole blackhole) {
+        for (String line : sampleLines) blackhole.consume(WebLogParser.parseEntry(line));
+    }
+
+    @Override
+    public void parsedLine(Blackhole blackhole) {
+        ParsedLine parsed = new ParsedLine();
+        for (String line : sampleLines) {
+            blackhole.consume(WebLogParser.parse(line, parsed));
+            blackhole.consume(parsed.getStatusCode());
+        }
+    }
+
+    @Override
+    public Object readFile() throws IOException {
+        LogAnalyzer a = newAnalyzer();
+        a.readFile(file);
+        return a;
+    }
+
+    @Override
+    public Object readFileAggregatesOnly() throws IOException {
+        LogAnalyzer a = newAnalyzer();
+        a.setRetainRecords(false);
+        a.readFile(file);
+        return a;
+    }
+
+    @Override
+    public Object readFileMapped() throws IOException {
+        LogAnalyzer a = newAnalyzer();
+        a.readFileMapped(file);
+        return a;
+    }
+
+    @Override
+    public Object readFileParallel() throws IOException {
+        LogAnalyzer a = newAnalyzer();
+        a.readFileParallel(file, threads);
+        return a;
+    }
+
+    @Override
+    public Object countUniqueIPs() {
+        return analyzer.countUniqueIPs();
+    }
+    @Override
+    public Object countVisitsPerIP() {
+        return analyzer.countVisitsPerIP();
+    }
+    @Override
+    public Object getVisitCounts() {
+        return analyzer.getVisitCounts();
+    }
+    @Override
+    public Object mostNumberVisitsByIP() {
+        return analyzer.mostNumberVisitsByIP(visits);
+    }
+    @Override
+    public Object iPsMostVisits() {
+        return analyzer.iPsMostVisits(visits);
+    }
+    @Override
+    public Object iPsForDays() {
+        return analyzer.iPsForDays();
+    }
+    @Override
+    public Object dayWithMostIPVisits() {
+        return analyzer.dayWithMostIPVisits(dayToIPs);
+    }
+    @Override
+    public Object iPsWithMostVisitsOnDay() {
+        return analyzer.iPsWithMostVisitsOnDay(dayToIPs, busiestDay);
+    }
+    @Override
+    public Object uniqueIPVisitsOnDay() {
+        return analyzer.uniqueIPVisitsOnDay(midDay);
+    }
+    @Override
+    public Object countUniqueIPsOnDay() {
+        return analyzer.countUniqueIPsOnDay(midDay);
+    }
+    @Override
+    public Object countUniqueIPsForDays() {
+        return analyzer.countUniqueIPsForDays(firstDay, lastDay);
+    }
+    @Override
+    public Object uniqueIPsInRange() {
+        return analyzer.uniqueIPsInRange(400, 599);
+    }
+    @Override
+    public Object countUniqueIPsInRange() {
+        return analyzer.countUniqueIPsInRange(400, 599);
+    }
+    @Override
+    public Object uniqueIPsInRangeWeek() {
+        return analyzer.uniqueIPsInRange(400, 599, weekStart, weekEnd);
+    }
+    @Override
+    public Object getUniqueIPsForDateRange() {
+        return analyzer.getUniqueIPsForDateRange(weekStart, weekEnd);
+    }
+    @Override
+    public Object getAllHigherThanNum() {
+        return analyzer.getAllHigherThanNum(499);
+    }
+    @Override
+    public Object cachedGetUniqueIPsForDateRange() {
+        return cachingAnalyzer.getUniqueIPsForDateRange(weekStart, weekEnd);
+    }
+    @Override
+    public Object cachedUniqueIPVisitsOnDay() {
+        return cachingAnalyzer.uniqueIPVisitsOnDay(midDay);
+    }
+    @Override
+    public Object getTopIPs() {
+        return analyzer.getTopIPs(10);
+    }
+    @Override
+    public Object getTopIPsOnDay() {
+        return analyzer.getTopIPsOnDay(midDay, 10);
+    }
+    @Override
+    public Object getPathTotals() {
+        return analyzer.getPathTotals();
+    }
+    @Override
+    public Object busiestHour() {
+        return analyzer.getTrafficRollup(TimeRollup.Granularity.HOUR).getBusiest();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (generated) Files.deleteIfExists(log);
+    }
+}
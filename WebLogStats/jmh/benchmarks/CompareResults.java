@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Prints how each score changed between two JMH result files (-rf json), e.g. from
+ * before and after a commit. Only the benchmark names, parameters and scores are
+ * read, which is all the comparison needs.
+ *
+ * Usage: java benchmarks.CompareResults BEFORE.json AFTER.json
+ */
+public class CompareResults {
+    private static final Pattern RESULT = Pattern.compile(
+            "\"benchmark\"\\s*:\\s*\"([^\"]+)\"(.*?)\"primaryMetric\"\\s*:\\s*\\{\\s*\"score\"\\s*:\\s*([-0-9.eE+]+|\"NaN\")"
+                    + ".*?\"scoreUnit\"\\s*:\\s*\"([^\"]+)\"", Pattern.DOTALL);
+    private static final Pattern PARAMS = Pattern.compile("\"params\"\\s*:\\s*\\{([^}]*)\\}");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java benchmarks.CompareResults BEFORE.json AFTER.json");
+            System.exit(2);
+        }
+        Map<String, Double> before = read(args[0], null);
+        Map<String, String> units = new LinkedHashMap<>();
+        Map<String, Double> after = read(args[1], units);
+
+        System.out.println("Compared with " + args[0] + " (lower is better):");
+        for (Map.Entry<String, Double> result : after.entrySet()) {
+            String name = result.getKey();
+            double now = result.getValue();
+            Double then = before.get(name);
+            if (then == null) {
+                System.out.printf(Locale.ROOT, "  %-60s %12.3f %-6s (new)%n", name, now, units.get(name));
+            } else {
+                System.out.printf(Locale.ROOT, "  %-60s %12.3f -> %12.3f %-6s %+6.1f%%%n",
+                        name, then, now, units.get(name), (now - then) / then * 100);
+            }
+        }
+    }
+
+    /**
+     * @return The score of every benchmark in the file, by name plus parameters.
+     */
+    private static Map<String, Double> read(String file, Map<String, String> units) throws IOException {
+        String text = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        Map<String, Double> scores = new LinkedHashMap<>();
+        Matcher matcher = RESULT.matcher(text);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            Matcher params = PARAMS.matcher(matcher.group(2));
+            if (params.find()) name += " {" + params.group(1).replaceAll("[\"\\s]", "") + "}";
+            String score = matcher.group(3);
+            scores.put(name, score.startsWith("\"") ? Double.NaN : Double.parseDouble(score));
+            if (units != null) units.put(name, matcher.group(4));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The parser on the first 100,000 lines of the log, held in memory: one operation
+ * parses all of them, so the score does not depend on the size of the log.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParseBenchmark extends WorkloadState {
+    @Override
+    protected void prepare() throws IOException {
+        workload.loadSample();
+    }
+
+    /** WebLogParser.parseEntry, which builds a LogEntry per line. */
+    @Benchmark
+    public void parseEntry(Blackhole blackhole) {
+        workload.parseEntry(blackhole);
+    }
+
+    /** WebLogParser.parse into one reused ParsedLine, as the readers do. */
+    @Benchmark
+    public void parsedLine(Blackhole blackhole) {
+        workload.parsedLine(blackhole);
+    }
+}
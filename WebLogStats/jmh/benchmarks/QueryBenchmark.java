@@ -0,0 +1,146 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * Every LogAnalyzer query, on one analyzer loaded with the log (records kept) with
+ * the query cache turned off, so a query is answered from scratch each time. The
+ * cached* benchmarks use a second analyzer with the cache on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryBenchmark extends WorkloadState {
+    @Override
+    protected void prepare() throws IOException {
+        workload.loadAnalyzers();
+    }
+
+    @Benchmark
+    public Object countUniqueIPs() {
+        return workload.countUniqueIPs();
+    }
+
+    @Benchmark
+    public Object countVisitsPerIP() {
+        return workload.countVisitsPerIP();
+    }
+
+    @Benchmark
+    public Object getVisitCounts() {
+        return workload.getVisitCounts();
+    }
+
+    @Benchmark
+    public Object mostNumberVisitsByIP() {
+        return workload.mostNumberVisitsByIP();
+    }
+
+    @Benchmark
+    public Object iPsMostVisits() {
+        return workload.iPsMostVisits();
+    }
+
+    @Benchmark
+    public Object iPsForDays() {
+        return workload.iPsForDays();
+    }
+
+    @Benchmark
+    public Object dayWithMostIPVisits() {
+        return workload.dayWithMostIPVisits();
+    }
+
+    /** On the day with the most IPs. */
+    @Benchmark
+    public Object iPsWithMostVisitsOnDay() {
+        return workload.iPsWithMostVisitsOnDay();
+    }
+
+    /** On the middle day of the log. */
+    @Benchmark
+    public Object uniqueIPVisitsOnDay() {
+        return workload.uniqueIPVisitsOnDay();
+    }
+
+    /** On the middle day of the log. */
+    @Benchmark
+    public Object countUniqueIPsOnDay() {
+        return workload.countUniqueIPsOnDay();
+    }
+
+    /** Over every day of the log. */
+    @Benchmark
+    public Object countUniqueIPsForDays() {
+        return workload.countUniqueIPsForDays();
+    }
+
+    /** Status codes 400-599. */
+    @Benchmark
+    public Object uniqueIPsInRange() {
+        return workload.uniqueIPsInRange();
+    }
+
+    /** Status codes 400-599. */
+    @Benchmark
+    public Object countUniqueIPsInRange() {
+        return workload.countUniqueIPsInRange();
+    }
+
+    /** Status codes 400-599 in the week from the middle day. */
+    @Benchmark
+    public Object uniqueIPsInRangeWeek() {
+        return workload.uniqueIPsInRangeWeek();
+    }
+
+    /** The week from the middle day. */
+    @Benchmark
+    public Object getUniqueIPsForDateRange() {
+        return workload.getUniqueIPsForDateRange();
+    }
+
+    /** Status codes above 499. */
+    @Benchmark
+    public Object getAllHigherThanNum() {
+        return workload.getAllHigherThanNum();
+    }
+
+    /** getUniqueIPsForDateRange answered from the query cache. */
+    @Benchmark
+    public Object cachedGetUniqueIPsForDateRange() {
+        return workload.cachedGetUniqueIPsForDateRange();
+    }
+
+    /** uniqueIPVisitsOnDay answered from the query cache. */
+    @Benchmark
+    public Object cachedUniqueIPVisitsOnDay() {
+        return workload.cachedUniqueIPVisitsOnDay();
+    }
+
+    /** The top 10. */
+    @Benchmark
+    public Object getTopIPs() {
+        return workload.getTopIPs();
+    }
+
+    /** The top 10 of the middle day. */
+    @Benchmark
+    public Object getTopIPsOnDay() {
+        return workload.getTopIPsOnDay();
+    }
+
+    @Benchmark
+    public Object getPathTotals() {
+        return workload.getPathTotals();
+    }
+
+    /** The busiest hour of the hourly traffic rollup. */
+    @Benchmark
+    public Object busiestHour() {
+        return workload.busiestHour();
+    }
+}
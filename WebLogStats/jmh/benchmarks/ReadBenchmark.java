@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * A whole read of the log into a new LogAnalyzer, through each reader. The file is
+ * in the page cache after the first iteration, so this measures parsing and
+ * aggregation rather than the disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReadBenchmark extends WorkloadState {
+    @Override
+    protected void prepare() {
+        // Every operation reads the file itself
+    }
+
+    @Benchmark
+    public Object readFile() throws IOException {
+        return workload.readFile();
+    }
+
+    /** readFile with records not retained (aggregates only). */
+    @Benchmark
+    public Object readFileAggregatesOnly() throws IOException {
+        return workload.readFileAggregatesOnly();
+    }
+
+    @Benchmark
+    public Object readFileMapped() throws IOException {
+        return workload.readFileMapped();
+    }
+
+    /** readFileParallel with one thread per processor. */
+    @Benchmark
+    public Object readFileParallel() throws IOException {
+        return workload.readFileParallel();
+    }
+}
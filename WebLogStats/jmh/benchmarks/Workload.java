@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.io.IOException;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * What the benchmarks time: the parser, the readers and the LogAnalyzer queries on
+ * one log (a synthetic one unless a file is given).
+ *
+ * JMH only accepts benchmarks in a named package, and a named package cannot see the
+ * analyzer's classes in the default package. So LogWorkload, next to them in the
+ * default package, does the work and the benchmarks call it through this interface.
+ * It has a single implementation, so the calls are inlined like direct ones; only
+ * create() uses reflection, once per trial.
+ */
+public interface Workload extends AutoCloseable {
+    /**
+     * @param log An existing log to time, or null/empty to generate one.
+     * @param lines Lines to generate (see SyntheticLog).
+     * @param seed Seed of the generated log.
+     */
+    static Workload create(String log, long lines, long seed) throws Exception {
+        return (Workload) Class.forName("LogWorkload").getConstructor(String.class, long.class, long.class)
+                .newInstance(log, lines, seed);
+    }
+
+    /** Reads the first 100,000 lines into memory, for the parse benchmarks. */
+    void loadSample() throws IOException;
+
+    /** Reads the whole log into the analyzers the query benchmarks ask. */
+    void loadAnalyzers() throws IOException;
+
+    // --- Parsing one pass over the sample ---
+    void parseEntry(Blackhole blackhole);
+    void parsedLine(Blackhole blackhole);
+
+    // --- Reading the whole log ---
+    Object readFile() throws IOException;
+    Object readFileAggregatesOnly() throws IOException;
+    Object readFileMapped() throws IOException;
+    Object readFileParallel() throws IOException;
+
+    // --- Queries (query cache off, except for the cached ones) ---
+    Object countUniqueIPs();
+    Object countVisitsPerIP();
+    Object getVisitCounts();
+    Object mostNumberVisitsByIP();
+    Object iPsMostVisits();
+    Object iPsForDays();
+    Object dayWithMostIPVisits();
+    Object iPsWithMostVisitsOnDay();
+    Object uniqueIPVisitsOnDay();
+    Object countUniqueIPsOnDay();
+    Object countUniqueIPsForDays();
+    Object uniqueIPsInRange();
+    Object countUniqueIPsInRange();
+    Object uniqueIPsInRangeWeek();
+    Object getUniqueIPsForDateRange();
+    Object getAllHigherThanNum();
+    Object cachedGetUniqueIPsForDateRange();
+    Object cachedUniqueIPVisitsOnDay();
+    Object getTopIPs();
+    Object getTopIPsOnDay();
+    Object getPathTotals();
+    Object busiestHour();
+
+    /** Deletes the generated log. */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The log every benchmark class runs on, made once per trial (and fork). Set with
+ * JMH's -p option, e.g. -p lines=10000000, or -p log=FILE to time an existing log.
+ * The defaults run one fork of 3 warm-up and 5 measured one-second iterations;
+ * -f, -wi, -i, -w and -r change them.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public abstract class WorkloadState {
+    @Param("1000000")
+    public long lines;
+    @Param("42")
+    public long seed;
+    @Param("")
+    public String log;
+
+    protected Workload workload;
+
+    @Setup(Level.Trial)
+    public void createWorkload() throws Exception {
+        workload = Workload.create(log, lines, seed);
+        prepare();
+    }
+
+    /** Loads what the benchmarks of the subclass need, outside the measurement. */
+    protected abstract void prepare() throws IOException;
+
+    @TearDown(Level.Trial)
+    public void closeWorkload() throws IOException {
+        workload.close();
+    }
+}
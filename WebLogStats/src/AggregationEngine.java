@@ -0,0 +1,38 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Runs any number of LogMetrics in a single pass. Callers register the metrics
+ * they need, call run once, then read each metric's results - instead of every
+ * statistic making its own trip over the data.
+ */
+public class AggregationEngine {
+    private final ArrayList<LogMetric> metrics = new ArrayList<>();
+
+    /**
+     * Adds a metric to the next run.
+     * @return The same metric, so results can be read from it after run().
+     */
+    public <M extends LogMetric> M register(M metric) {
+        metrics.add(metric);
+        return metric;
+    }
+
+    /**
+     * Feeds every (day, IP) cell of the aggregates to every registered metric.
+     * @param stats The aggregates collected while the log was read.
+     */
+    public void run(LogStats stats) {
+        LogMetric[] all = metrics.toArray(new LogMetric[0]);
+        for (Map.Entry<LocalDate, IntIntMap> day : stats.getDayIPCounts().entrySet()) {
+            LocalDate date = day.getKey();
+            day.getValue().forEach((ipId, visits) -> {
+                for (LogMetric metric : all) metric.accept(date, ipId, visits);
+            });
+        }
+        stats.getUndatedIPCounts().forEach((ipId, visits) -> {
+            for (LogMetric metric : all) metric.accept(null, ipId, visits);
+        });
+    }
+}
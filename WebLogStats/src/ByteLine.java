@@ -0,0 +1,55 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A CharSequence view over one line of raw bytes in a (usually memory-mapped)
+ * buffer. Each byte is one char, which is exact for the ASCII delimiters and
+ * digits WebLogParser looks at; only toString() decodes the bytes as UTF-8, so
+ * a String is built only for fields that are actually kept.
+ */
+public class ByteLine implements CharSequence {
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    public ByteLine() {
+    }
+
+    private ByteLine(ByteBuffer buffer, int offset, int length) {
+        set(buffer, offset, length);
+    }
+
+    /**
+     * Points this view at a new range, so one instance can be reused for every line.
+     * @param buffer The buffer holding the bytes (read with absolute gets; its position is not touched).
+     * @param offset Index of the first byte of the line.
+     * @param length Number of bytes in the line, not counting the line terminator.
+     */
+    public void set(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(offset + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteLine(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
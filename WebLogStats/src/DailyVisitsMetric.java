@@ -0,0 +1,78 @@
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-day totals: visits, unique IPs, and the most frequent visitor(s) of each
+ * day. Everything the "daily activity" part of the summary needs comes out of one
+ * pass, for every day at once.
+ */
+public class DailyVisitsMetric implements LogMetric {
+    /** Totals for a single day. */
+    public static class DayTotals {
+        private int visits = 0;
+        private int uniqueIPs = 0;
+        private int maxVisitsByOneIP = 0;
+        private IntSet topIPs = new IntSet();
+
+        public int getVisits() {
+            return visits;
+        }
+        public int getUniqueIPs() {
+            return uniqueIPs;
+        }
+        public int getMaxVisitsByOneIP() {
+            return maxVisitsByOneIP;
+        }
+        /** @return Ids of the IP(s) with the most visits that day. */
+        public IntSet getTopIPs() {
+            return topIPs;
+        }
+    }
+
+    private final TreeMap<LocalDate, DayTotals> days = new TreeMap<>();
+
+    @Override
+    public void accept(LocalDate day, int ipId, int visits) {
+        if (day == null) return; // Undated entries do not belong to any day
+        DayTotals totals = days.get(day);
+        if (totals == null) {
+            totals = new DayTotals();
+            days.put(day, totals);
+        }
+        // Each (day, IP) cell arrives exactly once, so visits is that IP's full count for the day
+        totals.visits += visits;
+        totals.uniqueIPs++;
+        if (visits > totals.maxVisitsByOneIP) {
+            totals.maxVisitsByOneIP = visits;
+            totals.topIPs = new IntSet();
+        }
+        if (visits == totals.maxVisitsByOneIP) totals.topIPs.add(ipId);
+    }
+
+    public int getDayCount() {
+        return days.size();
+    }
+
+    /**
+     * @return The totals for one day, or null if nothing was logged that day.
+     */
+    public DayTotals get(LocalDate day) {
+        return days.get(day);
+    }
+
+    /**
+     * @return The earliest day with the most visits, or null if there are no dated entries.
+     */
+    public LocalDate getBusiestDay() {
+        LocalDate busiest = null;
+        int most = -1;
+        for (Map.Entry<LocalDate, DayTotals> entry : days.entrySet()) {
+            if (entry.getValue().visits > most) {
+                most = entry.getValue().visits;
+                busiest = entry.getKey();
+            }
+        }
+        return busiest;
+    }
+}
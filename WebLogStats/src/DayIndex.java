@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Groups RecordStore row numbers by the calendar day they were logged on, so a
+ * per-day or date-range query can jump straight to the rows of the days it needs
+ * instead of scanning the whole store. Built while the file is read.
+ */
+public class DayIndex {
+    private final TreeMap<LocalDate, IntColumn> rowsByDay = new TreeMap<>();
+    // Consecutive log lines are almost always on the same day
+    private LocalDate lastDay;
+    private IntColumn lastRows;
+
+    /**
+     * Records that a row was logged on the given day.
+     */
+    public void add(LocalDate day, int row) {
+        if (!day.equals(lastDay)) {
+            lastRows = rowsByDay.get(day);
+            if (lastRows == null) {
+                lastRows = new IntColumn();
+                rowsByDay.put(day, lastRows);
+            }
+            lastDay = day;
+        }
+        lastRows.add(row);
+    }
+
+    /**
+     * Adds the rows of an index built for a later part of the file.
+     * @param later The other index.
+     * @param rowOffset How many rows came before the other index's row 0.
+     */
+    public void merge(DayIndex later, int rowOffset) {
+        for (Map.Entry<LocalDate, IntColumn> day : later.rowsByDay.entrySet()) {
+            IntColumn from = day.getValue();
+            for (int i = 0; i < from.size(); i++) add(day.getKey(), from.get(i) + rowOffset);
+        }
+    }
+
+    /**
+     * @return The rows logged on a day (in file order), or null if there are none.
+     */
+    public IntColumn rowsOn(LocalDate day) {
+        return rowsByDay.get(day);
+    }
+
+    public int getDayCount() {
+        return rowsByDay.size();
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        out.writeInt(rowsByDay.size());
+        for (Map.Entry<LocalDate, IntColumn> day : rowsByDay.entrySet()) {
+            out.writeLong(day.getKey().toEpochDay());
+            day.getValue().writeTo(out);
+        }
+    }
+
+    static DayIndex readFrom(SnapshotReader in) throws IOException {
+        DayIndex index = new DayIndex();
+        int days = in.readLength();
+        for (int i = 0; i < days; i++) {
+            LocalDate day = LocalDate.ofEpochDay(in.readLong());
+            index.rowsByDay.put(day, IntColumn.readFrom(in));
+        }
+        return index;
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The busiest clients and request paths of a log, tracked while it is read with
+ * fixed-size SpaceSaving summaries: one for IPs, one for paths, and a smaller one
+ * of IPs per day. Memory does not depend on how many distinct IPs or paths there
+ * are, which is what matters when hunting abusive clients in a flood.
+ */
+public class HeavyHitters {
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final int DEFAULT_DAY_CAPACITY = 100;
+
+    private final int dayCapacity;
+    private final SpaceSaving ips;
+    private final SpaceSaving paths;
+    private final TreeMap<LocalDate, SpaceSaving> dayIPs = new TreeMap<>();
+    // Consecutive log lines are almost always on the same day
+    private LocalDate lastDay;
+    private SpaceSaving lastDayIPs;
+
+    public HeavyHitters() {
+        this(DEFAULT_CAPACITY, DEFAULT_DAY_CAPACITY);
+    }
+
+    /**
+     * @param capacity Counters for the IP and path summaries.
+     * @param dayCapacity Counters for each day's IP summary.
+     */
+    public HeavyHitters(int capacity, int dayCapacity) {
+        this(new SpaceSaving(capacity), new SpaceSaving(capacity), dayCapacity);
+    }
+
+    private HeavyHitters(SpaceSaving ips, SpaceSaving paths, int dayCapacity) {
+        this.ips = ips;
+        this.paths = paths;
+        this.dayCapacity = dayCapacity;
+    }
+
+    /**
+     * Counts one request.
+     * @param line The log line.
+     * @param ipStart Start of the IP in the line.
+     * @param ipEnd End of the IP in the line.
+     * @param ipHash IpDictionary.hash of the IP.
+     * @param pathStart Start of the request path (without query string) in the line.
+     * @param pathEnd End of the request path.
+     * @param day The local day of the request, or null if it has no time.
+     */
+    public void add(CharSequence line, int ipStart, int ipEnd, long ipHash, int pathStart, int pathEnd, LocalDate day) {
+        ips.add(ipHash, line, ipStart, ipEnd);
+        paths.add(HyperLogLog.hashChars(line, pathStart, pathEnd), line, pathStart, pathEnd);
+
+        if (day == null) return;
+        if (!day.equals(lastDay)) {
+            lastDayIPs = dayIPs.get(day);
+            if (lastDayIPs == null) {
+                lastDayIPs = new SpaceSaving(dayCapacity);
+                dayIPs.put(day, lastDayIPs);
+            }
+            lastDay = day;
+        }
+        lastDayIPs.add(ipHash, line, ipStart, ipEnd);
+    }
+
+    /**
+     * Adds the summaries of another part of the log (e.g. another chunk or file).
+     */
+    public void merge(HeavyHitters other) {
+        ips.merge(other.ips);
+        paths.merge(other.paths);
+        for (Map.Entry<LocalDate, SpaceSaving> day : other.dayIPs.entrySet()) {
+            SpaceSaving mine = dayIPs.get(day.getKey());
+            if (mine == null) {
+                mine = new SpaceSaving(dayCapacity);
+                dayIPs.put(day.getKey(), mine);
+            }
+            mine.merge(day.getValue());
+        }
+        lastDay = null;
+    }
+
+    public SpaceSaving getIPs() {
+        return ips;
+    }
+    public SpaceSaving getPaths() {
+        return paths;
+    }
+    /** @return The IP summary of one day, or null if nothing was logged that day. */
+    public SpaceSaving getIPsOn(LocalDate day) {
+        return dayIPs.get(day);
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        out.writeInt(dayCapacity);
+        ips.writeTo(out);
+        paths.writeTo(out);
+        out.writeInt(dayIPs.size());
+        for (Map.Entry<LocalDate, SpaceSaving> day : dayIPs.entrySet()) {
+            out.writeLong(day.getKey().toEpochDay());
+            day.getValue().writeTo(out);
+        }
+    }
+
+    static HeavyHitters readFrom(SnapshotReader in) throws IOException {
+        int dayCapacity = in.readInt();
+        SpaceSaving ips = SpaceSaving.readFrom(in);
+        SpaceSaving paths = SpaceSaving.readFrom(in);
+        HeavyHitters hitters = new HeavyHitters(ips, paths, dayCapacity);
+        int days = in.readLength();
+        for (int i = 0; i < days; i++) {
+            LocalDate day = LocalDate.ofEpochDay(in.readLong());
+            hitters.dayIPs.put(day, SpaceSaving.readFrom(in));
+        }
+        return hitters;
+    }
+}
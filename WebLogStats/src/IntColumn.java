@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A growable list of ints stored in fixed-size chunks, so growing never copies
+ * more than one chunk and a multi-million-row column is not one giant array.
+ * The first chunk starts small and doubles, so tiny logs stay tiny.
+ */
+public class IntColumn {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS; // 65536 values (256 KB) per chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int FIRST_CHUNK_SIZE = 1024;
+
+    private int[][] chunks = new int[4][];
+    private int size = 0;
+
+    public void add(int value) {
+        int chunk = size >>> CHUNK_BITS;
+        int index = size & CHUNK_MASK;
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        int[] target = chunks[chunk];
+        if (target == null) {
+            target = new int[chunk == 0 ? FIRST_CHUNK_SIZE : CHUNK_SIZE];
+            chunks[chunk] = target;
+        } else if (index == target.length) {
+            // Only the first chunk is ever smaller than CHUNK_SIZE
+            target = Arrays.copyOf(target, Math.min(CHUNK_SIZE, target.length * 2));
+            chunks[chunk] = target;
+        }
+        target[index] = value;
+        size++;
+    }
+
+    public int get(int row) {
+        return chunks[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    public void set(int row, int value) {
+        chunks[row >>> CHUNK_BITS][row & CHUNK_MASK] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Approximate heap used by the values, for reporting.
+     */
+    public long heapBytes() {
+        long bytes = 16L + 8L * chunks.length;
+        for (int[] chunk : chunks) {
+            if (chunk != null) bytes += 16L + 4L * chunk.length;
+        }
+        return bytes;
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        out.writeInt(size);
+        for (int chunk = 0; (long) chunk * CHUNK_SIZE < size; chunk++) {
+            out.writeInts(chunks[chunk], 0, Math.min(CHUNK_SIZE, size - chunk * CHUNK_SIZE));
+        }
+    }
+
+    static IntColumn readFrom(SnapshotReader in) throws IOException {
+        IntColumn column = new IntColumn();
+        int size = in.readLength();
+        int chunkCount = (size + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+        column.chunks = new int[Math.max(4, chunkCount)][];
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int n = Math.min(CHUNK_SIZE, size - chunk * CHUNK_SIZE);
+            // Only a lone first chunk may be short, as in add()
+            int[] values = new int[chunkCount == 1 ? Math.max(FIRST_CHUNK_SIZE, n) : CHUNK_SIZE];
+            in.readInts(values, 0, n);
+            column.chunks[chunk] = values;
+        }
+        column.size = size;
+        return column;
+    }
+}
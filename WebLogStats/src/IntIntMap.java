@@ -0,0 +1,201 @@
+import java.io.IOException;
+
+/**
+ * A map from int keys to int values using open addressing (linear probing) over
+ * two plain arrays, so counting with it never boxes an Integer. Any int can be a
+ * key; key 0 is kept outside the table because 0 marks an empty slot.
+ */
+public class IntIntMap {
+    /** Receives one key/value pair at a time from forEach. */
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    private static final int FREE = 0;
+
+    private int[] keys;
+    private int[] values;
+    private int size = 0; // Entries in the table (not counting key 0)
+    private boolean hasZeroKey = false;
+    private int zeroValue;
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize How many entries to make room for before the first resize.
+     */
+    public IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * @return The value for key, or defaultValue if the key is not present.
+     */
+    public int get(int key, int defaultValue) {
+        if (key == FREE) return hasZeroKey ? zeroValue : defaultValue;
+        int mask = keys.length - 1;
+        for (int slot = spread(key) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return values[slot];
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE) return hasZeroKey;
+        int mask = keys.length - 1;
+        for (int slot = spread(key) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return true;
+        }
+        return false;
+    }
+
+    public void put(int key, int value) {
+        if (key == FREE) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int slot = findSlot(key);
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size * 2 > keys.length) resize();
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    /**
+     * Adds delta to the value for key (a missing key counts as 0).
+     * @return The new value.
+     */
+    public int addTo(int key, int delta) {
+        if (key == FREE) {
+            zeroValue = (hasZeroKey ? zeroValue : 0) + delta;
+            hasZeroKey = true;
+            return zeroValue;
+        }
+        int slot = findSlot(key);
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            values[slot] = delta;
+            if (++size * 2 > keys.length) resize();
+            return delta;
+        }
+        return values[slot] += delta;
+    }
+
+    /**
+     * Removes a key. Later entries of its probe run are shifted back into the gap,
+     * so lookups never stop early and no tombstones build up.
+     * @return true if the key was present.
+     */
+    public boolean remove(int key) {
+        if (key == FREE) {
+            boolean had = hasZeroKey;
+            hasZeroKey = false;
+            return had;
+        }
+        int mask = keys.length - 1;
+        int slot = spread(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == FREE) return false;
+            slot = (slot + 1) & mask;
+        }
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = spread(keys[next]) & mask;
+            // The entry may move into the gap only if the gap lies between its home slot and where it is
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = FREE;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Calls the consumer for every entry, in no particular order.
+     */
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) consumer.accept(FREE, zeroValue);
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) consumer.accept(keys[slot], values[slot]);
+        }
+    }
+
+    /**
+     * @return The largest value in the map, or 0 if it is empty.
+     */
+    public int maxValue() {
+        int max = hasZeroKey ? zeroValue : 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE && values[slot] > max) max = values[slot];
+        }
+        return max;
+    }
+
+    private int findSlot(int key) {
+        int mask = keys.length - 1;
+        int slot = spread(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) continue;
+            int slot = spread(oldKeys[i]) & mask;
+            while (keys[slot] != FREE) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    static int spread(int key) {
+        int h = key * 0x9E3779B9; // Fibonacci hashing; sequential ids spread across the table
+        return h ^ (h >>> 16);
+    }
+
+    // --- Snapshot support (see LogSnapshot): the table is saved as is, so loading does not rehash ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        out.writeInt(size);
+        out.writeBoolean(hasZeroKey);
+        out.writeInt(zeroValue);
+        out.writeIntArray(keys);
+        out.writeIntArray(values);
+    }
+
+    static IntIntMap readFrom(SnapshotReader in) throws IOException {
+        IntIntMap map = new IntIntMap(1);
+        map.size = in.readLength();
+        map.hasZeroKey = in.readBoolean();
+        map.zeroValue = in.readInt();
+        map.keys = in.readIntArray();
+        map.values = in.readIntArray();
+        if (map.keys.length != map.values.length || Integer.bitCount(map.keys.length) != 1 || map.size >= map.keys.length) {
+            throw new IOException("Snapshot is damaged (bad map table)");
+        }
+        return map;
+    }
+}
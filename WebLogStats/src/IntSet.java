@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of ints using open addressing over a plain array, so membership tests
+ * never box. Any int can be stored; 0 is tracked separately because it marks an
+ * empty slot.
+ */
+public class IntSet {
+    private static final int FREE = 0;
+
+    private int[] keys;
+    private int size = 0; // Keys in the table (not counting 0)
+    private boolean hasZero = false;
+
+    public IntSet() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize How many values to make room for before the first resize.
+     */
+    public IntSet(int expectedSize) {
+        keys = new int[Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1];
+    }
+
+    /**
+     * @return true if the value was not already in the set.
+     */
+    public boolean add(int value) {
+        if (value == FREE) {
+            boolean added = !hasZero;
+            hasZero = true;
+            return added;
+        }
+        int mask = keys.length - 1;
+        int slot = IntIntMap.spread(value) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == value) return false;
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = value;
+        if (++size * 2 > keys.length) resize();
+        return true;
+    }
+
+    public boolean contains(int value) {
+        if (value == FREE) return hasZero;
+        int mask = keys.length - 1;
+        for (int slot = IntIntMap.spread(value) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+            if (keys[slot] == value) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds every value of another set to this one.
+     */
+    public void addAll(IntSet other) {
+        other.forEach(this::add);
+    }
+
+    public int size() {
+        return size + (hasZero ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Calls the consumer for every value, in no particular order.
+     */
+    public void forEach(IntConsumer consumer) {
+        if (hasZero) consumer.accept(FREE);
+        for (int key : keys) {
+            if (key != FREE) consumer.accept(key);
+        }
+    }
+
+    private void resize() {
+        int[] old = keys;
+        keys = new int[old.length * 2];
+        int mask = keys.length - 1;
+        for (int key : old) {
+            if (key == FREE) continue;
+            int slot = IntIntMap.spread(key) & mask;
+            while (keys[slot] != FREE) slot = (slot + 1) & mask;
+            keys[slot] = key;
+        }
+    }
+
+    // --- Snapshot support (see LogSnapshot): the table is saved as is, so loading does not rehash ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        out.writeInt(size);
+        out.writeBoolean(hasZero);
+        out.writeIntArray(keys);
+    }
+
+    static IntSet readFrom(SnapshotReader in) throws IOException {
+        IntSet set = new IntSet(1);
+        set.size = in.readLength();
+        set.hasZero = in.readBoolean();
+        set.keys = in.readIntArray();
+        if (Integer.bitCount(set.keys.length) != 1 || set.size >= set.keys.length) {
+            throw new IOException("Snapshot is damaged (bad set table)");
+        }
+        return set;
+    }
+}
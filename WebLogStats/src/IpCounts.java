@@ -0,0 +1,46 @@
+/**
+ * Visit counts per IP, kept as parallel arrays of IP ids and counts. The address
+ * text is only built when a caller asks for it, which is normally when the
+ * counts are displayed.
+ */
+public class IpCounts {
+    private final IpDictionary ips;
+    private final int[] ipIds;
+    private final int[] counts;
+
+    public IpCounts(IpDictionary ips, int[] ipIds, int[] counts) {
+        this.ips = ips;
+        this.ipIds = ipIds;
+        this.counts = counts;
+    }
+
+    /**
+     * @return The number of distinct IPs.
+     */
+    public int size() {
+        return ipIds.length;
+    }
+    public boolean isEmpty() {
+        return ipIds.length == 0;
+    }
+    public int getIpId(int index) {
+        return ipIds[index];
+    }
+    public String getIpAddress(int index) {
+        return ips.get(ipIds[index]);
+    }
+    public int getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * @return The highest count, or 0 if there are no IPs.
+     */
+    public int getMaxCount() {
+        int max = 0;
+        for (int count : counts) {
+            if (count > max) max = count;
+        }
+        return max;
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Assigns dense int ids (0, 1, 2, ...) to client IP addresses. Dotted IPv4
+ * addresses are parsed into their 32-bit value and looked up in an IntIntMap, so
+ * no String is ever built for them during ingestion; anything else (IPv6, host
+ * names) falls back to a StringDictionary side table. Because ids are dense,
+ * per-IP counts can live in plain int arrays, and the text of an address is only
+ * produced when it is displayed.
+ */
+public class IpDictionary {
+    // IPv4 value -> id
+    private final IntIntMap v4Ids;
+    // Non-IPv4 text -> side id, and side id -> id
+    private final StringDictionary others;
+    private final IntColumn otherIds;
+    // Per id: the IPv4 value, or the side id for non-IPv4 addresses
+    private final IntColumn values;
+    // The ids that are not IPv4 (a bit each, and none at all for a log of IPv4 addresses only)
+    private final BitSet notV4;
+
+    public IpDictionary() {
+        this(new IntIntMap(), new StringDictionary(), new IntColumn(), new IntColumn(), new BitSet());
+    }
+
+    private IpDictionary(IntIntMap v4Ids, StringDictionary others, IntColumn otherIds, IntColumn values, BitSet notV4) {
+        this.v4Ids = v4Ids;
+        this.others = others;
+        this.otherIds = otherIds;
+        this.values = values;
+        this.notV4 = notV4;
+    }
+
+    /**
+     * Returns the id for the address in [start, end) of s, adding it if new.
+     */
+    public int idOf(CharSequence s, int start, int end) {
+        long v4 = parseIPv4(s, start, end);
+        if (v4 >= 0) return idOfV4((int) v4);
+        int side = others.idOf(s, start, end);
+        return side < otherIds.size() ? otherIds.get(side) : addId(side, false);
+    }
+
+    /**
+     * Returns the id for the given address, adding it if new.
+     */
+    public int idOf(String ip) {
+        return idOf(ip, 0, ip.length());
+    }
+
+    private int idOfV4(int address) {
+        int id = v4Ids.get(address, -1);
+        if (id < 0) {
+            id = addId(address, true);
+            v4Ids.put(address, id);
+        }
+        return id;
+    }
+
+    private int addId(int value, boolean v4) {
+        int id = values.size();
+        values.add(value);
+        if (!v4) {
+            notV4.set(id);
+            otherIds.add(id);
+        }
+        return id;
+    }
+
+    /**
+     * Builds the display text for an id. This allocates, so call it only when
+     * showing results.
+     */
+    public String get(int id) {
+        int value = values.get(id);
+        return notV4.get(id) ? others.get(value) : formatIPv4(value);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Maps every id of another dictionary to the id of the same address here,
+     * adding addresses that are new.
+     * @return An array where index = the other dictionary's id, value = this dictionary's id.
+     */
+    public int[] remapFrom(IpDictionary other) {
+        int[] map = new int[other.size()];
+        for (int id = 0; id < map.length; id++) {
+            int value = other.values.get(id);
+            map[id] = other.notV4.get(id) ? idOf(other.others.get(value)) : idOfV4(value);
+        }
+        return map;
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        v4Ids.writeTo(out);
+        others.writeTo(out);
+        otherIds.writeTo(out);
+        values.writeTo(out);
+        long[] words = notV4.toLongArray();
+        out.writeInt(words.length);
+        out.writeLongs(words, 0, words.length);
+    }
+
+    static IpDictionary readFrom(SnapshotReader in) throws IOException {
+        IntIntMap v4Ids = IntIntMap.readFrom(in);
+        StringDictionary others = StringDictionary.readFrom(in);
+        IntColumn otherIds = IntColumn.readFrom(in);
+        IntColumn values = IntColumn.readFrom(in);
+        long[] words = new long[in.readLength()];
+        in.readLongs(words, 0, words.length);
+        return new IpDictionary(v4Ids, others, otherIds, values, BitSet.valueOf(words));
+    }
+
+    /**
+     * Hashes the address in [start, end) of s for a HyperLogLog sketch, without
+     * assigning it an id. Equal address text always gives the same hash, whichever
+     * reader the line came from.
+     */
+    static long hash(CharSequence s, int start, int end) {
+        long v4 = parseIPv4(s, start, end);
+        if (v4 >= 0) return HyperLogLog.mix(v4);
+        return HyperLogLog.hashChars(s, start, end); // IPv6, host names, ...
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 address in canonical form (no leading zeros).
+     * @return The address as an unsigned 32-bit value, or -1 if the text is not one.
+     */
+    static long parseIPv4(CharSequence s, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int i = start;
+        while (octets < 4) {
+            int digitsStart = i;
+            int octet = 0;
+            while (i < end && i - digitsStart < 3) {
+                int digit = s.charAt(i) - '0';
+                if (digit < 0 || digit > 9) break;
+                octet = octet * 10 + digit;
+                i++;
+            }
+            int digits = i - digitsStart;
+            // Reject "01" etc. so that formatting the value gives back the exact same text
+            if (digits == 0 || octet > 255 || (digits > 1 && s.charAt(digitsStart) == '0')) return -1;
+            address = (address << 8) | octet;
+            octets++;
+            if (octets < 4) {
+                if (i >= end || s.charAt(i) != '.') return -1;
+                i++;
+            }
+        }
+        return i == end ? address : -1;
+    }
+
+    static String formatIPv4(int address) {
+        return ((address >>> 24) & 0xff) + "." + ((address >>> 16) & 0xff) + "."
+                + ((address >>> 8) & 0xff) + "." + (address & 0xff);
+    }
+}
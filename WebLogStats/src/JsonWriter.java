@@ -0,0 +1,108 @@
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Turns a tree of Maps, Collections, arrays, Strings, numbers and booleans into
+ * indented JSON text, for reports and result files that other tools read. Maps
+ * keep their iteration order, so a LinkedHashMap gives a stable layout.
+ */
+public class JsonWriter {
+    private JsonWriter() {
+    }
+
+    /**
+     * @return The value as JSON, indented by four spaces per level.
+     */
+    public static String toJson(Object value) {
+        StringBuilder json = new StringBuilder();
+        append(json, value, "");
+        return json.append('\n').toString();
+    }
+
+    private static void append(StringBuilder json, Object value, String indent) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            if (map.isEmpty()) {
+                json.append("{}");
+                return;
+            }
+            json.append("{\n");
+            int i = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                json.append(indent).append("    ");
+                appendString(json, String.valueOf(entry.getKey()));
+                json.append(" : ");
+                append(json, entry.getValue(), indent + "    ");
+                json.append(++i < map.size() ? ",\n" : "\n");
+            }
+            json.append(indent).append('}');
+        } else if (value instanceof Collection) {
+            appendArray(json, ((Collection<?>) value).toArray(), indent);
+        } else if (value instanceof Object[]) {
+            appendArray(json, (Object[]) value, indent);
+        } else if (value instanceof double[]) {
+            double[] numbers = (double[]) value;
+            Object[] boxed = new Object[numbers.length];
+            for (int i = 0; i < numbers.length; i++) boxed[i] = numbers[i];
+            appendArray(json, boxed, indent);
+        } else if (value instanceof int[]) {
+            int[] numbers = (int[]) value;
+            Object[] boxed = new Object[numbers.length];
+            for (int i = 0; i < numbers.length; i++) boxed[i] = numbers[i];
+            appendArray(json, boxed, indent);
+        } else if (value instanceof long[]) {
+            long[] numbers = (long[]) value;
+            Object[] boxed = new Object[numbers.length];
+            for (int i = 0; i < numbers.length; i++) boxed[i] = numbers[i];
+            appendArray(json, boxed, indent);
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            // JSON has no NaN or infinity; JMH writes them as strings too
+            if (Double.isNaN(number) || Double.isInfinite(number)) appendString(json, String.valueOf(number));
+            else json.append(number);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else {
+            appendString(json, value.toString());
+        }
+    }
+
+    /** Short arrays of plain values stay on one line; anything else gets one element per line. */
+    private static void appendArray(StringBuilder json, Object[] values, String indent) {
+        boolean flat = values.length <= 16;
+        for (Object value : values) {
+            if (value instanceof Map || value instanceof Collection || value instanceof Object[]) flat = false;
+        }
+        json.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (flat) {
+                if (i > 0) json.append(", ");
+            } else {
+                json.append(i > 0 ? ",\n" : "\n").append(indent).append("    ");
+            }
+            append(json, values[i], indent + "    ");
+        }
+        if (!flat && values.length > 0) json.append('\n').append(indent);
+        json.append(']');
+    }
+
+    private static void appendString(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+                    else json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
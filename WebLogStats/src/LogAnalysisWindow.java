@@ -1,7 +1,13 @@
 import javax.swing.*;
 import java.awt.*;
 import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.List; // Not java.awt.List
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class LogAnalysisWindow extends JFrame {
 
@@ -30,6 +36,69 @@ public class LogAnalysisWindow extends JFrame {
     private JTextArea otherResultsTextArea;
 
     private static final Map<String, Integer> MONTH_MAP = createMonthMap();
+    // Long IP lists are shown this many lines at a time while they are still being written out
+    private static final int LINES_PER_UPDATE = 1000;
+
+    // Queries run here, one at a time, so the EDT never waits on the log
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "LogAnalysisWindow worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The query filling each results area, if one is running (only touched on the EDT)
+    private QueryWorker dateQuery;
+    private QueryWorker statusQuery;
+
+    /**
+     * A query run on the worker thread whose text is appended to one results area
+     * as it is published, so the first lines show up before a long list is complete.
+     * The area shows a "please wait" line until the first text arrives.
+     */
+    private abstract class QueryWorker extends SwingWorker<Void, String> {
+        private final JTextArea output;
+        private boolean started = false; // Only used on the EDT
+
+        QueryWorker(JTextArea output, String waitMessage) {
+            this.output = output;
+            output.setText(waitMessage + " ...\n");
+        }
+
+        /** Publishes the lines in blocks; stops early if the query was replaced by a newer one. */
+        void publishLines(List<String> lines) {
+            StringBuilder block = new StringBuilder();
+            for (int i = 0; i < lines.size() && !isCancelled(); i++) {
+                block.append(lines.get(i)).append("\n");
+                if ((i + 1) % LINES_PER_UPDATE == 0) {
+                    publish(block.toString());
+                    block.setLength(0);
+                }
+            }
+            if (block.length() > 0) publish(block.toString());
+        }
+
+        @Override
+        protected void process(List<String> parts) { // On the EDT
+            if (isCancelled()) return; // A newer query owns the text area now
+            if (!started) output.setText(""); // Replace the wait message
+            started = true;
+            for (String part : parts) output.append(part);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) return;
+            if (!started) output.setText("");
+            try {
+                get();
+            } catch (InterruptedException e) {
+                // Cannot happen: done() only runs once the work is over
+            } catch (ExecutionException e) {
+                System.err.println("ERROR during analysis: " + e.getCause());
+                output.append("\n(Analysis failed: " + e.getCause().getMessage() + ")\n");
+            }
+            output.setCaretPosition(0);
+        }
+    }
 
     public LogAnalysisWindow(LogAnalyzer logAnalyzer, String filename, String rangeResults) {
         this.analyzer = logAnalyzer;
@@ -220,22 +289,30 @@ public class LogAnalysisWindow extends JFrame {
         SimpleDateFormat displayFormat = new SimpleDateFormat("MMM dd, yyyy");
         String rangeDisplay = displayFormat.format(startDate) + " to " + displayFormat.format(endDate);
 
-        ArrayList<String> ipsInRange = analyzer.getUniqueIPsForDateRange(startDate, endDate);
-
-        StringBuilder resultText = new StringBuilder();
-        resultText.append("Unique IP visits from ").append(rangeDisplay).append(":\n");
-        resultText.append("-------------------------------------------\n");
-        resultText.append("Count: ").append(ipsInRange.size()).append("\n\n");
-        if (ipsInRange.isEmpty()) {
-            resultText.append("(No visits recorded for this date range)");
-        } else {
-            for (String ip : ipsInRange) {
-                resultText.append(ip).append("\n");
+        startDateQuery(new QueryWorker(dateResultsTextArea, "Analyzing " + rangeDisplay) {
+            @Override
+            protected Void doInBackground() {
+                ArrayList<String> ipsInRange = analyzer.getUniqueIPsForDateRange(startDate, endDate);
+
+                StringBuilder resultText = new StringBuilder();
+                resultText.append("Unique IP visits from ").append(rangeDisplay).append(":\n");
+                resultText.append("-------------------------------------------\n");
+                resultText.append("Count: ").append(ipsInRange.size()).append("\n\n");
+                if (ipsInRange.isEmpty()) {
+                    resultText.append("(No visits recorded for this date range)");
+                }
+                publish(resultText.toString()); // The count first, then the IPs
+                publishLines(ipsInRange);
+                return null;
             }
-        }
+        });
+    }
 
-        dateResultsTextArea.setText(resultText.toString());
-        dateResultsTextArea.setCaretPosition(0);
+    // Replaces the text of the date results area with a new query, cancelling the previous one
+    private void startDateQuery(QueryWorker query) {
+        if (dateQuery != null) dateQuery.cancel(false);
+        dateQuery = query;
+        worker.execute(query);
     }
 
     private void analyzeSingleDay() {
@@ -249,29 +326,44 @@ public class LogAnalysisWindow extends JFrame {
         }
 
         String formatted = String.format("%s %02d", monthStr, day);
-        ArrayList<String> ips = analyzer.uniqueIPVisitsOnDay(formatted);
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("Unique IP visits on ").append(formatted).append(":\n");
-        sb.append("--------------------------------------\n");
-        sb.append("Count: ").append(ips.size()).append("\n\n");
-        if (ips.isEmpty()) {
-            sb.append("(No visits recorded)");
-        } else {
-            for (String ip : ips) {
-                sb.append(ip).append("\n");
-            }
+        LocalDate selectedDay;
+        try {
+            selectedDay = LocalDate.of(year, MONTH_MAP.get(monthStr) + 1, day);
+        } catch (DateTimeException e) {
+            dateResultsTextArea.setText("Invalid date: " + formatted + ", " + year);
+            return;
         }
-
-        dateResultsTextArea.setText(sb.toString());
-        dateResultsTextArea.setCaretPosition(0);
+        startDateQuery(new QueryWorker(dateResultsTextArea, "Analyzing " + formatted + ", " + year) {
+            @Override
+            protected Void doInBackground() {
+                // Direct lookup of that day's bucket - no scan over the log
+                ArrayList<String> ips = analyzer.uniqueIPVisitsOnDay(selectedDay);
+
+                StringBuilder sb = new StringBuilder();
+                sb.append("Unique IP visits on ").append(formatted).append(":\n");
+                sb.append("--------------------------------------\n");
+                sb.append("Count: ").append(ips.size()).append("\n\n");
+                if (ips.isEmpty()) {
+                    sb.append("(No visits recorded)");
+                }
+                publish(sb.toString());
+                publishLines(ips);
+                return null;
+            }
+        });
     }
 
     private void analyzeStatusCode() {
         int threshold = (int) numSpinner.getValue();
-        String result = analyzer.getAllHigherThanNum(threshold);
-        otherResultsTextArea.setText(result);
-        otherResultsTextArea.setCaretPosition(0);
+        if (statusQuery != null) statusQuery.cancel(false);
+        statusQuery = new QueryWorker(otherResultsTextArea, "Finding entries with status code > " + threshold) {
+            @Override
+            protected Void doInBackground() {
+                publish(analyzer.getAllHigherThanNum(threshold));
+                return null;
+            }
+        };
+        worker.execute(statusQuery);
     }
 
     private Date createDate(int year, int month, int day, boolean startOfDay) {
@@ -1,111 +1,832 @@
 import java.util.*; // Includes ArrayList, HashSet, Date, List, HashMap, Map, Collections
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.function.Supplier;
 import java.util.Date; // Explicit import for clarity
-import java.text.SimpleDateFormat; // Needed for date comparison method
-import java.util.Locale;          // Needed by SimpleDateFormat
+import java.util.Locale;          // Needed by DateTimeFormatter
 
 public class LogAnalyzer {
-    private ArrayList<LogEntry> records;
-    // Fields to track min and max dates
-    private Date minDate = null;
-    private Date maxDate = null;
+    private static final DateTimeFormatter DAY_MONTH_FORMATTER = DateTimeFormatter.ofPattern("MMM dd", Locale.US);
+
+    // Every parsed entry, stored column by column (empty when records are not retained)
+    private RecordStore records;
+    // Running aggregates (IP counts, day buckets, status buckets, min/max date) built while streaming
+    private LogStats stats;
+    // Row numbers of the records grouped by day, for per-day and date-range queries
+    private DayIndex dayIndex;
+    // Row bitmaps per status code, for status range queries
+    private StatusIndex statusIndex;
+    // Minute/hour/day traffic counters built while reading
+    private TrafficRollups rollups;
+    // Bounded-memory top-K summaries of IPs and paths built while reading
+    private HeavyHitters heavyHitters;
+    // Hits, bytes and error counts per path and per method
+    private RequestStats requestStats;
+    // When false, readFile only keeps the aggregates so memory stays flat on huge logs
+    private boolean retainRecords = true;
+    // HyperLogLog precision for approximate unique-IP counts, or 0 to count exactly
+    private int sketchPrecision = 0;
+    // Whether the data read last kept its records (false after an aggregates-only or approximate read)
+    private boolean recordsKept = true;
+    // When true, single-file reads load and save a LogSnapshot next to the log
+    private boolean useSnapshots = false;
+    // When false, reads do not print what they loaded (for reports written to stdout)
+    private boolean verbose = true;
+    // Set while following a live log file (see followFile)
+    private LogFollower follower;
+    // Progress and cancel switch for the next read, or null (see setProgress)
+    private volatile ReadProgress progress;
+    // Bumped whenever new data comes in, so results cached for older data are dropped
+    private volatile long generation = 0;
+    // Results of recent queries on the current generation
+    private final QueryCache queryCache = new QueryCache();
+    // Read and query instrumentation, or null when off (see setMetrics)
+    private volatile LogMetrics metrics;
+    // What reads do with malformed lines, and the handler of the read in progress (see setMalformedLinePolicy)
+    private MalformedLinePolicy malformedLinePolicy = MalformedLinePolicy.sample(MalformedLinePolicy.DEFAULT_SAMPLE_SIZE);
+    private volatile MalformedLinePolicy.Handler malformedLines;
+    // The handler of the followed file, which stays open for its refreshes
+    private MalformedLinePolicy.Handler followedMalformedLines;
+    // Watches the rates of the followed file's requests, or null (see setRateMonitor)
+    private RateMonitor rateMonitor;
 
     public LogAnalyzer() {
-        records = new ArrayList<LogEntry>();
+        IpDictionary ips = new IpDictionary();
+        records = new RecordStore(ips);
+        stats = new LogStats(ips);
+        dayIndex = new DayIndex();
+        statusIndex = new StatusIndex();
+        rollups = new TrafficRollups();
+        heavyHitters = new HeavyHitters();
+        requestStats = new RequestStats();
+    }
+
+    /**
+     * Controls whether readFile keeps every parsed LogEntry. Turning this off makes
+     * memory depend only on the number of distinct IPs and days; the only things
+     * lost are printAll, the entry listing in getAllHigherThanNum, and sub-day
+     * precision in getUniqueIPsForDateRange (along with the day index it uses).
+     * @param retain true to keep individual records (the default), false to keep aggregates only.
+     */
+    public void setRetainRecords(boolean retain) {
+        retainRecords = retain;
+    }
+    public boolean isRetainRecords() {
+        return retainRecords;
+    }
+    /**
+     * @return Whether the data loaded now has its individual records (false after an aggregates-only or approximate read).
+     */
+    public boolean isRecordsKept() {
+        return recordsKept;
+    }
+
+    /**
+     * Switches unique-IP counting to HyperLogLog sketches for logs too large to
+     * track every IP. countUniqueIPs, countUniqueIPsInRange, countUniqueIPsOnDay and
+     * countUniqueIPsForDays then return estimates, and memory stays at a few
+     * kilobytes per day and status code however many IPs there are. Nothing is kept
+     * per IP, so the methods that list or count visits by individual IPs come back
+     * empty, and records are not retained. Takes effect on the next read.
+     * @param relativeError The largest acceptable relative error (e.g. 0.01 for 1%), or 0 to count exactly (the default).
+     */
+    public void setApproximateUniqueIPs(double relativeError) {
+        sketchPrecision = relativeError > 0 ? HyperLogLog.precisionFor(relativeError) : 0;
+    }
+    public boolean isApproximateUniqueIPs() {
+        return sketchPrecision > 0;
+    }
+
+    /**
+     * Controls snapshots for readFile, readFileParallel and readFileMapped. When on,
+     * a log that has not changed since its last read is loaded from the binary
+     * snapshot saved next to it ("name.wlsnap") instead of being parsed, and a log
+     * that had to be parsed gets a fresh snapshot. Off by default.
+     * @param use true to load and save snapshots.
+     */
+    public void setUseSnapshots(boolean use) {
+        useSnapshots = use;
+    }
+    public boolean isUseSnapshots() {
+        return useSnapshots;
+    }
+
+    /**
+     * Controls the messages a read prints to System.out (records read, date range,
+     * snapshot loaded). Errors still go to System.err. On by default.
+     * @param verbose false to read silently.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Reports the progress of the next read (lines and bytes read so far) to the
+     * given object, which another thread may poll and cancel. A cancelled read
+     * throws a java.util.concurrent.CancellationException and leaves whatever
+     * was loaded before it in place. Use a new ReadProgress for each read.
+     * @param progress The progress to report to, or null for none.
+     */
+    public void setProgress(ReadProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Chooses what later reads do with lines that are not in Common Log Format:
+     * skip them, print their count, print the first few (the default, 10 per read)
+     * or write them all to a quarantine file. They are counted per reason either
+     * way (see setMetrics and LogBatch.getMalformedCount).
+     * @param policy The policy for the next reads.
+     */
+    public void setMalformedLinePolicy(MalformedLinePolicy policy) {
+        if (policy == null) throw new IllegalArgumentException("No malformed-line policy given");
+        this.malformedLinePolicy = policy;
+    }
+    public MalformedLinePolicy getMalformedLinePolicy() {
+        return malformedLinePolicy;
+    }
+
+    /**
+     * Returns the cache of query results, e.g. to resize it (setCapacity; 0 turns it
+     * off) or to read its hit rate. Repeated calls of getUniqueIPsForDateRange,
+     * uniqueIPVisitsOnDay, uniqueIPsInRange, countUniqueIPsInRange,
+     * countUniqueIPsForDays, getAllHigherThanNum and getVisitCounts with the same
+     * arguments are answered from it until new data is read.
+     * @return The cache (shared, live).
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * @return A number that changes whenever the loaded data changes (a read, or a refresh that found new lines).
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Turns instrumentation on or off. With metrics set, every read adds its line,
+     * byte and malformed-line counts, its throughput and phase timings (and samples
+     * the cost of parsing, hashing and aggregating a line), and every query records
+     * its latency. With null (the default) none of this is measured.
+     * @param metrics Where to record, or null to stop recording. May be shared by several analyzers.
+     */
+    public void setMetrics(LogMetrics metrics) {
+        if (metrics != null) metrics.setQueryCache(queryCache);
+        this.metrics = metrics;
+    }
+    public LogMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the cached result of a query on the current data, or runs the query
+     * and caches its result. Timed like any other query when metrics are on.
+     * @param key The query name followed by its parameters, which must not change later.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T cached(Supplier<T> query, Object... key) {
+        return timed((String) key[0], () -> {
+            long current = generation;
+            List<Object> cacheKey = Arrays.asList(key);
+            T result = (T) queryCache.get(current, cacheKey);
+            if (result == null) {
+                result = query.get();
+                queryCache.put(current, cacheKey, result);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Runs a query, recording how long it took when metrics are on.
+     */
+    private <T> T timed(String name, Supplier<T> query) {
+        LogMetrics current = metrics;
+        if (current == null) return query.get();
+        long start = System.nanoTime();
+        try {
+            return query.get();
+        } finally {
+            current.recordQuery(name, System.nanoTime() - start);
+        }
+    }
+
+    private LogBatch newBatch() {
+        LogBatch batch = new LogBatch(retainRecords, sketchPrecision);
+        batch.setProgress(progress);
+        batch.setTiming(metrics != null);
+        batch.setMalformedLines(malformedLines);
+        return batch;
+    }
+
+    /**
+     * Opens the malformed-line handler for a read; batches made from now on report to it.
+     * @param source Names the read in the handler's messages.
+     * @throws IOException If the quarantine file cannot be created.
+     */
+    private MalformedLinePolicy.Handler openMalformedLines(String source) throws IOException {
+        MalformedLinePolicy.Handler handler = malformedLinePolicy.open(source);
+        malformedLines = handler;
+        return handler;
+    }
+
+    /**
+     * Closes a handler from openMalformedLines. A quarantine file that could not be
+     * written is reported but does not fail the read, like a snapshot that cannot be written.
+     * @param completed Whether the read finished (a failed or cancelled read prints no total).
+     */
+    private void closeMalformedLines(MalformedLinePolicy.Handler handler, boolean completed) {
+        if (handler == null) return;
+        if (malformedLines == handler) malformedLines = null;
+        try {
+            handler.close(completed);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /** Clock reading for a phase timing, or 0 when metrics are off. */
+    private long startTiming() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Tells the progress (if any) how many bytes the files hold. The size of a
+     * gzipped log is only known once it is unpacked, so then the total stays unknown.
+     */
+    private void startProgress(List<Path> files) throws IOException {
+        ReadProgress current = progress;
+        if (current == null) return;
+        long total = 0;
+        for (Path file : files) {
+            if (MultiFileLogReader.isGzip(file)) {
+                total = -1;
+                break;
+            }
+            total += Files.size(file);
+        }
+        current.start(total);
+        current.checkCancelled(); // Cancelled before the read even started
+    }
+
+    /**
+     * Counts the last lines of a finished read and marks the progress done.
+     */
+    private void finishProgress(LogBatch batch) {
+        if (batch != null) batch.flushProgress();
+        if (progress != null) progress.finish();
+    }
+
+    /** Parses one log file into a new batch (one of the read strategies below). */
+    private interface LogSource {
+        LogBatch read(Path file) throws IOException;
+    }
+
+    /**
+     * Loads a single log file with the given strategy, going through its snapshot when enabled.
+     */
+    private void readLogFile(String filename, LogSource source) throws IOException {
+        Path file = Paths.get(filename);
+        if (useSnapshots) {
+            long loadStart = startTiming();
+            LogBatch snapshot = LogSnapshot.read(file, retainRecords, sketchPrecision);
+            if (snapshot != null) {
+                if (metrics != null) metrics.recordPhase("snapshot.load", System.nanoTime() - loadStart);
+                if (verbose) System.out.println("Loaded snapshot " + LogSnapshot.pathFor(file));
+                finishProgress(null);
+                install(snapshot, filename);
+                return;
+            }
+        }
+        // Taken before parsing, so a log that grows meanwhile gets a stale (not wrong) snapshot
+        LogSnapshot.SourceKey key = useSnapshots ? LogSnapshot.SourceKey.of(file) : null;
+        startProgress(Collections.singletonList(file));
+        long readStart = startTiming();
+        MalformedLinePolicy.Handler handler = openMalformedLines(filename);
+        LogBatch batch = null;
+        try {
+            batch = source.read(file);
+            finishProgress(batch); // Throws instead if the read was cancelled at the very end
+        } finally {
+            closeMalformedLines(handler, batch != null);
+        }
+        if (metrics != null) metrics.recordRead(batch, System.nanoTime() - readStart);
+        install(batch, filename);
+        if (key != null) {
+            try {
+                long writeStart = startTiming();
+                LogSnapshot.write(batch, file, key);
+                if (metrics != null) metrics.recordPhase("snapshot.write", System.nanoTime() - writeStart);
+            } catch (IOException e) {
+                System.err.println("Could not write snapshot for " + filename + ": " + e.getMessage()); // Not fatal
+            }
+        }
     }
 
     /**
      * Reads log entries from a file using WebLogParser. Clears previous records
-     * and finds the minimum and maximum dates in the file.
+     * and finds the minimum and maximum dates in the file. The file is streamed
+     * line by line, so only one line of raw text is in memory at a time.
+     * Gzip-compressed files are decompressed as they are read.
      * @param filename The name of the log file to read.
      * @throws IOException If an error occurs reading the file.
      */
     public void readFile(String filename) throws IOException {
-        records.clear(); // Clear previous records
-        minDate = null;  // Reset min/max dates
-        maxDate = null;
-
-        List<String> lines = Files.readAllLines(Paths.get(filename), StandardCharsets.UTF_8);
+        readLogFile(filename, this::streamFile);
+    }
 
-        for (String line : lines) {
-            try {
-                 if (line == null || line.trim().isEmpty()) continue; // Skip empty lines
-                 LogEntry entry = WebLogParser.parseEntry(line);
-                 records.add(entry);
-                 Date currentDate = entry.getAccessTime();
-                 if (currentDate != null) {
-                     if (minDate == null || currentDate.before(minDate)) minDate = currentDate;
-                     if (maxDate == null || currentDate.after(maxDate)) maxDate = currentDate;
-                 }
-            } catch (Exception e) {
-                // Consider logging more specific parse exceptions if needed
-                System.err.println("Error parsing line: '" + line + "' - " + e.getMessage());
+    /** The readFile strategy: one line at a time through a (gzip-aware) reader. */
+    private LogBatch streamFile(Path file) throws IOException {
+        LogBatch batch = newBatch();
+        try (BufferedReader reader = MultiFileLogReader.newReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                batch.addLine(line);
             }
         }
-        System.out.println("Successfully read " + records.size() + " records from " + filename);
-        if (minDate != null && maxDate != null) System.out.println("Log date range: " + minDate + " to " + maxDate);
+        return batch;
+    }
+
+    /**
+     * Reads a log file like readFile, but splits it into newline-aligned chunks that
+     * are parsed on several threads and then merged. The results are identical to readFile.
+     * A gzip-compressed file cannot be split, so it is read like readFile.
+     * @param filename The name of the log file to read.
+     * @param threads Number of worker threads, or 0 to use every available processor.
+     * @throws IOException If an error occurs reading the file.
+     */
+    public void readFileParallel(String filename, int threads) throws IOException {
+        readLogFile(filename, file -> MultiFileLogReader.isGzip(file)
+                ? streamFile(file) : new ParallelLogReader(threads).read(file, this::newBatch));
+    }
+
+    /**
+     * Reads a log file like readFile, but through a memory mapping: lines are parsed
+     * straight from the file's bytes and only the fields that are kept become Strings.
+     * A gzip-compressed file has to be unpacked first, so it is read like readFile.
+     * @param filename The name of the log file to read.
+     * @throws IOException If an error occurs reading the file.
+     */
+    public void readFileMapped(String filename) throws IOException {
+        readLogFile(filename, file -> MultiFileLogReader.isGzip(file)
+                ? streamFile(file) : new MappedLogReader().read(file, newBatch()));
+    }
+
+    /**
+     * Reads several log files (e.g. one per host per day) on several threads and
+     * merges their aggregates into one result, replacing whatever was loaded before.
+     * Gzip-compressed files are accepted.
+     * @param filenames The log files to read.
+     * @param threads Number of files read at once, or 0 to use every available processor.
+     * @throws IOException If an error occurs reading any of the files.
+     */
+    public void readFiles(List<String> filenames, int threads) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String filename : filenames) files.add(Paths.get(filename));
+        readPaths(files, threads);
+    }
+
+    /**
+     * Reads every log file in a directory, or every file matching a glob such as
+     * "logs/access-*.log*", like readFiles.
+     * @param pathOrGlob A directory, a glob (wildcards in the last element only), or a single file.
+     * @param threads Number of files read at once, or 0 to use every available processor.
+     * @throws IOException If nothing matches, or an error occurs reading any of the files.
+     */
+    public void readDirectory(String pathOrGlob, int threads) throws IOException {
+        readPaths(MultiFileLogReader.expand(pathOrGlob), threads);
+    }
+
+    private void readPaths(List<Path> files, int threads) throws IOException {
+        startProgress(files);
+        long readStart = startTiming();
+        MalformedLinePolicy.Handler handler = openMalformedLines(files.size() == 1 ? files.get(0).toString() : files.size() + " files");
+        LogBatch batch = null;
+        try {
+            batch = new MultiFileLogReader(threads).read(files, this::newBatch);
+            finishProgress(batch);
+        } finally {
+            closeMalformedLines(handler, batch != null);
+        }
+        if (metrics != null) metrics.recordRead(batch, System.nanoTime() - readStart);
+        install(batch, files.size() == 1 ? files.get(0).toString() : files.size() + " files");
+    }
+
+    /**
+     * Reads a log file like readFile and keeps it open, so that later calls to
+     * refresh() add just the lines appended since (like "tail -f"). IP counts, day
+     * buckets, the min/max date and the indexes are all updated in place. Rotation
+     * and truncation of the file are detected (see LogFollower).
+     * @param filename The name of the log file to follow.
+     * @throws IOException If an error occurs reading the file.
+     */
+    public void followFile(String filename) throws IOException {
+        // Stays open while the file is followed, so the lines appended later are handled too
+        MalformedLinePolicy.Handler handler = openMalformedLines(filename);
+        LogFollower newFollower;
+        try {
+            newFollower = new LogFollower(Paths.get(filename), newBatch());
+            newFollower.getBatch().setRateMonitor(rateMonitor);
+        } catch (IOException | RuntimeException e) {
+            closeMalformedLines(handler, false);
+            throw e;
+        }
+        try {
+            startProgress(Collections.singletonList(Paths.get(filename)));
+            long readStart = startTiming();
+            newFollower.poll();
+            finishProgress(newFollower.getBatch());
+            if (metrics != null) metrics.recordRead(newFollower.getBatch(), System.nanoTime() - readStart);
+        } catch (IOException | RuntimeException e) {
+            newFollower.close();
+            closeMalformedLines(handler, false);
+            throw e;
+        }
+        malformedLines = null; // The follower's batch keeps it; later reads get their own
+        newFollower.getBatch().setProgress(null); // Later refreshes are not part of this read
+        install(newFollower.getBatch(), filename);
+        follower = newFollower;
+        followedMalformedLines = handler;
+    }
+
+    /**
+     * Reads the lines appended to the followed file since the last call. Must not be
+     * called at the same time as the query methods (call it from the same thread).
+     * @return The number of new log entries, or 0 if no file is being followed.
+     * @throws IOException If an error occurs reading the file.
+     */
+    public int refresh() throws IOException {
+        if (follower == null) return 0;
+        long start = startTiming();
+        int added = follower.poll();
+        if (metrics != null) metrics.recordPhase("refresh", System.nanoTime() - start);
+        if (added > 0) generation++; // Cached results no longer cover the whole log
+        return added;
+    }
+
+    /**
+     * Watches the request rates of followed files as they are read: the lines read by
+     * followFile and every refresh after it go through the monitor, which reports the
+     * IPs that go over its limits. Set it before followFile; it also takes over a
+     * file already being followed. Needs exact (not approximate) unique-IP counting.
+     * @param monitor The monitor, or null to stop watching.
+     */
+    public void setRateMonitor(RateMonitor monitor) {
+        this.rateMonitor = monitor;
+        if (follower != null) follower.getBatch().setRateMonitor(monitor);
+    }
+    public RateMonitor getRateMonitor() {
+        return rateMonitor;
+    }
+
+    /**
+     * Stops following the file passed to followFile; what has been read so far stays loaded.
+     */
+    public void stopFollowing() {
+        if (follower == null) return;
+        try {
+            follower.close();
+        } catch (IOException e) {
+            System.err.println("Error closing followed file: " + e.getMessage());
+        }
+        follower = null;
+        closeMalformedLines(followedMalformedLines, true);
+        followedMalformedLines = null;
+    }
+
+    public boolean isFollowing() {
+        return follower != null;
+    }
+
+    /**
+     * Replaces the current records and aggregates with a freshly read batch.
+     */
+    private void install(LogBatch batch, String filename) {
+        stopFollowing();
+        records = batch.getRecords();
+        stats = batch.getStats();
+        dayIndex = batch.getDayIndex();
+        statusIndex = batch.getStatusIndex();
+        rollups = batch.getRollups();
+        heavyHitters = batch.getHeavyHitters();
+        requestStats = batch.getRequestStats();
+        recordsKept = batch.isRetainRecords();
+        generation++;
+        if (!verbose) return;
+        System.out.println("Successfully read " + stats.getTotalEntries() + " records from " + filename);
+        if (getMinDate() != null && getMaxDate() != null) System.out.println("Log date range: " + getMinDate() + " to " + getMaxDate());
     }
 
     // --- Getters for min/max dates ---
     public Date getMinDate() {
-        return minDate;
+        return stats.getMinDate();
     }
     public Date getMaxDate() {
-        return maxDate;
+        return stats.getMaxDate();
     }
 
     // --- Analysis Methods ---
 
+    /**
+     * @return How many log entries were read (malformed lines not included).
+     */
+    public int countEntries() {
+        return stats.getTotalEntries();
+    }
+
     /**
      * Counts the number of unique IP addresses in the log records.
-     * Leverages countVisitsPerIP() for efficiency.
-     * @return The count of unique IP addresses.
+     * The count is kept up to date while the file is read.
+     * @return The count of unique IP addresses (an estimate in approximate mode).
      */
     public int countUniqueIPs() {
-        // The entire original body (using HashSet) is replaced by this single line:
-        return countVisitsPerIP().size();
+        if (stats.isApproximate()) return toInt(stats.getIpSketch().estimate());
+        return stats.getDistinctIPs();
+    }
+
+    /**
+     * Counts the unique IP addresses seen on one calendar day.
+     * @param day The day (in the default time zone).
+     * @return The count (an estimate in approximate mode), or 0 if nothing was logged that day.
+     */
+    public int countUniqueIPsOnDay(LocalDate day) {
+        if (stats.isApproximate()) {
+            HyperLogLog sketch = stats.getDaySketches().get(day);
+            return sketch == null ? 0 : toInt(sketch.estimate());
+        }
+        IntIntMap countsOnDay = stats.getDayIPCounts().get(day);
+        return countsOnDay == null ? 0 : countsOnDay.size();
+    }
+
+    /**
+     * Counts the unique IP addresses seen over a run of whole days (both inclusive).
+     * In approximate mode the day sketches are merged, so an IP that came back on
+     * several days is still counted once.
+     * @return The count (an estimate in approximate mode).
+     */
+    public int countUniqueIPsForDays(LocalDate firstDay, LocalDate lastDay) {
+        if (firstDay.isAfter(lastDay)) return 0;
+        return cached(() -> computeUniqueIPsForDays(firstDay, lastDay), "countUniqueIPsForDays", firstDay, lastDay);
+    }
+
+    private int computeUniqueIPsForDays(LocalDate firstDay, LocalDate lastDay) {
+        if (stats.isApproximate()) {
+            HyperLogLog union = new HyperLogLog(stats.getSketchPrecision());
+            for (HyperLogLog sketch : stats.getDaySketches().subMap(firstDay, true, lastDay, true).values()) union.merge(sketch);
+            return toInt(union.estimate());
+        }
+        IntSet uniqueIPs = new IntSet();
+        for (IntIntMap countsOnDay : stats.getDayIPCounts().subMap(firstDay, true, lastDay, true).values()) {
+            countsOnDay.forEach((id, count) -> uniqueIPs.add(id));
+        }
+        return uniqueIPs.size();
+    }
+
+    /**
+     * Returns a copy of the sketch of every IP read, so counts can be combined with
+     * other files by merging sketches (HyperLogLog.merge).
+     * @return The sketch, or null when not in approximate mode.
+     */
+    public HyperLogLog getUniqueIPSketch() {
+        return stats.isApproximate() ? stats.getIpSketch().copy() : null;
+    }
+
+    private static int toInt(long count) {
+        return (int) Math.min(Integer.MAX_VALUE, count);
     }
 
      /**
       * Counts the number of times each unique IP address appears in the log records.
-      * Uses a HashMap to store IP addresses (String) as keys and their counts (Integer) as values.
+      * The counts are accumulated while the file is read, so this is a copy of the
+      * running totals rather than a scan over every record.
+      * Prefer getVisitCounts() when the IPs do not all need to be Strings.
       * @return A HashMap mapping each IP address (String) to its visit count (Integer).
       */
      public HashMap<String, Integer> countVisitsPerIP() {
-         // 1. Create an empty HashMap to store counts
-         HashMap<String, Integer> counts = new HashMap<>();
-
-         // 2. Iterate over all the log entries in records
-         for (LogEntry le : records) {
-             // 3. Get the IP address from the current LogEntry
-             String ip = le.getIpAddress();
-
-             // Basic null check for safety, though parser should handle valid lines
-             if (ip == null) {
-                 continue; // Skip if IP is somehow null
-             }
+         return timed("countVisitsPerIP", this::buildVisitsPerIP);
+     }
 
-             // 4. Check if the IP is already in the HashMap (Using getOrDefault is concise)
-             counts.put(ip, counts.getOrDefault(ip, 0) + 1);
-
-             // Original logic from video (also works fine):
-             /*
-             if (!counts.containsKey(ip)) {
-                 // 5. If not, put it in the map with a count of 1
-                 counts.put(ip, 1);
-             } else {
-                 // 6. If it is, get the current count, increment it, and put it back
-                 counts.put(ip, counts.get(ip) + 1);
-             }
-             */
+     private HashMap<String, Integer> buildVisitsPerIP() {
+         IpCounts visits = getVisitCounts();
+         HashMap<String, Integer> counts = new HashMap<>(visits.size() * 4 / 3 + 1);
+         for (int i = 0; i < visits.size(); i++) {
+             counts.put(visits.getIpAddress(i), visits.getCount(i));
          }
-         // 7. Return the completed HashMap
          return counts;
      }
 
+    /**
+     * Returns the visit count of every IP without turning the IPs into Strings.
+     * @return IP ids and their counts; addresses are formatted on demand.
+     */
+    public IpCounts getVisitCounts() {
+        return cached(this::computeVisitCounts, "getVisitCounts"); // IpCounts cannot be modified, so it is shared
+    }
+
+    private IpCounts computeVisitCounts() {
+        int limit = stats.getIpIdLimit();
+        int[] ids = new int[stats.getDistinctIPs()];
+        int[] counts = new int[ids.length];
+        int n = 0;
+        for (int id = 0; id < limit; id++) {
+            int visits = stats.getVisits(id);
+            if (visits > 0) {
+                ids[n] = id;
+                counts[n++] = visits;
+            }
+        }
+        return new IpCounts(stats.getIpDictionary(), ids, counts);
+    }
+
+    /**
+     * Groups the requests into sessions (visits) per IP with the default 30-minute
+     * timeout, so a page and the images it pulls in count as one visit. Needs
+     * retained records.
+     * @return Session counts, durations, pages and bytes per session, and sessions per IP.
+     * @throws IllegalStateException If the records were not retained.
+     */
+    public SessionStats getSessionStats() {
+        return getSessionStats(Sessionizer.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Like getSessionStats(), with another inactivity timeout. The records are fed
+     * to a Sessionizer in file order (requests up to a minute out of order are
+     * still sessionized exactly), so only the open sessions are held at a time.
+     * @param timeoutMillis How long an IP may be quiet before its next request starts a new session.
+     * @throws IllegalStateException If the records were not retained.
+     */
+    public SessionStats getSessionStats(long timeoutMillis) {
+        if (!recordsKept) throw new IllegalStateException("Sessions need the individual records, which were not retained");
+        return cached(() -> computeSessionStats(timeoutMillis), "getSessionStats", timeoutMillis); // Not modified once built
+    }
+
+    /**
+     * Replays the retained records in file order through a RateMonitor and returns
+     * every burst it reports: the IPs that made more than maxPerSecond requests in a
+     * second or more than maxPerMinute in 60 seconds. Needs retained records.
+     * @param maxPerSecond Most requests per second per IP, or 0 for no limit.
+     * @param maxPerMinute Most requests per minute per IP, or 0 for no limit.
+     * @return The bursts in the order they were detected.
+     * @throws IllegalStateException If the records were not retained.
+     */
+    public List<RateMonitor.Burst> detectBursts(int maxPerSecond, int maxPerMinute) {
+        if (!recordsKept) throw new IllegalStateException("Burst detection needs the individual records, which were not retained");
+        return new ArrayList<>(cached(() -> findBursts(maxPerSecond, maxPerMinute), "detectBursts", maxPerSecond, maxPerMinute));
+    }
+
+    private List<RateMonitor.Burst> findBursts(int maxPerSecond, int maxPerMinute) {
+        List<RateMonitor.Burst> bursts = new ArrayList<>();
+        RateMonitor monitor = new RateMonitor(maxPerSecond, maxPerMinute, bursts::add);
+        monitor.setIpDictionary(records.getIpDictionary());
+        for (int row = 0; row < records.size(); row++) {
+            if (records.hasTime(row)) monitor.add(records.getIpId(row), records.getEpochSeconds(row) * 1000L);
+        }
+        return bursts;
+    }
+
+    private SessionStats computeSessionStats(long timeoutMillis) {
+        SessionStats result = new SessionStats(records.getIpDictionary(), timeoutMillis);
+        Sessionizer sessionizer = new Sessionizer(timeoutMillis, Sessionizer.DEFAULT_TOLERANCE_MILLIS, result);
+        // Whether each distinct request is a page, worked out once per request text
+        StringDictionary requests = records.getRequestDictionary();
+        boolean[] pages = new boolean[requests.size()];
+        for (int id = 0; id < pages.length; id++) pages[id] = Sessionizer.isPageRequest(requests.get(id));
+
+        long undated = 0;
+        for (int row = 0; row < records.size(); row++) {
+            if (!records.hasTime(row)) {
+                undated++;
+                continue;
+            }
+            sessionizer.add(records.getIpId(row), records.getEpochSeconds(row) * 1000L,
+                    Math.max(0, records.getBytesReturned(row)), pages[records.getRequestId(row)]);
+        }
+        sessionizer.finish();
+        result.finish(sessionizer, undated);
+        return result;
+    }
+
+    /**
+     * Runs every metric registered with the engine in one shared pass over the
+     * per-day, per-IP aggregates (see AggregationEngine).
+     * @param engine The engine holding the metrics to compute.
+     */
+    public void aggregate(AggregationEngine engine) {
+        timed("aggregate", () -> {
+            engine.run(stats);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the traffic counters (requests, bytes, status classes, approximate
+     * unique IPs) per minute, hour or day of local time, as built while reading.
+     * They are available whether or not records are retained.
+     * @param granularity The bucket size.
+     * @return The rollup (live; callers must not modify it).
+     */
+    public TimeRollup getTrafficRollup(TimeRollup.Granularity granularity) {
+        return rollups.get(granularity);
+    }
+
+    /**
+     * Returns the IPs with the most requests, from a fixed-size summary built while
+     * reading (see SpaceSaving), so it works in every mode and its memory does not
+     * grow with the number of distinct IPs. Each entry's count may be over by at
+     * most its error; any IP with more than getTopIPSummary().getMaxError()
+     * requests is sure to be tracked.
+     * @param k How many IPs to return (reliable for k well below HeavyHitters.DEFAULT_CAPACITY).
+     * @return Up to k entries, busiest first.
+     */
+    public List<SpaceSaving.Entry> getTopIPs(int k) {
+        return timed("getTopIPs", () -> heavyHitters.getIPs().top(k));
+    }
+
+    /**
+     * Returns the most requested paths (without query string), with the same
+     * guarantees as getTopIPs. getPathTotals has exact counts for every path.
+     * @param k How many paths to return.
+     * @return Up to k entries, most requested first.
+     */
+    public List<SpaceSaving.Entry> getTopPaths(int k) {
+        return timed("getTopPaths", () -> heavyHitters.getPaths().top(k));
+    }
+
+    /**
+     * Returns the IPs with the most requests on one day. This is the bounded-memory
+     * counterpart of iPsWithMostVisitsOnDay: it needs neither records nor exact
+     * per-day counts, and works with approximate unique-IP counting too.
+     * @param day The local day.
+     * @param k How many IPs to return (reliable for k well below HeavyHitters.DEFAULT_DAY_CAPACITY).
+     * @return Up to k entries, busiest first; empty if nothing was logged that day.
+     */
+    public List<SpaceSaving.Entry> getTopIPsOnDay(LocalDate day, int k) {
+        return timed("getTopIPsOnDay", () -> {
+            SpaceSaving summary = heavyHitters.getIPsOn(day);
+            return summary == null ? new ArrayList<SpaceSaving.Entry>() : summary.top(k);
+        });
+    }
+
+    /**
+     * Returns the hits, bytes served and 4xx/5xx counts of every request path (without
+     * its query string), counted while reading in every mode.
+     * @return One entry per distinct path, most hits first.
+     */
+    public List<RequestStats.Totals> getPathTotals() {
+        return timed("getPathTotals", requestStats::getPaths);
+    }
+
+    /**
+     * @param path A path without query string, e.g. "/index.html".
+     * @return Its hits, bytes served and error counts (all zero if it was never requested).
+     */
+    public RequestStats.Totals getPathTotals(String path) {
+        return requestStats.getPath(path);
+    }
+
+    /**
+     * Returns the hits, bytes served and 4xx/5xx counts per HTTP method.
+     * @return One entry per method, most hits first ("" for requests without a method).
+     */
+    public List<RequestStats.Totals> getMethodTotals() {
+        return timed("getMethodTotals", requestStats::getMethods);
+    }
+
+    /**
+     * @return The summary behind getTopIPs, for its totals and error bound (live; do not modify).
+     */
+    public SpaceSaving getTopIPSummary() {
+        return heavyHitters.getIPs();
+    }
+
+    /**
+     * @return The summary behind getTopPaths, for its totals and error bound (live; do not modify).
+     */
+    public SpaceSaving getTopPathSummary() {
+        return heavyHitters.getPaths();
+    }
+
+    /**
+     * Turns a set of IP ids (e.g. from a LogMetric) into address Strings, for display.
+     */
+    public ArrayList<String> toAddresses(IntSet ipIds) {
+        IpDictionary ips = stats.getIpDictionary();
+        ArrayList<String> addresses = new ArrayList<>(ipIds.size());
+        ipIds.forEach(id -> addresses.add(ips.get(id)));
+        return addresses;
+    }
+
     /**
      * Finds the maximum number of visits by any single IP address.
      * @param ipCounts A HashMap mapping IP addresses to their visit counts.
@@ -153,28 +874,26 @@ public class LogAnalyzer {
     /**
      * Creates a map where keys are days ("MMM dd" format) and values are lists
      * of all IP addresses that visited on that day (including duplicates).
+     * Built from the per-day IP counts collected at read time.
      * @return A HashMap mapping day strings to ArrayLists of IP address strings.
      */
     public HashMap<String, ArrayList<String>> iPsForDays() {
-        HashMap<String, ArrayList<String>> dayToIPs = new HashMap<>();
-        // Consider making this formatter a static final field if used frequently
-        SimpleDateFormat dayMonthFormatter = new SimpleDateFormat("MMM dd", Locale.US);
-
-        for (LogEntry le : records) {
-            Date accessDate = le.getAccessTime();
-            String ip = le.getIpAddress();
-            if (accessDate == null || ip == null) {
-                continue; // Skip entries without date or IP
-            }
+        return timed("iPsForDays", this::buildIPsForDays);
+    }
 
-            try {
-                String dayKey = dayMonthFormatter.format(accessDate);
-                // Using computeIfAbsent is efficient for map value initialization
-                dayToIPs.computeIfAbsent(dayKey, k -> new ArrayList<>()).add(ip);
-            } catch (Exception e) {
-                 // Catch potential formatting errors, though unlikely with valid dates
-                System.err.println("Error formatting date for day map: " + accessDate + " - " + e.getMessage());
-            }
+    private HashMap<String, ArrayList<String>> buildIPsForDays() {
+        HashMap<String, ArrayList<String>> dayToIPs = new HashMap<>();
+        IpDictionary ipDictionary = stats.getIpDictionary();
+        for (Map.Entry<LocalDate, IntIntMap> day : stats.getDayIPCounts().entrySet()) {
+            // Same month/day in different years share a key, as with the old "MMM dd" formatting
+            String dayKey = DAY_MONTH_FORMATTER.format(day.getKey());
+            ArrayList<String> ips = dayToIPs.computeIfAbsent(dayKey, k -> new ArrayList<>());
+            day.getValue().forEach((id, count) -> {
+                String ip = ipDictionary.get(id);
+                for (int i = 0; i < count; i++) {
+                    ips.add(ip);
+                }
+            });
         }
         return dayToIPs;
     }
@@ -203,6 +922,8 @@ public class LogAnalyzer {
 
      /**
       * Finds the IP addresses that visited the most times on a *specific* given day.
+      * This expands every visit of the day into a list first; getTopIPsOnDay gives the
+      * busiest IPs of a day from a small summary instead.
       * @param dayToIPs The map generated by iPsForDays().
       * @param day The specific day ("MMM dd" format) to analyze.
       * @return An ArrayList<String> of the IP(s) that visited most frequently on that particular day. Returns empty list if day is invalid or has no visits.
@@ -249,16 +970,31 @@ public class LogAnalyzer {
     /**
      * Constructs a string containing all log entries with a status code
      * strictly greater than num. (Existing Method)
+     * If records are not retained, only the number of matching entries per status code is listed.
      * @param num The threshold status code.
      * @return A String containing the matching log entries, or a "None found" message.
      */
     public String getAllHigherThanNum(int num) {
+        return cached(() -> describeHigherThan(num), "getAllHigherThanNum", num);
+    }
+
+    private String describeHigherThan(int num) {
         StringBuilder sb = new StringBuilder();
         sb.append("--- Log entries with status code > ").append(num).append(" ---\n");
         int count = 0;
-        for (LogEntry le : records) {
-            if (le.getStatusCode() > num) {
-                sb.append(le.toString()).append("\n");
+        if (recordsKept) {
+            // OR together the bitmaps of the status codes above num; rows come back in file order
+            RowBitmap matches = num == Integer.MAX_VALUE ? new RowBitmap() : statusIndex.rowsInRange(num + 1, Integer.MAX_VALUE);
+            matches.forEach(row -> sb.append(records.getEntry(row).toString()).append("\n"));
+            count = matches.cardinality();
+        } else {
+            sb.append("(Individual entries were not retained; showing unique IPs per status code)\n");
+            for (Map.Entry<Integer, IntSet> entry : stats.getStatusIPs().tailMap(num, false).entrySet()) {
+                sb.append("Status ").append(entry.getKey()).append(": ").append(entry.getValue().size()).append(" unique IPs\n");
+                count++;
+            }
+            for (Map.Entry<Integer, HyperLogLog> entry : stats.getStatusSketches().tailMap(num, false).entrySet()) {
+                sb.append("Status ").append(entry.getKey()).append(": ~").append(entry.getValue().estimate()).append(" unique IPs\n");
                 count++;
             }
         }
@@ -267,6 +1003,26 @@ public class LogAnalyzer {
         return sb.toString();
     }
 
+    /**
+     * Counts the unique IPs that got each status code, from the per-status sets (or
+     * sketches, in approximate mode) kept while reading.
+     * @return Status code to unique IP count, in code order.
+     */
+    public TreeMap<Integer, Integer> countUniqueIPsByStatus() {
+        return timed("countUniqueIPsByStatus", this::buildUniqueIPsByStatus);
+    }
+
+    private TreeMap<Integer, Integer> buildUniqueIPsByStatus() {
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        for (Map.Entry<Integer, IntSet> entry : stats.getStatusIPs().entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+        }
+        for (Map.Entry<Integer, HyperLogLog> entry : stats.getStatusSketches().entrySet()) {
+            counts.put(entry.getKey(), toInt(entry.getValue().estimate()));
+        }
+        return counts;
+    }
+
     /**
      * Finds unique IP addresses that had status codes within the specified range (inclusive). (Existing Method)
      * @param low The lower bound of the status code range.
@@ -274,67 +1030,171 @@ public class LogAnalyzer {
      * @return An ArrayList containing the unique IP addresses.
      */
     public ArrayList<String> uniqueIPsInRange(int low, int high) {
-        HashSet<String> uniqueIPs = new HashSet<>();
-        for (LogEntry le : records) {
-            int status = le.getStatusCode();
-            if (status >= low && status <= high) {
-                 if (le.getIpAddress() != null) uniqueIPs.add(le.getIpAddress());
-            }
-        }
-        return new ArrayList<>(uniqueIPs);
+        // A copy, so the caller may change the list without changing the cached one
+        return new ArrayList<>(cached(() -> toAddresses(uniqueIPIdsInRange(low, high)), "uniqueIPsInRange", low, high));
    }
 
+    private IntSet uniqueIPIdsInRange(int low, int high) {
+        IntSet uniqueIPs = new IntSet();
+        if (low > high) return uniqueIPs;
+        for (IntSet ips : stats.getStatusIPs().subMap(low, true, high, true).values()) {
+            uniqueIPs.addAll(ips);
+        }
+        return uniqueIPs;
+    }
+
    /**
      * Counts the number of unique IP addresses that had status codes within the specified range (inclusive). (Existing Method)
+     * In approximate mode this is an estimate from the merged per-status sketches.
      * @param low The lower bound of the status code range.
      * @param high The upper bound of the status code range.
      * @return The count of unique IP addresses in the range.
      */
     public int countUniqueIPsInRange(int low, int high) {
-         return uniqueIPsInRange(low, high).size();
+        return cached(() -> computeUniqueIPsInRange(low, high), "countUniqueIPsInRange", low, high);
+    }
+
+    private int computeUniqueIPsInRange(int low, int high) {
+        if (stats.isApproximate()) {
+            if (low > high) return 0;
+            HyperLogLog union = new HyperLogLog(stats.getSketchPrecision());
+            for (HyperLogLog sketch : stats.getStatusSketches().subMap(low, true, high, true).values()) union.merge(sketch);
+            return toInt(union.estimate());
+        }
+         return uniqueIPIdsInRange(low, high).size(); // No Strings needed just to count
+    }
+
+    /**
+     * Finds unique IP addresses that had status codes within a range and accessed the
+     * site within a date range (both inclusive), by AND-ing the status index with
+     * the rows of the date range. Needs retained records.
+     * @param low The lower bound of the status code range.
+     * @param high The upper bound of the status code range.
+     * @param startDate The starting date of the range (inclusive).
+     * @param endDate The ending date of the range (inclusive).
+     * @return An ArrayList containing the unique IP addresses.
+     */
+    public ArrayList<String> uniqueIPsInRange(int low, int high, Date startDate, Date endDate) {
+        // Dates can be changed by their owner, so the key holds their times
+        return new ArrayList<>(cached(() -> findUniqueIPsInRange(low, high, startDate, endDate),
+                "uniqueIPsInRange", low, high, timeOf(startDate), timeOf(endDate)));
+    }
+
+    private static Long timeOf(Date date) {
+        return date == null ? null : date.getTime();
+    }
+
+    private ArrayList<String> findUniqueIPsInRange(int low, int high, Date startDate, Date endDate) {
+        IntSet uniqueIPs = new IntSet();
+        RowBitmap matches = RowBitmap.and(statusIndex.rowsInRange(low, high), rowsInDateRange(startDate, endDate));
+        matches.forEach(row -> uniqueIPs.add(records.getIpId(row)));
+        return toAddresses(uniqueIPs);
+    }
+
+    /**
+     * Collects the rows logged within a date range (inclusive) using the day index.
+     */
+    private RowBitmap rowsInDateRange(Date startDate, Date endDate) {
+        RowBitmap result = new RowBitmap();
+        if (startDate == null || endDate == null || startDate.after(endDate)) return result;
+        long first = Math.floorDiv(startDate.getTime() + 999, 1000L);
+        long last = Math.floorDiv(endDate.getTime(), 1000L);
+        for (LocalDate day : stats.getDayIPCounts().subMap(LogStats.toLocalDay(startDate), true, LogStats.toLocalDay(endDate), true).keySet()) {
+            IntColumn rows = dayIndex.rowsOn(day);
+            if (rows == null) continue;
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                long seconds = records.getEpochSeconds(row);
+                if (seconds >= first && seconds <= last) result.add(row);
+            }
+        }
+        return result;
     }
 
     /**
      * Finds unique IP addresses that accessed the site within a given date range (inclusive). (Existing Method)
+     * Days fully inside the range are answered from the per-day IP counts; only the
+     * rows of a partially covered first or last day are checked one by one (via the
+     * day index). When records are not retained, partially covered days count in full.
      * @param startDate The starting date of the range (inclusive).
      * @param endDate The ending date of the range (inclusive).
      * @return An ArrayList<String> of unique IP addresses visiting within that range.
      */
     public ArrayList<String> getUniqueIPsForDateRange(Date startDate, Date endDate) {
-        HashSet<String> uniqueIPsInRange = new HashSet<>();
         if (startDate == null || endDate == null || startDate.after(endDate)) {
              return new ArrayList<>(); // Return empty list for invalid range
         }
-        for (LogEntry le : records) {
-            Date accessDate = le.getAccessTime();
-            if (accessDate == null) continue;
-            // Check if !before(start) AND !after(end) for inclusive range
-            if (!accessDate.before(startDate) && !accessDate.after(endDate)) {
-                 if (le.getIpAddress() != null) uniqueIPsInRange.add(le.getIpAddress());
+        return new ArrayList<>(cached(() -> findUniqueIPsForDateRange(startDate, endDate),
+                "getUniqueIPsForDateRange", startDate.getTime(), endDate.getTime()));
+    }
+
+    private ArrayList<String> findUniqueIPsForDateRange(Date startDate, Date endDate) {
+        IntSet uniqueIPsInRange = new IntSet();
+        // Compare in whole seconds on the time column (log timestamps have no milliseconds)
+        long first = Math.floorDiv(startDate.getTime() + 999, 1000L);
+        long last = Math.floorDiv(endDate.getTime(), 1000L);
+        ZoneId zone = ZoneId.systemDefault();
+
+        LocalDate startDay = LogStats.toLocalDay(startDate);
+        LocalDate endDay = LogStats.toLocalDay(endDate);
+        for (Map.Entry<LocalDate, IntIntMap> day : stats.getDayIPCounts().subMap(startDay, true, endDay, true).entrySet()) {
+            long dayFirst = day.getKey().atStartOfDay(zone).toEpochSecond();
+            long dayLast = day.getKey().plusDays(1).atStartOfDay(zone).toEpochSecond() - 1;
+            IntColumn rows = dayIndex.rowsOn(day.getKey());
+            if ((dayFirst >= first && dayLast <= last) || !recordsKept || rows == null) {
+                day.getValue().forEach((id, count) -> uniqueIPsInRange.add(id)); // Whole day is in range
+            } else {
+                for (int i = 0; i < rows.size(); i++) {
+                    int row = rows.get(i);
+                    long seconds = records.getEpochSeconds(row);
+                    if (seconds >= first && seconds <= last) uniqueIPsInRange.add(records.getIpId(row));
+                }
             }
         }
-        return new ArrayList<>(uniqueIPsInRange);
+        return toAddresses(uniqueIPsInRange);
     }
 
    /**
      * Finds unique IP addresses that accessed the site on a specific single day. (Existing Method)
+     * Looks the day up directly for every year in the log rather than checking each entry.
      * @param someday A String in the format "MMM dd" (e.g., "Sep 14", "Dec 05").
      * @return An ArrayList<String> of unique IP addresses from that day.
      */
     public ArrayList<String> uniqueIPVisitsOnDay(String someday) {
-        HashSet<String> uniqueIPsOnDay = new HashSet<>();
-        SimpleDateFormat dayMonthFormatter = new SimpleDateFormat("MMM dd", Locale.US);
-        for (LogEntry le : records) {
-            Date accessDate = le.getAccessTime();
-            if (accessDate == null) continue;
-            try {
-                String formattedDate = dayMonthFormatter.format(accessDate);
-                if (formattedDate.equals(someday)) {
-                    if (le.getIpAddress() != null) uniqueIPsOnDay.add(le.getIpAddress());
-                }
-            } catch (Exception e) { System.err.println("Err fmt date:"+accessDate+e.getMessage());}
+        return new ArrayList<>(cached(() -> findUniqueIPVisitsOnDay(someday), "uniqueIPVisitsOnDay", someday));
+    }
+
+    private ArrayList<String> findUniqueIPVisitsOnDay(String someday) {
+        IntSet uniqueIPsOnDay = new IntSet();
+        MonthDay monthDay;
+        try {
+            monthDay = MonthDay.parse(someday, DAY_MONTH_FORMATTER);
+        } catch (DateTimeParseException e) {
+            return new ArrayList<>(); // Not a valid "MMM dd" day
         }
-        return new ArrayList<>(uniqueIPsOnDay);
+        if (getMinDate() == null) return new ArrayList<>();
+        int firstYear = LogStats.toLocalDay(getMinDate()).getYear();
+        int lastYear = LogStats.toLocalDay(getMaxDate()).getYear();
+        for (int year = firstYear; year <= lastYear; year++) {
+            if (!monthDay.isValidYear(year)) continue; // Feb 29
+            IntIntMap countsOnDay = stats.getDayIPCounts().get(monthDay.atYear(year));
+            if (countsOnDay != null) countsOnDay.forEach((id, count) -> uniqueIPsOnDay.add(id));
+        }
+        return toAddresses(uniqueIPsOnDay);
+    }
+
+    /**
+     * Finds unique IP addresses that accessed the site on one calendar day.
+     * @param day The day (in the default time zone).
+     * @return An ArrayList<String> of unique IP addresses from that day.
+     */
+    public ArrayList<String> uniqueIPVisitsOnDay(LocalDate day) {
+        return new ArrayList<>(cached(() -> {
+            IntSet uniqueIPsOnDay = new IntSet();
+            IntIntMap countsOnDay = stats.getDayIPCounts().get(day);
+            if (countsOnDay != null) countsOnDay.forEach((id, count) -> uniqueIPsOnDay.add(id));
+            return toAddresses(uniqueIPsOnDay);
+        }, "uniqueIPVisitsOnDay", day));
     }
 
     /**
@@ -342,9 +1202,10 @@ public class LogAnalyzer {
      */
    public void printAll() {
         System.out.println("\n--- All Log Entries ---");
-        if (records.isEmpty()) System.out.println("(No records loaded)");
-        else for (LogEntry le : records) System.out.println(le);
+        if (!recordsKept) System.out.println("(Records not retained; " + stats.getTotalEntries() + " entries were read)");
+        else if (records.size() == 0) System.out.println("(No records loaded)");
+        else for (int row = 0; row < records.size(); row++) System.out.println(records.getEntry(row));
         System.out.println("--- End All Log Entries ---");
     }
 
-} // End of LogAnalyzer class
\ No newline at end of file
+} // End of LogAnalyzer class
@@ -0,0 +1,317 @@
+import java.io.IOException;
+
+/**
+ * The result of parsing some run of log lines: the running aggregates and, if
+ * requested, the individual entries in file order (as rows of a RecordStore). A whole file read on one thread
+ * is a single batch; a parallel read produces one batch per chunk and merges them
+ * back together in chunk order.
+ */
+public class LogBatch {
+    private final boolean retainRecords;
+    // Shared by the records and the aggregates so both use the same IP ids
+    private final IpDictionary ips;
+    private final RecordStore records;
+    private final LogStats stats;
+    // Row numbers grouped by day and by status (only filled when records are retained)
+    private final DayIndex dayIndex;
+    private final StatusIndex statusIndex;
+    // Minute/hour/day traffic counters (always filled)
+    private final TrafficRollups rollups;
+    // Top IPs and paths, overall and per day (always filled)
+    private final HeavyHitters heavyHitters;
+    // Hits, bytes and errors per path and per method (always filled)
+    private final RequestStats requestStats;
+    // Not thread-safe: each batch is only ever filled by one thread
+    private final ParsedLine parsed = new ParsedLine();
+    // Lines and bytes seen by addLine (blank and malformed ones included), and why lines were rejected
+    private long linesRead = 0;
+    private long bytesRead = 0;
+    private final long[] malformed = new long[PARSE_ERRORS.length];
+    private long undatedEntries = 0;
+    // What else happens to malformed lines (printed, quarantined...), or null to only count them
+    private MalformedLinePolicy.Handler malformedLines;
+    // Sees every dated request as it is added, or null (see setRateMonitor)
+    private RateMonitor rateMonitor;
+    // Where lines read are reported, or null; handed over in blocks
+    private ReadProgress progress;
+    private long reportedLines = 0;
+    private long reportedBytes = 0;
+    private static final int PROGRESS_BLOCK_LINES = 4096;
+    private static final ParseError[] PARSE_ERRORS = ParseError.values();
+    // With timing on, one line in TIMING_SAMPLE_LINES is timed step by step (see LogMetrics)
+    private boolean timing = false;
+    private static final int TIMING_SAMPLE_LINES = 1024;
+    private long timedLines = 0;
+    private long parseNanos = 0;
+    private long hashNanos = 0;
+    private long aggregateNanos = 0;
+    private long mergeNanos = 0;
+
+    public LogBatch(boolean retainRecords) {
+        this(retainRecords, 0);
+    }
+
+    /**
+     * @param retainRecords Whether to keep individual entries (ignored in approximate mode).
+     * @param sketchPrecision HyperLogLog precision for approximate unique-IP counts, or 0 to count exactly.
+     *                        Approximate batches never assign IP ids, so they cannot keep records.
+     */
+    public LogBatch(boolean retainRecords, int sketchPrecision) {
+        this.retainRecords = retainRecords && sketchPrecision == 0;
+        this.ips = new IpDictionary();
+        this.records = new RecordStore(ips);
+        this.stats = new LogStats(ips, sketchPrecision);
+        this.dayIndex = new DayIndex();
+        this.statusIndex = new StatusIndex();
+        this.rollups = new TrafficRollups();
+        this.heavyHitters = new HeavyHitters();
+        this.requestStats = new RequestStats();
+    }
+
+    private LogBatch(boolean retainRecords, IpDictionary ips, RecordStore records, LogStats stats, DayIndex dayIndex,
+                     StatusIndex statusIndex, TrafficRollups rollups, HeavyHitters heavyHitters,
+                     RequestStats requestStats) {
+        this.retainRecords = retainRecords;
+        this.ips = ips;
+        this.records = records;
+        this.stats = stats;
+        this.dayIndex = dayIndex;
+        this.statusIndex = statusIndex;
+        this.rollups = rollups;
+        this.heavyHitters = heavyHitters;
+        this.requestStats = requestStats;
+    }
+
+    /**
+     * Parses a single line and folds it into the aggregates (and records, if retained).
+     * Blank or malformed lines are skipped.
+     * @param line One line of the log without its line terminator.
+     */
+    public void addLine(CharSequence line) {
+        linesRead++;
+        bytesRead += line.length() + 1; // Plus the newline
+        if (progress != null && linesRead - reportedLines >= PROGRESS_BLOCK_LINES) flushProgress();
+        if (isBlank(line)) return; // Skip empty lines
+        if (timing && linesRead % TIMING_SAMPLE_LINES == 0) {
+            addLineTimed(line);
+            return;
+        }
+        if (!WebLogParser.parse(line, parsed)) {
+            rejectLine(line);
+            return;
+        }
+        addParsed(line, IpDictionary.hash(line, parsed.getIpStart(), parsed.getIpEnd()));
+    }
+
+    /** addLine for the sampled lines: the same work, with a clock read between the steps. */
+    private void addLineTimed(CharSequence line) {
+        long start = System.nanoTime();
+        boolean ok = WebLogParser.parse(line, parsed);
+        long parsedAt = System.nanoTime();
+        if (!ok) {
+            rejectLine(line);
+            return;
+        }
+        long ipHash = IpDictionary.hash(line, parsed.getIpStart(), parsed.getIpEnd());
+        long hashedAt = System.nanoTime();
+        addParsed(line, ipHash);
+        long end = System.nanoTime();
+        timedLines++;
+        parseNanos += parsedAt - start;
+        hashNanos += hashedAt - parsedAt;
+        aggregateNanos += end - hashedAt;
+    }
+
+    private void rejectLine(CharSequence line) {
+        ParseError error = parsed.getError();
+        malformed[error.ordinal()]++;
+        if (malformedLines != null) malformedLines.reject(line, error);
+    }
+
+    /** Folds the line just parsed into the aggregates (and records, if retained). */
+    private void addParsed(CharSequence line, long ipHash) {
+        if (!parsed.hasTime()) undatedEntries++;
+        rollups.add(parsed.getEpochMillis(), parsed.getStatusCode(), parsed.getBytesReturned(), ipHash);
+        heavyHitters.add(line, parsed.getIpStart(), parsed.getIpEnd(), ipHash, parsed.getPathStart(), parsed.getPathEnd(),
+                parsed.hasTime() ? stats.dayOf(parsed.getEpochMillis()) : null);
+        requestStats.add(parsed);
+        if (stats.isApproximate()) {
+            stats.addSketched(ipHash, parsed.getEpochMillis(), parsed.getStatusCode());
+            return;
+        }
+        // IPv4 addresses become ints here, so no String is created for the IP
+        int ipId = ips.idOf(line, parsed.getIpStart(), parsed.getIpEnd());
+        stats.add(ipId, parsed.getEpochMillis(), parsed.getStatusCode());
+        if (rateMonitor != null && parsed.hasTime()) rateMonitor.add(ipId, parsed.getEpochMillis());
+        if (retainRecords) {
+            int row = records.add(parsed, ipId);
+            if (parsed.hasTime()) dayIndex.add(stats.dayOf(parsed.getEpochMillis()), row);
+            statusIndex.add(parsed.getStatusCode(), row);
+        }
+    }
+
+    /**
+     * Appends another batch that came later in the file.
+     * @param later The batch holding the lines after this one.
+     */
+    public void merge(LogBatch later) {
+        later.flushProgress();
+        long start = timing ? System.nanoTime() : 0;
+        int[] ipMap = ips.remapFrom(later.ips);
+        dayIndex.merge(later.dayIndex, records.size());
+        statusIndex.merge(later.statusIndex, records.size());
+        records.appendAll(later.records, ipMap);
+        stats.merge(later.stats, ipMap);
+        rollups.merge(later.rollups);
+        heavyHitters.merge(later.heavyHitters);
+        requestStats.merge(later.requestStats);
+        linesRead += later.linesRead;
+        bytesRead += later.bytesRead;
+        reportedLines += later.linesRead; // Already reported by the later batch
+        reportedBytes += later.bytesRead;
+        for (int i = 0; i < malformed.length; i++) malformed[i] += later.malformed[i];
+        undatedEntries += later.undatedEntries;
+        timedLines += later.timedLines;
+        parseNanos += later.parseNanos;
+        hashNanos += later.hashNanos;
+        aggregateNanos += later.aggregateNanos;
+        mergeNanos += later.mergeNanos;
+        if (timing) mergeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Reports the lines added to this batch from now on to the given progress, and
+     * stops the read (with a CancellationException from addLine) once it is cancelled.
+     * @param progress The progress of the read this batch is part of, or null.
+     */
+    void setProgress(ReadProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Hands the lines counted since the last block to the progress.
+     * @throws java.util.concurrent.CancellationException If the read was cancelled.
+     */
+    void flushProgress() {
+        if (progress == null) return;
+        long lines = linesRead - reportedLines;
+        long bytes = bytesRead - reportedBytes;
+        reportedLines = linesRead;
+        reportedBytes = bytesRead;
+        progress.add(lines, bytes);
+    }
+
+    /**
+     * Hands the malformed lines added to this batch from now on to the given handler
+     * (see MalformedLinePolicy). Without one they are only counted.
+     */
+    void setMalformedLines(MalformedLinePolicy.Handler malformedLines) {
+        this.malformedLines = malformedLines;
+    }
+
+    /**
+     * Feeds every dated request added from now on to a RateMonitor, keyed by this
+     * batch's IP ids. Only meaningful for a batch filled in time order (e.g. a
+     * followed file); approximate batches have no IP ids and feed nothing.
+     * @param rateMonitor The monitor, or null to stop.
+     */
+    void setRateMonitor(RateMonitor rateMonitor) {
+        if (rateMonitor != null) rateMonitor.setIpDictionary(ips);
+        this.rateMonitor = rateMonitor;
+    }
+
+    /**
+     * Turns on step timings: one line in every TIMING_SAMPLE_LINES is parsed, hashed and
+     * aggregated with a clock read between the steps, and merges are timed. Off by default.
+     */
+    void setTiming(boolean timing) {
+        this.timing = timing;
+    }
+
+    // --- Counters for LogMetrics; they cover this batch and every batch merged into it ---
+
+    /** @return Lines passed to addLine, blank and malformed ones included. */
+    public long getLinesRead() {
+        return linesRead;
+    }
+    /** @return Characters passed to addLine plus one newline per line (bytes, for ASCII logs). */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    /** @return How many lines were rejected for the given reason. */
+    public long getMalformedCount(ParseError error) {
+        return malformed[error.ordinal()];
+    }
+    /** @return Entries kept without a time because their timestamp could not be decoded. */
+    public long getUndatedEntries() {
+        return undatedEntries;
+    }
+    long getTimedLines() {
+        return timedLines;
+    }
+    long getParseNanos() {
+        return parseNanos;
+    }
+    long getHashNanos() {
+        return hashNanos;
+    }
+    long getAggregateNanos() {
+        return aggregateNanos;
+    }
+    long getMergeNanos() {
+        return mergeNanos;
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        ips.writeTo(out);
+        records.writeTo(out);
+        stats.writeTo(out);
+        dayIndex.writeTo(out);
+        statusIndex.writeTo(out);
+        rollups.writeTo(out);
+        heavyHitters.writeTo(out);
+        requestStats.writeTo(out);
+    }
+
+    static LogBatch readFrom(SnapshotReader in, boolean retainRecords) throws IOException {
+        IpDictionary ips = IpDictionary.readFrom(in);
+        RecordStore records = RecordStore.readFrom(in, ips);
+        LogStats stats = LogStats.readFrom(in, ips);
+        return new LogBatch(retainRecords, ips, records, stats, DayIndex.readFrom(in), StatusIndex.readFrom(in),
+                TrafficRollups.readFrom(in), HeavyHitters.readFrom(in),
+                RequestStats.readFrom(in));
+    }
+
+    private static boolean isBlank(CharSequence line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) > ' ') return false;
+        }
+        return true;
+    }
+
+    public boolean isRetainRecords() {
+        return retainRecords;
+    }
+    public RecordStore getRecords() {
+        return records;
+    }
+    public LogStats getStats() {
+        return stats;
+    }
+    public DayIndex getDayIndex() {
+        return dayIndex;
+    }
+    public StatusIndex getStatusIndex() {
+        return statusIndex;
+    }
+    public TrafficRollups getRollups() {
+        return rollups;
+    }
+    public HeavyHitters getHeavyHitters() {
+        return heavyHitters;
+    }
+    public RequestStats getRequestStats() {
+        return requestStats;
+    }
+}
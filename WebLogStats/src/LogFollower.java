@@ -0,0 +1,160 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Follows a growing log file ("tail -f"): every poll() parses only the bytes
+ * appended since the previous poll into the same LogBatch, so the aggregates,
+ * records and indexes are updated in place and a refresh costs time in
+ * proportion to the new lines, not to the size of the file.
+ *
+ * Only complete lines are read; a line the server is still writing is picked up
+ * by the next poll. Two kinds of file replacement are detected:
+ * - Rotation (the path now names a different file, e.g. after logrotate moved the
+ *   old one away): the rest of the old file is read, then the new file is followed from its start.
+ * - Truncation (the file got shorter, or its first bytes changed, e.g. copytruncate):
+ *   the file is followed again from its start.
+ * In both cases what was already read stays in the totals, since it is still part of the log's history.
+ *
+ * poll() must not run at the same time as queries on the batch; call it from the
+ * thread that reads the results (e.g. from a javax.swing.Timer).
+ */
+public class LogFollower implements Closeable {
+    // How much of the start of the file is compared to spot a rewrite
+    private static final int FINGERPRINT_BYTES = 64;
+    private static final int SCAN_BLOCK_BYTES = 8192;
+
+    private final Path file;
+    private final LogBatch batch;
+    private final MappedLogReader reader = new MappedLogReader();
+
+    private FileChannel channel;
+    // Identity of the open file (the inode on Unix), or null if the file system has none
+    private Object fileKey;
+    // Bytes before this offset have been parsed; it is always just after a newline
+    private long offset;
+    // The first bytes of the file as they were when read
+    private byte[] fingerprint;
+    private int rotations = 0;
+    private int truncations = 0;
+
+    /**
+     * Opens the file; nothing is read until the first poll().
+     * @param file The log file to follow.
+     * @param batch The batch new lines are added to.
+     * @throws IOException If the file cannot be opened.
+     */
+    public LogFollower(Path file, LogBatch batch) throws IOException {
+        this.file = file;
+        this.batch = batch;
+        open();
+    }
+
+    private void open() throws IOException {
+        fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        offset = 0;
+        fingerprint = new byte[0];
+    }
+
+    /**
+     * Reads whatever has been appended since the last poll.
+     * @return The number of log entries added to the batch.
+     * @throws IOException If the file cannot be read.
+     */
+    public synchronized int poll() throws IOException {
+        int before = batch.getStats().getTotalEntries();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // Moved away and not recreated yet: keep reading the old file until it is
+            readAppended(false);
+            return batch.getStats().getTotalEntries() - before;
+        }
+
+        Object key = attributes.fileKey();
+        if (key != null && fileKey != null && !key.equals(fileKey)) {
+            readAppended(true); // Nobody will finish the old file's last line now
+            channel.close();
+            open();
+            rotations++;
+        } else if (channel.size() < offset || !fingerprintMatches()) {
+            offset = 0;
+            fingerprint = new byte[0];
+            truncations++;
+        }
+        readAppended(false);
+        return batch.getStats().getTotalEntries() - before;
+    }
+
+    /**
+     * Parses [offset, end of file) up to the last newline, or to the very end if includePartialLine.
+     */
+    private void readAppended(boolean includePartialLine) throws IOException {
+        long size = channel.size();
+        if (size <= offset) return;
+        long end = includePartialLine ? size : afterLastNewline(offset, size);
+        if (end <= offset) return;
+        reader.readRange(channel, offset, end, batch);
+        offset = end;
+        if (fingerprint.length < FINGERPRINT_BYTES && offset > fingerprint.length) {
+            fingerprint = readAt(0, (int) Math.min(FINGERPRINT_BYTES, offset));
+        }
+    }
+
+    /**
+     * @return The position just after the last '\n' in [start, end), or start if there is none.
+     */
+    private long afterLastNewline(long start, long end) throws IOException {
+        long blockEnd = end;
+        while (blockEnd > start) {
+            long blockStart = Math.max(start, blockEnd - SCAN_BLOCK_BYTES);
+            byte[] block = readAt(blockStart, (int) (blockEnd - blockStart));
+            for (int i = block.length - 1; i >= 0; i--) {
+                if (block[i] == '\n') return blockStart + i + 1;
+            }
+            blockEnd = blockStart;
+        }
+        return start;
+    }
+
+    private boolean fingerprintMatches() throws IOException {
+        return fingerprint.length == 0 || Arrays.equals(fingerprint, readAt(0, fingerprint.length));
+    }
+
+    private byte[] readAt(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) break;
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    public LogBatch getBatch() {
+        return batch;
+    }
+    /** @return How far into the current file has been read. */
+    public synchronized long getOffset() {
+        return offset;
+    }
+    public int getRotations() {
+        return rotations;
+    }
+    public int getTruncations() {
+        return truncations;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
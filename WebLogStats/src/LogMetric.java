@@ -0,0 +1,16 @@
+import java.time.LocalDate;
+
+/**
+ * A statistic that AggregationEngine computes alongside other metrics in one
+ * shared pass. The pass walks the (day, IP) cells collected while the file was
+ * read, so every metric sees each cell exactly once.
+ */
+public interface LogMetric {
+    /**
+     * Called once for every (day, IP) cell.
+     * @param day The calendar day, or null for entries whose timestamp could not be read.
+     * @param ipId The IP's IpDictionary id.
+     * @param visits How many log lines that IP had on that day.
+     */
+    void accept(LocalDate day, int ipId, int visits);
+}
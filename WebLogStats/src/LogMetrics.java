@@ -0,0 +1,367 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the time of a LogAnalyzer goes: throughput and malformed lines per
+ * reason for every read, timings of the read phases, an estimate of what one line
+ * costs in parsing, hashing and aggregating, and a latency histogram per query.
+ * Turn it on with LogAnalyzer.setMetrics; it can be watched over JMX (register)
+ * or dumped as JSON (toJson).
+ *
+ * Nothing here runs per line. The line and byte counts and the malformed reasons
+ * are plain fields of each LogBatch that are counted anyway, and added here once
+ * per read. The step costs come from timing one line in every 1024 in full. With
+ * metrics off, LogAnalyzer does not even read the clock.
+ */
+public class LogMetrics implements LogMetricsMXBean {
+    private static final ParseError[] PARSE_ERRORS = ParseError.values();
+
+    /**
+     * Durations in power-of-two buckets of nanoseconds, so recording costs a few
+     * atomic adds and percentiles are accurate to within a factor of two. Safe to
+     * record into from several threads.
+     */
+    public static class Histogram {
+        // Bucket i holds durations in [2^(i-1), 2^i) ns; bucket 0 holds 0
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0; // nanoTime is monotonic, but be safe
+            buckets.incrementAndGet(Math.min(63, 64 - Long.numberOfLeadingZeros(nanos)));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+        public double getMeanNanos() {
+            long n = getCount();
+            return n == 0 ? 0 : getTotalNanos() / (double) n;
+        }
+
+        /**
+         * @param fraction E.g. 0.99 for the 99th percentile.
+         * @return The upper bound of the bucket holding that percentile (never above the maximum), or 0 if empty.
+         */
+        public long getPercentileNanos(double fraction) {
+            long n = getCount();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(fraction * n);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return i == 0 ? 0 : Math.min(getMaxNanos(), 1L << i);
+            }
+            return getMaxNanos();
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", getCount());
+            map.put("totalMillis", getTotalNanos() / 1e6);
+            map.put("meanMicros", getMeanNanos() / 1e3);
+            map.put("p50Micros", getPercentileNanos(0.50) / 1e3);
+            map.put("p90Micros", getPercentileNanos(0.90) / 1e3);
+            map.put("p99Micros", getPercentileNanos(0.99) / 1e3);
+            map.put("maxMicros", getMaxNanos() / 1e3);
+            return map;
+        }
+    }
+
+    // Totals over every read
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder entriesRead = new LongAdder();
+    private final LongAdder undatedEntries = new LongAdder();
+    private final LongAdder[] malformed = new LongAdder[PARSE_ERRORS.length];
+    private final LongAdder parseTimeNanos = new LongAdder();
+    // The last read that parsed its input
+    private volatile long lastReadNanos = 0;
+    private volatile long lastReadLines = 0;
+    private volatile long lastReadBytes = 0;
+    // Sampled step costs (see LogBatch.setTiming)
+    private final LongAdder timedLines = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder aggregateNanos = new LongAdder();
+
+    private final Map<String, Histogram> phases = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> queries = new ConcurrentHashMap<>();
+    // The cache of the analyzer these metrics belong to, for its hit rate
+    private volatile QueryCache queryCache;
+    private ObjectName registeredName;
+
+    public LogMetrics() {
+        for (int i = 0; i < malformed.length; i++) malformed[i] = new LongAdder();
+    }
+
+    // --- Recording (called by LogAnalyzer) ---
+
+    /**
+     * Adds the counters of a batch that was just parsed.
+     * @param nanos How long reading and parsing took, wall clock.
+     */
+    void recordRead(LogBatch batch, long nanos) {
+        reads.increment();
+        linesRead.add(batch.getLinesRead());
+        bytesRead.add(batch.getBytesRead());
+        entriesRead.add(batch.getStats().getTotalEntries());
+        undatedEntries.add(batch.getUndatedEntries());
+        for (ParseError error : PARSE_ERRORS) malformed[error.ordinal()].add(batch.getMalformedCount(error));
+        parseTimeNanos.add(nanos);
+        lastReadNanos = nanos;
+        lastReadLines = batch.getLinesRead();
+        lastReadBytes = batch.getBytesRead();
+        timedLines.add(batch.getTimedLines());
+        parseNanos.add(batch.getParseNanos());
+        hashNanos.add(batch.getHashNanos());
+        aggregateNanos.add(batch.getAggregateNanos());
+        recordPhase("read", nanos);
+        if (batch.getMergeNanos() > 0) recordPhase("read.merge", batch.getMergeNanos());
+    }
+
+    /** Times one run of a phase, e.g. "snapshot.load". */
+    void recordPhase(String phase, long nanos) {
+        phases.computeIfAbsent(phase, p -> new Histogram()).record(nanos);
+    }
+
+    /** Times one call of a query, e.g. "getUniqueIPsForDateRange". */
+    void recordQuery(String query, long nanos) {
+        queries.computeIfAbsent(query, q -> new Histogram()).record(nanos);
+    }
+
+    void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    // --- Reading ---
+
+    /** @return The latency histogram of a query, or null if it has not been called. */
+    public Histogram getQueryHistogram(String query) {
+        return queries.get(query);
+    }
+
+    /** @return The timings of a phase ("read", "read.merge", "snapshot.load", "snapshot.write"), or null. */
+    public Histogram getPhaseHistogram(String phase) {
+        return phases.get(phase);
+    }
+
+    @Override
+    public long getReads() {
+        return reads.sum();
+    }
+    @Override
+    public long getLinesRead() {
+        return linesRead.sum();
+    }
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+    @Override
+    public long getEntriesRead() {
+        return entriesRead.sum();
+    }
+    @Override
+    public long getMalformedLines() {
+        long total = 0;
+        for (LongAdder count : malformed) total += count.sum();
+        return total;
+    }
+    @Override
+    public Map<String, Long> getMalformedLinesByReason() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ParseError error : PARSE_ERRORS) counts.put(error.name(), malformed[error.ordinal()].sum());
+        return counts;
+    }
+    @Override
+    public long getUndatedEntries() {
+        return undatedEntries.sum();
+    }
+
+    @Override
+    public double getLastReadSeconds() {
+        return lastReadNanos / 1e9;
+    }
+    @Override
+    public double getLastReadBytesPerSecond() {
+        return perSecond(lastReadBytes, lastReadNanos);
+    }
+    @Override
+    public double getLastReadLinesPerSecond() {
+        return perSecond(lastReadLines, lastReadNanos);
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    @Override
+    public Map<String, Double> getLineStepNanos() {
+        long lines = timedLines.sum();
+        Map<String, Double> steps = new LinkedHashMap<>();
+        steps.put("parse", lines == 0 ? 0 : parseNanos.sum() / (double) lines);
+        steps.put("hash", lines == 0 ? 0 : hashNanos.sum() / (double) lines);
+        steps.put("aggregate", lines == 0 ? 0 : aggregateNanos.sum() / (double) lines);
+        return steps;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMillis() {
+        Map<String, Double> millis = new TreeMap<>();
+        for (Map.Entry<String, Histogram> phase : phases.entrySet()) millis.put(phase.getKey(), phase.getValue().getTotalNanos() / 1e6);
+        return millis;
+    }
+
+    @Override
+    public Map<String, Long> getQueryCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, Histogram> query : queries.entrySet()) counts.put(query.getKey(), query.getValue().getCount());
+        return counts;
+    }
+    @Override
+    public Map<String, Double> getQueryP50Micros() {
+        return queryPercentiles(0.50);
+    }
+    @Override
+    public Map<String, Double> getQueryP99Micros() {
+        return queryPercentiles(0.99);
+    }
+
+    private Map<String, Double> queryPercentiles(double fraction) {
+        Map<String, Double> micros = new TreeMap<>();
+        for (Map.Entry<String, Histogram> query : queries.entrySet()) {
+            micros.put(query.getKey(), query.getValue().getPercentileNanos(fraction) / 1e3);
+        }
+        return micros;
+    }
+
+    @Override
+    public long getQueryCacheHits() {
+        QueryCache cache = queryCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+    @Override
+    public long getQueryCacheMisses() {
+        QueryCache cache = queryCache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    /**
+     * @return Every metric as nested maps (ready for JsonWriter): "ingest", "lineSteps", "phases", "queries" and "queryCache".
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> ingest = new LinkedHashMap<>();
+        ingest.put("reads", getReads());
+        ingest.put("lines", getLinesRead());
+        ingest.put("bytes", getBytesRead());
+        ingest.put("entries", getEntriesRead());
+        ingest.put("undatedEntries", getUndatedEntries());
+        ingest.put("malformedLines", getMalformedLines());
+        ingest.put("malformedByReason", getMalformedLinesByReason());
+        long nanos = parseTimeNanos.sum();
+        ingest.put("seconds", nanos / 1e9);
+        ingest.put("bytesPerSecond", perSecond(getBytesRead(), nanos));
+        ingest.put("linesPerSecond", perSecond(getLinesRead(), nanos));
+        Map<String, Object> lastRead = new LinkedHashMap<>();
+        lastRead.put("lines", lastReadLines);
+        lastRead.put("bytes", lastReadBytes);
+        lastRead.put("seconds", getLastReadSeconds());
+        lastRead.put("bytesPerSecond", getLastReadBytesPerSecond());
+        lastRead.put("linesPerSecond", getLastReadLinesPerSecond());
+        ingest.put("lastRead", lastRead);
+
+        Map<String, Object> lineSteps = new LinkedHashMap<>();
+        lineSteps.put("sampledLines", timedLines.sum());
+        for (Map.Entry<String, Double> step : getLineStepNanos().entrySet()) lineSteps.put(step.getKey() + "Nanos", step.getValue());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ingest", ingest);
+        result.put("lineSteps", lineSteps);
+        result.put("phases", histograms(phases));
+        result.put("queries", histograms(queries));
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            Map<String, Object> cacheStats = new LinkedHashMap<>();
+            cacheStats.put("hits", cache.getHits());
+            cacheStats.put("misses", cache.getMisses());
+            cacheStats.put("size", cache.size());
+            cacheStats.put("capacity", cache.getCapacity());
+            result.put("queryCache", cacheStats);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> histograms(Map<String, Histogram> histograms) {
+        Map<String, Object> result = new TreeMap<>(); // Sorted, so dumps are easy to compare
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) result.put(entry.getKey(), entry.getValue().toMap());
+        return result;
+    }
+
+    @Override
+    public String toJson() {
+        return JsonWriter.toJson(toMap());
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] {reads, linesRead, bytesRead, entriesRead, undatedEntries, parseTimeNanos,
+                timedLines, parseNanos, hashNanos, aggregateNanos}) {
+            adder.reset();
+        }
+        for (LongAdder count : malformed) count.reset();
+        lastReadNanos = 0;
+        lastReadLines = 0;
+        lastReadBytes = 0;
+        phases.clear();
+        queries.clear();
+    }
+
+    // --- JMX ---
+
+    /**
+     * Publishes these metrics on the platform MBean server as
+     * "WebLogStats:type=LogMetrics,name=&lt;name&gt;", replacing any earlier bean of that name.
+     * @param name Identifies the analyzer, e.g. the log file.
+     * @throws JMException If the bean cannot be registered.
+     */
+    public synchronized void register(String name) throws JMException {
+        unregister();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("WebLogStats:type=LogMetrics,name=" + ObjectName.quote(name));
+        if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        server.registerMBean(this, objectName);
+        registeredName = objectName;
+    }
+
+    /**
+     * Removes the bean published by register, if any.
+     */
+    public synchronized void unregister() throws JMException {
+        if (registeredName == null) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(registeredName)) server.unregisterMBean(registeredName);
+        registeredName = null;
+    }
+}
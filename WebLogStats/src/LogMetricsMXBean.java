@@ -0,0 +1,36 @@
+import java.util.Map;
+
+/**
+ * The JMX view of LogMetrics, e.g. for jconsole or VisualVM. Durations are in
+ * the unit named by the attribute; maps are keyed by reason, phase or query name.
+ */
+public interface LogMetricsMXBean {
+    long getReads();
+    long getLinesRead();
+    long getBytesRead();
+    long getEntriesRead();
+    long getMalformedLines();
+    Map<String, Long> getMalformedLinesByReason();
+    long getUndatedEntries();
+
+    double getLastReadSeconds();
+    double getLastReadBytesPerSecond();
+    double getLastReadLinesPerSecond();
+
+    /** @return Estimated nanoseconds per line for parse, hash and aggregate (from sampled lines). */
+    Map<String, Double> getLineStepNanos();
+    /** @return Total milliseconds spent per phase (read, merge, snapshot load/write). */
+    Map<String, Double> getPhaseMillis();
+
+    Map<String, Long> getQueryCounts();
+    Map<String, Double> getQueryP50Micros();
+    Map<String, Double> getQueryP99Micros();
+    long getQueryCacheHits();
+    long getQueryCacheMisses();
+
+    /** @return Every metric as JSON (see LogMetrics.toMap). */
+    String toJson();
+
+    /** Sets every counter and histogram back to zero. */
+    void reset();
+}
@@ -0,0 +1,455 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Command-line runner for servers and cron jobs: reads one or more logs (files,
+ * directories or globs, gzip included) with the parallel readers, runs the chosen
+ * analyses and writes a text or JSON report to stdout or a file. It never touches
+ * Swing, so it runs on headless machines.
+ *
+ * Records are not retained, so memory depends on the number of distinct IPs, paths
+ * and days rather than on the size of the logs; with --approximate it does not
+ * depend on the number of IPs either.
+ *
+ * Exit status: 0 on success, 1 if a log could not be read or the report written,
+ * 2 for bad arguments.
+ */
+public class LogReport {
+    /** Every analysis, in the order they appear in a report. */
+    static final List<String> ANALYSES = Arrays.asList(
+            "summary", "busiest", "status", "methods", "top-ips", "top-paths", "paths", "sessions", "bursts", "days", "day");
+    private static final String DEFAULT_ANALYSES = "summary,busiest,status,top-ips,top-paths";
+
+    private static final String USAGE = String.join("\n",
+            "Usage: java LogReport [options] LOG...",
+            "  LOG                 A log file, a directory of logs, or a glob such as 'logs/access-*.log*'",
+            "  --analyses LIST     Comma-separated, any of: " + String.join(",", ANALYSES),
+            "                      (default: " + DEFAULT_ANALYSES + ")",
+            "  --format text|json  Report format (default: text)",
+            "  --output FILE       Write the report to FILE instead of stdout",
+            "  --threads N         Reader threads (default: one per processor)",
+            "  --top K             Rows in the top-ips, top-paths and paths lists (default: 10)",
+            "  --day yyyy-MM-dd    The day for the 'day' analysis (default: the busiest day)",
+            "  --session-timeout M Minutes of inactivity that end a visit in 'sessions' (default: 30)",
+            "  --burst-limits S,M  Requests per second and per minute an IP may make before 'bursts' flags it",
+            "                      (default: " + RateMonitor.DEFAULT_MAX_PER_SECOND + "," + RateMonitor.DEFAULT_MAX_PER_MINUTE + "; 0 for no limit)",
+            "  --approximate ERR   Estimate unique IPs with HyperLogLog at this relative error (e.g. 0.01)",
+            "  --snapshots         Load and save .wlsnap snapshots (single files only)",
+            "  --metrics           Add read throughput, malformed lines by reason, phase and query timings",
+            "  --malformed POLICY  What to do with malformed lines: skip, count, sample:N (print the first N;",
+            "                      default sample:10) or quarantine:FILE (write them all to FILE)");
+
+    private final List<String> logs = new ArrayList<>();
+    private final List<String> analyses = new ArrayList<>();
+    private boolean json = false;
+    private String output = null;
+    private int threads = 0;
+    private int top = 10;
+    private LocalDate day = null;
+    private long sessionTimeoutMinutes = Sessionizer.DEFAULT_TIMEOUT_MILLIS / 60000;
+    private int maxPerSecond = RateMonitor.DEFAULT_MAX_PER_SECOND;
+    private int maxPerMinute = RateMonitor.DEFAULT_MAX_PER_MINUTE;
+    private double approximate = 0;
+    private boolean snapshots = false;
+    private boolean metrics = false;
+    private MalformedLinePolicy malformed = MalformedLinePolicy.sample(MalformedLinePolicy.DEFAULT_SAMPLE_SIZE);
+
+    public static void main(String[] args) {
+        LogReport report = new LogReport();
+        try {
+            report.parseArguments(args);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            report.run();
+        } catch (NoSuchFileException e) {
+            System.err.println("Error: no such file " + e.getFile());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    void parseArguments(String[] args) {
+        String analysisList = DEFAULT_ANALYSES;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                logs.add(arg);
+                continue;
+            }
+            if (arg.equals("--snapshots")) {
+                snapshots = true;
+                continue;
+            }
+            if (arg.equals("--metrics")) {
+                metrics = true;
+                continue;
+            }
+            if (arg.equals("--help")) throw new IllegalArgumentException("Runs log analyses without a GUI.");
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + arg);
+            String value = args[++i];
+            switch (arg) {
+                case "--analyses": analysisList = value; break;
+                case "--format":
+                    if (!value.equals("text") && !value.equals("json")) throw new IllegalArgumentException("Unknown format " + value);
+                    json = value.equals("json");
+                    break;
+                case "--output": output = value; break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                case "--top": top = Integer.parseInt(value); break;
+                case "--day": day = LocalDate.parse(value); break;
+                case "--session-timeout": sessionTimeoutMinutes = Long.parseLong(value); break;
+                case "--burst-limits":
+                    String[] limits = value.split(",");
+                    if (limits.length != 2) throw new IllegalArgumentException("Expected --burst-limits PER_SECOND,PER_MINUTE");
+                    maxPerSecond = Integer.parseInt(limits[0].trim());
+                    maxPerMinute = Integer.parseInt(limits[1].trim());
+                    break;
+                case "--approximate": approximate = Double.parseDouble(value); break;
+                case "--malformed": malformed = MalformedLinePolicy.parse(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        for (String name : analysisList.split(",")) {
+            name = name.trim();
+            if (!ANALYSES.contains(name)) throw new IllegalArgumentException("Unknown analysis " + name);
+            if (!analyses.contains(name)) analyses.add(name);
+        }
+        if (logs.isEmpty()) throw new IllegalArgumentException("No log files given");
+        if (threads < 0 || top < 1 || approximate < 0 || sessionTimeoutMinutes < 1 || maxPerSecond < 0 || maxPerMinute < 0) {
+            throw new IllegalArgumentException("Numbers must be positive");
+        }
+        if (approximate > 0 && needsRecords()) throw new IllegalArgumentException("The sessions and bursts analyses cannot be approximate");
+    }
+
+    // Sessions and bursts replay the individual requests in order; everything else comes from the aggregates
+    private boolean needsRecords() {
+        return analyses.contains("sessions") || analyses.contains("bursts");
+    }
+
+    void run() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String log : logs) files.addAll(MultiFileLogReader.expand(log));
+
+        LogAnalyzer analyzer = new LogAnalyzer();
+        analyzer.setVerbose(false);
+        analyzer.setRetainRecords(needsRecords());
+        analyzer.setApproximateUniqueIPs(approximate);
+        analyzer.setUseSnapshots(snapshots);
+        analyzer.setMalformedLinePolicy(malformed);
+        LogMetrics readMetrics = metrics ? new LogMetrics() : null;
+        analyzer.setMetrics(readMetrics);
+        long start = System.nanoTime();
+        if (files.size() == 1) {
+            analyzer.readFileParallel(files.get(0).toString(), threads); // Streams a gzipped log instead
+        } else {
+            List<String> names = new ArrayList<>();
+            for (Path file : files) names.add(file.toString());
+            analyzer.readFiles(names, threads);
+        }
+        long readMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>();
+        for (Path file : files) names.add(file.toString());
+        report.put("files", names);
+        report.put("readMillis", readMillis);
+        for (String analysis : ANALYSES) {
+            if (analyses.contains(analysis)) report.put(analysis, analyze(analysis, analyzer));
+        }
+        if (readMetrics != null) report.put("metrics", readMetrics.toMap()); // Last, so it covers the analyses too
+
+        String text = json ? JsonWriter.toJson(report) : toText(report);
+        if (output == null) {
+            PrintStream out = new PrintStream(System.out, false, "UTF-8");
+            out.print(text);
+            out.flush();
+        } else {
+            Files.write(Paths.get(output), text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private Object analyze(String analysis, LogAnalyzer analyzer) {
+        switch (analysis) {
+            case "summary": return summary(analyzer);
+            case "busiest": return busiest(analyzer);
+            case "status": return status(analyzer);
+            case "methods": return totals(analyzer.getMethodTotals(), Integer.MAX_VALUE, "method");
+            case "top-ips": return topList(analyzer.getTopIPs(top), "ip");
+            case "top-paths": return topList(analyzer.getTopPaths(top), "path");
+            case "paths": return totals(analyzer.getPathTotals(), top, "path");
+            case "sessions": return sessions(analyzer);
+            case "bursts": return bursts(analyzer);
+            case "days": return days(analyzer);
+            default: return day(analyzer);
+        }
+    }
+
+    private Map<String, Object> summary(LogAnalyzer analyzer) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("entries", analyzer.countEntries());
+        summary.put("uniqueIPs", analyzer.countUniqueIPs());
+        summary.put("uniqueIPsApproximate", analyzer.isApproximateUniqueIPs());
+        summary.put("distinctPaths", analyzer.getPathTotals().size());
+        TimeRollup days = analyzer.getTrafficRollup(TimeRollup.Granularity.DAY);
+        long bytes = 0;
+        for (TimeRollup.Bucket bucket : days.getBuckets().values()) bytes += bucket.getBytes();
+        summary.put("bytes", bytes);
+        summary.put("firstDay", days.getBuckets().isEmpty() ? null : days.startOf(days.getBuckets().firstKey()).toLocalDate().toString());
+        summary.put("lastDay", days.getBuckets().isEmpty() ? null : days.startOf(days.getBuckets().lastKey()).toLocalDate().toString());
+        return summary;
+    }
+
+    private Map<String, Object> busiest(LogAnalyzer analyzer) {
+        Map<String, Object> busiest = new LinkedHashMap<>();
+        for (TimeRollup.Granularity granularity : new TimeRollup.Granularity[] {
+                TimeRollup.Granularity.DAY, TimeRollup.Granularity.HOUR, TimeRollup.Granularity.MINUTE}) {
+            TimeRollup rollup = analyzer.getTrafficRollup(granularity);
+            Map.Entry<Long, TimeRollup.Bucket> peak = rollup.getBusiest();
+            String name = granularity.name().toLowerCase(Locale.ROOT);
+            busiest.put(name, peak == null ? null : rollup.startOf(peak.getKey()).toString());
+            busiest.put(name + "Requests", peak == null ? 0 : peak.getValue().getRequests());
+        }
+        return busiest;
+    }
+
+    private Map<String, Object> status(LogAnalyzer analyzer) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        // Requests per class come from the day rollup, which only counts entries with a readable time
+        long[] classes = new long[6];
+        for (TimeRollup.Bucket bucket : analyzer.getTrafficRollup(TimeRollup.Granularity.DAY).getBuckets().values()) {
+            for (int c = 0; c < classes.length; c++) classes[c] += bucket.getStatusClassCount(c);
+        }
+        Map<String, Object> requests = new LinkedHashMap<>();
+        for (int c = 1; c < classes.length; c++) requests.put(c + "xx", classes[c]);
+        if (classes[0] > 0) requests.put("other", classes[0]);
+        status.put("requestsByClass", requests);
+        Map<String, Object> uniqueIPs = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> entry : analyzer.countUniqueIPsByStatus().entrySet()) {
+            uniqueIPs.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        status.put("uniqueIPsByCode", uniqueIPs);
+        return status;
+    }
+
+    private Map<String, Object> sessions(LogAnalyzer analyzer) {
+        SessionStats stats = analyzer.getSessionStats(sessionTimeoutMinutes * 60000);
+        Map<String, Object> sessions = new LinkedHashMap<>();
+        sessions.put("timeoutMinutes", sessionTimeoutMinutes);
+        sessions.put("sessions", stats.getSessions());
+        sessions.put("requestsPerSession", round(stats.getMeanRequests()));
+        sessions.put("pagesPerSession", round(stats.getMeanPages()));
+        sessions.put("bytesPerSession", round(stats.getMeanBytes()));
+        sessions.put("meanDurationSeconds", round(stats.getMeanDurationSeconds()));
+        sessions.put("maxDurationSeconds", round(stats.getMaxDurationSeconds()));
+        sessions.put("durations", stats.getDurationDistribution());
+        sessions.put("pages", stats.getPagesDistribution());
+        // The IPs with the most visits, ties in IP order
+        IpCounts perIp = stats.getSessionsPerIP();
+        Integer[] order = new Integer[perIp.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> perIp.getCount(b) != perIp.getCount(a)
+                ? Integer.compare(perIp.getCount(b), perIp.getCount(a)) : perIp.getIpAddress(a).compareTo(perIp.getIpAddress(b)));
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < Math.min(top, order.length); i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("ip", perIp.getIpAddress(order[i]));
+            row.put("sessions", perIp.getCount(order[i]));
+            rows.add(row);
+        }
+        sessions.put("topIPs", rows);
+        if (stats.getLateRequests() > 0) sessions.put("lateRequests", stats.getLateRequests());
+        return sessions;
+    }
+
+    private Map<String, Object> bursts(LogAnalyzer analyzer) {
+        List<RateMonitor.Burst> events = analyzer.detectBursts(maxPerSecond, maxPerMinute);
+        Map<String, Object> bursts = new LinkedHashMap<>();
+        bursts.put("maxPerSecond", maxPerSecond);
+        bursts.put("maxPerMinute", maxPerMinute);
+        bursts.put("events", events.size());
+        // One row per flagged IP: when it was first flagged and how many times, most flagged first
+        Map<String, Map<String, Object>> byIp = new LinkedHashMap<>();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        for (RateMonitor.Burst event : events) {
+            Map<String, Object> row = byIp.get(event.getIpAddress());
+            if (row == null) {
+                row = new LinkedHashMap<>();
+                row.put("ip", event.getIpAddress());
+                row.put("first", format.format(event.getTime()));
+                row.put("perSecond", 0);
+                row.put("perMinute", 0);
+                byIp.put(event.getIpAddress(), row);
+            }
+            String window = event.getWindow() == RateMonitor.Window.SECOND ? "perSecond" : "perMinute";
+            row.put(window, (Integer) row.get(window) + 1);
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(byIp.values());
+        rows.sort((a, b) -> Integer.compare(flags(b), flags(a))); // Stable, so ties stay in detection order
+        bursts.put("flaggedIPs", rows.size());
+        bursts.put("topIPs", rows.subList(0, Math.min(top, rows.size())));
+        return bursts;
+    }
+
+    private static int flags(Map<String, Object> row) {
+        return (Integer) row.get("perSecond") + (Integer) row.get("perMinute");
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static List<Map<String, Object>> topList(List<SpaceSaving.Entry> entries, String label) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (SpaceSaving.Entry entry : entries) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put(label, entry.getItem());
+            row.put("count", entry.getCount());
+            row.put("maxError", entry.getError());
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static List<Map<String, Object>> totals(List<RequestStats.Totals> totals, int limit, String label) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (RequestStats.Totals total : totals) {
+            if (rows.size() >= limit) break;
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put(label, total.getKey().isEmpty() ? "(none)" : total.getKey());
+            row.put("hits", total.getHits());
+            row.put("bytes", total.getBytes());
+            row.put("4xx", total.getClientErrors());
+            row.put("5xx", total.getServerErrors());
+            row.put("errorRate", Math.round(total.getErrorRate() * 10000) / 10000.0);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static List<Map<String, Object>> days(LogAnalyzer analyzer) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<Long, TimeRollup.Bucket> entry : analyzer.getTrafficRollup(TimeRollup.Granularity.DAY).getBuckets().entrySet()) {
+            LocalDate date = LocalDate.ofEpochDay(entry.getKey());
+            TimeRollup.Bucket bucket = entry.getValue();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("day", date.toString());
+            row.put("requests", bucket.getRequests());
+            row.put("bytes", bucket.getBytes());
+            row.put("uniqueIPs", analyzer.countUniqueIPsOnDay(date));
+            row.put("4xx", bucket.getStatusClassCount(4));
+            row.put("5xx", bucket.getStatusClassCount(5));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private Map<String, Object> day(LogAnalyzer analyzer) {
+        TimeRollup rollup = analyzer.getTrafficRollup(TimeRollup.Granularity.DAY);
+        LocalDate date = day;
+        if (date == null) {
+            Map.Entry<Long, TimeRollup.Bucket> busiest = rollup.getBusiest();
+            if (busiest != null) date = LocalDate.ofEpochDay(busiest.getKey());
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("day", date == null ? null : date.toString());
+        if (date == null) return result;
+        TimeRollup.Bucket bucket = rollup.getBuckets().get(date.toEpochDay());
+        result.put("requests", bucket == null ? 0 : bucket.getRequests());
+        result.put("bytes", bucket == null ? 0 : bucket.getBytes());
+        result.put("uniqueIPs", analyzer.countUniqueIPsOnDay(date));
+        result.put("topIPs", topList(analyzer.getTopIPsOnDay(date, top), "ip"));
+        return result;
+    }
+
+    // --- Text rendering ---
+
+    /**
+     * Lays out a report: a heading per section, "name: value" lines for a section
+     * that is a map, and an aligned table for a section that is a list of rows.
+     */
+    static String toText(Map<String, Object> report) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Object> section : report.entrySet()) {
+            Object value = section.getValue();
+            if (!(value instanceof Map) && !(value instanceof List && !((List<?>) value).isEmpty()
+                    && ((List<?>) value).get(0) instanceof Map)) {
+                text.append(section.getKey()).append(": ").append(value).append('\n');
+                continue;
+            }
+            text.append('\n').append("== ").append(section.getKey()).append(" ==\n");
+            if (value instanceof Map) appendFields(text, (Map<?, ?>) value, "  ");
+            else appendTable(text, (List<?>) value);
+        }
+        return text.toString();
+    }
+
+    private static void appendFields(StringBuilder text, Map<?, ?> fields, String indent) {
+        int width = 0;
+        for (Object key : fields.keySet()) width = Math.max(width, key.toString().length());
+        for (Map.Entry<?, ?> field : fields.entrySet()) {
+            if (field.getValue() instanceof Map) {
+                text.append(indent).append(field.getKey()).append(":\n");
+                appendFields(text, (Map<?, ?>) field.getValue(), indent + "  ");
+            } else if (field.getValue() instanceof List) {
+                text.append(indent).append(field.getKey()).append(":\n");
+                appendTable(text, (List<?>) field.getValue());
+            } else {
+                text.append(indent).append(pad(field.getKey().toString() + ":", width + 2)).append(field.getValue()).append('\n');
+            }
+        }
+    }
+
+    private static void appendTable(StringBuilder text, List<?> rows) {
+        if (rows.isEmpty()) {
+            text.append("  (none)\n");
+            return;
+        }
+        List<String> columns = new ArrayList<>();
+        for (Object column : ((Map<?, ?>) rows.get(0)).keySet()) columns.add(column.toString());
+        int[] widths = new int[columns.size()];
+        for (int c = 0; c < columns.size(); c++) widths[c] = columns.get(c).length();
+        for (Object row : rows) {
+            int c = 0;
+            for (Object cell : ((Map<?, ?>) row).values()) {
+                widths[c] = Math.max(widths[c], String.valueOf(cell).length());
+                c++;
+            }
+        }
+        StringBuilder line = new StringBuilder(" ");
+        for (int c = 0; c < columns.size(); c++) line.append(' ').append(pad(columns.get(c), widths[c] + 1));
+        text.append(line.toString().replaceAll("\\s+$", "")).append('\n');
+        for (Object row : rows) {
+            line.setLength(0);
+            line.append(' ');
+            int c = 0;
+            for (Object cell : ((Map<?, ?>) row).values()) line.append(' ').append(pad(String.valueOf(cell), widths[c++] + 1));
+            text.append(line.toString().replaceAll("\\s+$", "")).append('\n');
+        }
+    }
+
+    private static String pad(String s, int width) {
+        StringBuilder padded = new StringBuilder(s);
+        while (padded.length() < width) padded.append(' ');
+        return padded.toString();
+    }
+}
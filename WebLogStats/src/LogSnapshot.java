@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.ZoneId;
+
+/**
+ * Saves a parsed LogBatch (columns, dictionaries, aggregates and indexes) to a
+ * binary file next to the log it came from, e.g. "access.log.wlsnap", so the next
+ * run can load it instead of parsing the log again. The snapshot records the
+ * log's size and modification time; if either has changed since, the snapshot is
+ * stale and is ignored. Loading maps the file and copies each column out in bulk
+ * (see SnapshotReader), with no parsing or hashing.
+ *
+ * A snapshot only matches the settings it was written with (whether records were
+ * kept, and the sketch precision), since those decide what it contains. It also
+ * records the time zone it was built in: day buckets, the day index and the
+ * rollups all follow the local calendar, so a snapshot from another zone is stale.
+ */
+public class LogSnapshot {
+    public static final String EXTENSION = ".wlsnap";
+    // Added to the snapshot's name while it is being written
+    private static final String TEMP_SUFFIX = ".tmp";
+    // "WLSN", followed by the format version; bump VERSION whenever the layout changes
+    private static final int MAGIC = 0x4e534c57;
+    private static final int VERSION = 7;
+
+    private LogSnapshot() {
+    }
+
+    /**
+     * @return Where the snapshot of a log file lives.
+     */
+    public static Path pathFor(Path logFile) {
+        return Paths.get(logFile.toString() + EXTENSION);
+    }
+
+    /**
+     * @return Whether the file is a snapshot (or one being written) rather than a log,
+     *         so that listing a log directory can leave it out.
+     */
+    public static boolean isSnapshotFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(EXTENSION) || name.endsWith(EXTENSION + TEMP_SUFFIX);
+    }
+
+    /**
+     * Records the state of a log file before it is read, so a snapshot written
+     * afterwards is keyed to the version of the file that was actually parsed.
+     */
+    public static final class SourceKey {
+        private final long size;
+        private final long modifiedMillis;
+
+        private SourceKey(long size, long modifiedMillis) {
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+        }
+
+        public static SourceKey of(Path logFile) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(logFile, BasicFileAttributes.class);
+            return new SourceKey(attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+    }
+
+    /**
+     * Writes the snapshot of a log file. It is written to a temporary file and then
+     * renamed, so a crash never leaves a half-written snapshot behind.
+     * @param batch Everything parsed from the log.
+     * @param logFile The log the batch was read from.
+     * @param key The log's size and modification time from before it was read.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public static void write(LogBatch batch, Path logFile, SourceKey key) throws IOException {
+        Path target = pathFor(logFile);
+        Path temp = Paths.get(target.toString() + TEMP_SUFFIX);
+        try {
+            try (SnapshotWriter out = new SnapshotWriter(temp)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(key.size);
+                out.writeLong(key.modifiedMillis);
+                out.writeString(ZoneId.systemDefault().getId()); // The zone the batch's days were cut in
+                out.writeInt(batch.getStats().getSketchPrecision());
+                out.writeBoolean(batch.isRetainRecords());
+                batch.writeTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Loads the snapshot of a log file if there is one that is up to date and was
+     * written with the same settings.
+     * @param logFile The log file.
+     * @param retainRecords Whether records are wanted.
+     * @param sketchPrecision The HyperLogLog precision wanted, or 0 for exact counts.
+     * @return The batch as it was saved, or null if there is no usable snapshot
+     *         (missing, stale, other settings or time zone, other format version, or damaged).
+     */
+    public static LogBatch read(Path logFile, boolean retainRecords, int sketchPrecision) {
+        Path snapshot = pathFor(logFile);
+        if (!Files.isRegularFile(snapshot)) return null;
+        try (SnapshotReader in = new SnapshotReader(snapshot)) {
+            SourceKey current = SourceKey.of(logFile);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (in.readLong() != current.size || in.readLong() != current.modifiedMillis) return null;
+            if (!in.readString().equals(ZoneId.systemDefault().getId())) return null;
+            if (in.readInt() != sketchPrecision) return null;
+            boolean withRecords = retainRecords && sketchPrecision == 0;
+            if (in.readBoolean() != withRecords) return null;
+            return LogBatch.readFrom(in, withRecords);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // A damaged snapshot is not an error: the log is simply parsed again
+            System.err.println("Ignoring unreadable snapshot " + snapshot + ": " + e);
+            return null;
+        }
+    }
+}
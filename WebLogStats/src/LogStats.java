@@ -0,0 +1,315 @@
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Running totals for a log file, updated one entry at a time while the file is
+ * being read. Nothing here grows with the number of lines read - only with the
+ * number of distinct IPs, days and status codes - so a huge log can be summarized
+ * without keeping every LogEntry in memory.
+ *
+ * IPs are tracked by their IpDictionary id, so counting never boxes or hashes a String.
+ * In approximate mode (a sketch precision above 0) IPs are not given ids at all:
+ * unique IPs overall, per day and per status code are estimated with HyperLogLog
+ * sketches instead, so memory no longer grows with the number of distinct IPs.
+ */
+public class LogStats {
+    private final IpDictionary ips;
+    private int totalEntries = 0;
+    private long minMillis = ParsedLine.NO_TIME;
+    private long maxMillis = ParsedLine.NO_TIME;
+
+    // IP id -> number of log lines for that IP
+    private int[] ipCounts = new int[64];
+    private int distinctIPs = 0;
+    // Calendar day (local time zone) -> (IP id -> number of log lines that day)
+    private TreeMap<LocalDate, IntIntMap> dayIPCounts = new TreeMap<>();
+    // IP id -> number of log lines with no readable timestamp (usually empty)
+    private IntIntMap undatedIPCounts = new IntIntMap();
+    // Status code -> ids of the unique IPs that received it
+    private TreeMap<Integer, IntSet> statusIPs = new TreeMap<>();
+
+    // Approximate mode only (sketchPrecision > 0): HyperLogLog sketches of the IPs seen
+    private final int sketchPrecision;
+    private HyperLogLog ipSketch;
+    private TreeMap<LocalDate, HyperLogLog> daySketches = new TreeMap<>();
+    private TreeMap<Integer, HyperLogLog> statusSketches = new TreeMap<>();
+
+    // The day the previous entry fell on, so consecutive lines skip the time zone lookup
+    private long cachedDayStart = 1, cachedDayEnd = 0;
+    private LocalDate cachedDay;
+
+    /**
+     * @param ips The dictionary that the IP ids passed to add() come from.
+     */
+    public LogStats(IpDictionary ips) {
+        this(ips, 0);
+    }
+
+    /**
+     * @param ips The dictionary that the IP ids passed to add() come from.
+     * @param sketchPrecision HyperLogLog precision for addSketched(), or 0 to count IPs exactly.
+     */
+    public LogStats(IpDictionary ips, int sketchPrecision) {
+        this.ips = ips;
+        this.sketchPrecision = sketchPrecision;
+        if (sketchPrecision > 0) ipSketch = new HyperLogLog(sketchPrecision);
+    }
+
+    /**
+     * Folds a single entry into the running totals.
+     * @param ipId The client's IpDictionary id, or -1 if the entry has no IP.
+     * @param epochMillis The access time, or ParsedLine.NO_TIME if unknown.
+     * @param status The HTTP status code.
+     */
+    public void add(int ipId, long epochMillis, int status) {
+        boolean hasTime = countEntry(epochMillis);
+        if (ipId < 0) {
+            return; // Nothing else can be keyed without an IP
+        }
+
+        addVisits(ipId, 1);
+        IntSet ipsForStatus = statusIPs.get(status);
+        if (ipsForStatus == null) {
+            ipsForStatus = new IntSet();
+            statusIPs.put(status, ipsForStatus);
+        }
+        ipsForStatus.add(ipId);
+        if (hasTime) {
+            LocalDate day = dayOf(epochMillis);
+            IntIntMap countsOnDay = dayIPCounts.get(day);
+            if (countsOnDay == null) {
+                countsOnDay = new IntIntMap();
+                dayIPCounts.put(day, countsOnDay);
+            }
+            countsOnDay.addTo(ipId, 1);
+        } else {
+            undatedIPCounts.addTo(ipId, 1);
+        }
+    }
+
+    /**
+     * Folds a single entry into the running totals in approximate mode.
+     * @param ipHash The client's IpDictionary.hash.
+     * @param epochMillis The access time, or ParsedLine.NO_TIME if unknown.
+     * @param status The HTTP status code.
+     */
+    public void addSketched(long ipHash, long epochMillis, int status) {
+        boolean hasTime = countEntry(epochMillis);
+        ipSketch.addHash(ipHash);
+        sketchFor(statusSketches, status).addHash(ipHash);
+        if (hasTime) sketchFor(daySketches, dayOf(epochMillis)).addHash(ipHash);
+    }
+
+    private <K> HyperLogLog sketchFor(TreeMap<K, HyperLogLog> sketches, K key) {
+        HyperLogLog sketch = sketches.get(key);
+        if (sketch == null) {
+            sketch = new HyperLogLog(sketchPrecision);
+            sketches.put(key, sketch);
+        }
+        return sketch;
+    }
+
+    /**
+     * Counts an entry and widens the date range. @return true if the entry has a time.
+     */
+    private boolean countEntry(long epochMillis) {
+        totalEntries++;
+        if (epochMillis == ParsedLine.NO_TIME) return false;
+        if (minMillis == ParsedLine.NO_TIME || epochMillis < minMillis) minMillis = epochMillis;
+        if (maxMillis == ParsedLine.NO_TIME || epochMillis > maxMillis) maxMillis = epochMillis;
+        return true;
+    }
+
+    private void addVisits(int ipId, int visits) {
+        if (ipId >= ipCounts.length) {
+            ipCounts = Arrays.copyOf(ipCounts, Math.max(ipId + 1, ipCounts.length * 2));
+        }
+        if (ipCounts[ipId] == 0) distinctIPs++;
+        ipCounts[ipId] += visits;
+    }
+
+    /**
+     * @return The local calendar day of a timestamp (cached, so repeated calls for the same day are cheap).
+     */
+    LocalDate dayOf(long epochMillis) {
+        if (epochMillis < cachedDayStart || epochMillis >= cachedDayEnd) {
+            ZoneId zone = ZoneId.systemDefault();
+            cachedDay = toLocalDay(epochMillis);
+            cachedDayStart = cachedDay.atStartOfDay(zone).toInstant().toEpochMilli();
+            cachedDayEnd = cachedDay.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+        return cachedDay;
+    }
+
+    /**
+     * Adds the totals from another LogStats (e.g. one built from a different chunk
+     * of the same file) into this one. The other object is left unchanged.
+     * @param other The totals to fold in.
+     * @param ipMap Translates the other object's IP ids into this object's ids (see IpDictionary.remapFrom).
+     */
+    public void merge(LogStats other, int[] ipMap) {
+        totalEntries += other.totalEntries;
+        if (other.minMillis != ParsedLine.NO_TIME && (minMillis == ParsedLine.NO_TIME || other.minMillis < minMillis)) minMillis = other.minMillis;
+        if (other.maxMillis != ParsedLine.NO_TIME && (maxMillis == ParsedLine.NO_TIME || other.maxMillis > maxMillis)) maxMillis = other.maxMillis;
+
+        for (int id = 0; id < other.ipCounts.length && id < ipMap.length; id++) {
+            if (other.ipCounts[id] > 0) addVisits(ipMap[id], other.ipCounts[id]);
+        }
+        for (Map.Entry<LocalDate, IntIntMap> day : other.dayIPCounts.entrySet()) {
+            IntIntMap countsOnDay = dayIPCounts.computeIfAbsent(day.getKey(), k -> new IntIntMap());
+            day.getValue().forEach((id, count) -> countsOnDay.addTo(ipMap[id], count));
+        }
+        other.undatedIPCounts.forEach((id, count) -> undatedIPCounts.addTo(ipMap[id], count));
+        for (Map.Entry<Integer, IntSet> status : other.statusIPs.entrySet()) {
+            IntSet ipsForStatus = statusIPs.computeIfAbsent(status.getKey(), k -> new IntSet());
+            status.getValue().forEach(id -> ipsForStatus.add(ipMap[id]));
+        }
+        if (other.ipSketch != null) {
+            if (ipSketch == null) throw new IllegalArgumentException("Cannot merge approximate totals into exact ones");
+            ipSketch.merge(other.ipSketch);
+            for (Map.Entry<LocalDate, HyperLogLog> day : other.daySketches.entrySet()) sketchFor(daySketches, day.getKey()).merge(day.getValue());
+            for (Map.Entry<Integer, HyperLogLog> status : other.statusSketches.entrySet()) sketchFor(statusSketches, status.getKey()).merge(status.getValue());
+        }
+    }
+
+    /**
+     * Converts a timestamp to the calendar day it falls on in the default time zone
+     * (the same zone SimpleDateFormat uses when printing "MMM dd" keys).
+     */
+    public static LocalDate toLocalDay(Date date) {
+        return toLocalDay(date.getTime());
+    }
+    public static LocalDate toLocalDay(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    // --- Getters (the returned collections are live; callers must not modify them) ---
+    public IpDictionary getIpDictionary() {
+        return ips;
+    }
+    public int getTotalEntries() {
+        return totalEntries;
+    }
+    public Date getMinDate() {
+        return minMillis == ParsedLine.NO_TIME ? null : new Date(minMillis);
+    }
+    public Date getMaxDate() {
+        return maxMillis == ParsedLine.NO_TIME ? null : new Date(maxMillis);
+    }
+    public int getDistinctIPs() {
+        return distinctIPs;
+    }
+    /**
+     * @return The number of log lines for an IP id (0 if it never appeared).
+     */
+    public int getVisits(int ipId) {
+        return ipId < ipCounts.length ? ipCounts[ipId] : 0;
+    }
+    /**
+     * @return The number of ids getVisits can be asked about (some may have 0 visits).
+     */
+    public int getIpIdLimit() {
+        return Math.min(ipCounts.length, ips.size());
+    }
+    public TreeMap<LocalDate, IntIntMap> getDayIPCounts() {
+        return dayIPCounts;
+    }
+    public IntIntMap getUndatedIPCounts() {
+        return undatedIPCounts;
+    }
+    public TreeMap<Integer, IntSet> getStatusIPs() {
+        return statusIPs;
+    }
+    /**
+     * @return true if unique IPs are estimated by the sketches below rather than tracked by id.
+     */
+    public boolean isApproximate() {
+        return ipSketch != null;
+    }
+    public int getSketchPrecision() {
+        return sketchPrecision;
+    }
+    /** @return The sketch of every IP, or null when counting exactly. */
+    public HyperLogLog getIpSketch() {
+        return ipSketch;
+    }
+    public TreeMap<LocalDate, HyperLogLog> getDaySketches() {
+        return daySketches;
+    }
+    public TreeMap<Integer, HyperLogLog> getStatusSketches() {
+        return statusSketches;
+    }
+
+    // --- Snapshot support (see LogSnapshot); the IpDictionary is saved by the caller ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        out.writeInt(sketchPrecision);
+        out.writeInt(totalEntries);
+        out.writeLong(minMillis);
+        out.writeLong(maxMillis);
+        out.writeInt(distinctIPs);
+        out.writeIntArray(ipCounts);
+        out.writeInt(dayIPCounts.size());
+        for (Map.Entry<LocalDate, IntIntMap> day : dayIPCounts.entrySet()) {
+            out.writeLong(day.getKey().toEpochDay());
+            day.getValue().writeTo(out);
+        }
+        undatedIPCounts.writeTo(out);
+        out.writeInt(statusIPs.size());
+        for (Map.Entry<Integer, IntSet> status : statusIPs.entrySet()) {
+            out.writeInt(status.getKey());
+            status.getValue().writeTo(out);
+        }
+        if (ipSketch == null) return;
+        ipSketch.writeTo(out);
+        out.writeInt(daySketches.size());
+        for (Map.Entry<LocalDate, HyperLogLog> day : daySketches.entrySet()) {
+            out.writeLong(day.getKey().toEpochDay());
+            day.getValue().writeTo(out);
+        }
+        out.writeInt(statusSketches.size());
+        for (Map.Entry<Integer, HyperLogLog> status : statusSketches.entrySet()) {
+            out.writeInt(status.getKey());
+            status.getValue().writeTo(out);
+        }
+    }
+
+    static LogStats readFrom(SnapshotReader in, IpDictionary ips) throws IOException {
+        int sketchPrecision = in.readInt();
+        if (sketchPrecision != 0 && (sketchPrecision < HyperLogLog.MIN_PRECISION || sketchPrecision > HyperLogLog.MAX_PRECISION)) {
+            throw new IOException("Snapshot is damaged (bad sketch precision)");
+        }
+        LogStats stats = new LogStats(ips, sketchPrecision);
+        stats.totalEntries = in.readInt();
+        stats.minMillis = in.readLong();
+        stats.maxMillis = in.readLong();
+        stats.distinctIPs = in.readInt();
+        stats.ipCounts = in.readIntArray();
+        int days = in.readLength();
+        for (int i = 0; i < days; i++) {
+            LocalDate day = LocalDate.ofEpochDay(in.readLong());
+            stats.dayIPCounts.put(day, IntIntMap.readFrom(in));
+        }
+        stats.undatedIPCounts = IntIntMap.readFrom(in);
+        int statuses = in.readLength();
+        for (int i = 0; i < statuses; i++) {
+            int status = in.readInt();
+            stats.statusIPs.put(status, IntSet.readFrom(in));
+        }
+        if (sketchPrecision == 0) return stats;
+        stats.ipSketch = HyperLogLog.readFrom(in);
+        days = in.readLength();
+        for (int i = 0; i < days; i++) {
+            LocalDate day = LocalDate.ofEpochDay(in.readLong());
+            stats.daySketches.put(day, HyperLogLog.readFrom(in));
+        }
+        statuses = in.readLength();
+        for (int i = 0; i < statuses; i++) {
+            int status = in.readInt();
+            stats.statusSketches.put(status, HyperLogLog.readFrom(in));
+        }
+        return stats;
+    }
+}
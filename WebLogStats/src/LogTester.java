@@ -1,8 +1,14 @@
+import javax.management.JMException;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap; // Ensure HashMap is imported
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 public class LogTester {
 
@@ -34,57 +40,132 @@ public class LogTester {
             return;
         }
 
-        // --- 1. Select Log File (Same as before) ---
-        File selectedFile = selectLogFile();
-        if (selectedFile == null) {
-            // selectLogFile prints cancellation message, show dialog just in case
+        // --- 1. Select Log File(s) ---
+        File[] selectedFiles = selectLogFiles();
+        if (selectedFiles == null) {
+            // selectLogFiles prints cancellation message, show dialog just in case
              JOptionPane.showMessageDialog(null, "No file selected. Exiting.", "Cancelled", JOptionPane.WARNING_MESSAGE);
             return;
         }
-        String filename = selectedFile.getAbsolutePath();
-        String shortFilename = selectedFile.getName();
-        System.out.println("Selected file: " + filename);
+        // A single file is read as before; several files or a directory are read together and merged
+        boolean singleFile = selectedFiles.length == 1 && selectedFiles[0].isFile();
+        String filename = singleFile ? selectedFiles[0].getAbsolutePath() : selectedFiles.length + " selections";
+        String shortFilename = selectedFiles.length == 1 ? selectedFiles[0].getName() : selectedFiles.length + " files";
+        System.out.println("Selected: " + Arrays.toString(selectedFiles));
 
         // --- 2. Read and Analyze Selected File (Common setup) ---
+        // Reading a big log takes a while, so it runs on a worker thread; the EDT stays
+        // free to repaint and to update the progress dialog (whose Cancel button stops the read)
         LogAnalyzer analyzer = new LogAnalyzer();
+        analyzer.setUseSnapshots(true); // An unchanged log is reloaded from its .wlsnap file instead of parsed again
+        ReadProgress progress = new ReadProgress();
+        analyzer.setProgress(progress);
+        LogMetrics metrics = new LogMetrics(); // Read and query timings, visible in jconsole
+        analyzer.setMetrics(metrics);
         try {
-            System.out.println("Reading and analyzing selected log file, please wait...");
-            analyzer.readFile(filename); // Reads all records into the analyzer
-            System.out.println("Finished reading and analyzing selected file.");
-        } catch (IOException e) {
-            System.err.println("ERROR: Could not read selected file: " + filename + " - " + e.getMessage());
-            JOptionPane.showMessageDialog(null, "Error reading log file:\n" + e.getMessage(), "File Read Error", JOptionPane.ERROR_MESSAGE);
-            return; // Exit if file cannot be read
-        } catch (Exception e) {
-            // Catch potential parsing errors or other issues during readFile
-            System.err.println("ERROR during file processing: " + e.getMessage());
-             JOptionPane.showMessageDialog(null, "An unexpected error occurred during processing:\n" + e.getMessage(), "Processing Error", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace(); // Print stack trace for debugging
-            return; // Exit on unexpected errors
+            metrics.register(shortFilename);
+        } catch (JMException e) {
+            System.err.println("Could not publish metrics over JMX: " + e.getMessage()); // Not fatal
         }
+        ReadProgressDialog progressDialog = new ReadProgressDialog(null, shortFilename, progress);
+        System.out.println("Reading and analyzing selected log file, please wait...");
+
+        SwingWorker<Object, Void> readWorker = new SwingWorker<Object, Void>() {
+            @Override
+            protected Object doInBackground() throws Exception {
+                if (singleFile) {
+                    analyzer.readFile(filename); // Reads all records into the analyzer
+                } else {
+                    List<String> filenames = new ArrayList<>();
+                    for (File selected : selectedFiles) {
+                        for (Path file : MultiFileLogReader.expand(selected.getAbsolutePath())) filenames.add(file.toString());
+                    }
+                    analyzer.readFiles(filenames, 0); // One file per thread, merged into one result
+                }
+                System.out.println("Finished reading and analyzing selected file.");
+                return prepareAnalysis(analyzer, choice); // The first results are computed here too, not on the EDT
+            }
+
+            @Override
+            protected void done() { // Back on the EDT
+                progressDialog.dispose();
+                Object prepared;
+                try {
+                    prepared = get();
+                } catch (InterruptedException e) {
+                    return; // Cannot happen: done() only runs once the work is over
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof CancellationException) {
+                        System.out.println("Reading cancelled by user. Exiting.");
+                        JOptionPane.showMessageDialog(null, "Reading was cancelled. Exiting.", "Cancelled", JOptionPane.WARNING_MESSAGE);
+                    } else if (cause instanceof IOException) {
+                        System.err.println("ERROR: Could not read selected file: " + filename + " - " + cause.getMessage());
+                        JOptionPane.showMessageDialog(null, "Error reading log file:\n" + cause.getMessage(), "File Read Error", JOptionPane.ERROR_MESSAGE);
+                    } else {
+                        // Catch potential parsing errors or other issues during readFile
+                        System.err.println("ERROR during file processing: " + cause.getMessage());
+                        JOptionPane.showMessageDialog(null, "An unexpected error occurred during processing:\n" + cause.getMessage(), "Processing Error", JOptionPane.ERROR_MESSAGE);
+                        cause.printStackTrace(); // Print stack trace for debugging
+                    }
+                    return; // Exit if the file could not be read
+                }
+                showAnalysis(analyzer, shortFilename, choice, prepared);
+            }
+        };
+        readWorker.execute();
+        progressDialog.setVisible(true);
+    }
 
-        // --- 3. Perform Chosen Analysis and Launch Window ---
+    /**
+     * Computes what the chosen window needs before it opens. Runs on the reading
+     * worker thread, right after the read.
+     * @return The initial range results for choice 0, the visits for choice 1, otherwise null.
+     */
+    private static Object prepareAnalysis(LogAnalyzer analyzer, int choice) {
         switch (choice) {
-            case 0: // User chose "Finding Unique IP Addresses" (Index 0)
+            case 0: // Unique IP Addresses: initial range results needed for the original window
                 System.out.println("Performing Unique IP Address Analysis...");
-                // Calculate initial range results needed for the original window
                 int count200s = analyzer.countUniqueIPsInRange(200, 299);
                 int count300s = analyzer.countUniqueIPsInRange(300, 399);
-                String rangeResults = String.format(
+                return String.format(
                         "Unique IPs with status 200-299: %d\nUnique IPs with status 300-399: %d",
                         count200s, count300s
                 );
+            case 1: // Website Visits
+                System.out.println("Performing Website Visit Count Analysis...");
+                // IPs stay as ids until the window shows them; sessions need the records
+                SessionStats sessions = analyzer.isRecordsKept() ? analyzer.getSessionStats() : null;
+                return new Visits(analyzer.getVisitCounts(), sessions);
+            default: // SummaryStatsWindow computes its own summary in the background
+                return null;
+        }
+    }
+
+    // What the visit count window shows: requests and sessions per IP
+    private static class Visits {
+        final IpCounts counts;
+        final SessionStats sessions; // null when the records were not retained
+
+        Visits(IpCounts counts, SessionStats sessions) {
+            this.counts = counts;
+            this.sessions = sessions;
+        }
+    }
+
+    // --- 3. Launch the Window for the Chosen Analysis (on the EDT) ---
+    private static void showAnalysis(LogAnalyzer analyzer, String shortFilename, int choice, Object prepared) {
+        switch (choice) {
+            case 0: // User chose "Finding Unique IP Addresses" (Index 0)
                 // Launch the original LogAnalysisWindow (ensure it exists and compiles)
-                 new LogAnalysisWindow(analyzer, shortFilename, rangeResults);
+                 new LogAnalysisWindow(analyzer, shortFilename, (String) prepared);
                 System.out.println("\n--- Unique IP Analysis window launched. ---");
                 break;
 
             case 1: // User chose "Counting Website Visits" (Index 1)
-                System.out.println("Performing Website Visit Count Analysis...");
-                // Call the method to get the counts
-                HashMap<String, Integer> ipCounts = analyzer.countVisitsPerIP();
                  // Launch the VisitCountWindow (ensure it exists and compiles)
-                new VisitCountWindow(shortFilename, ipCounts);
+                Visits visits = (Visits) prepared;
+                new VisitCountWindow(shortFilename, visits.counts, visits.sessions);
                 System.out.println("\n--- Visit Count Analysis window launched. ---");
                 break;
 
@@ -102,8 +183,8 @@ public class LogTester {
         }
     }
 
-    // selectLogFile method remains the same
-    private static File selectLogFile() {
+    // Lets the user pick one or more log files, or a whole directory of them
+    private static File[] selectLogFiles() {
         JFileChooser fileChooser = new JFileChooser();
 
         // OPTIONAL: Set a default starting directory if desired
@@ -119,17 +200,20 @@ public class LogTester {
         }
 
 
-        // Set a filter for .log files
-        FileNameExtensionFilter logFilter = new FileNameExtensionFilter("Log Files (*.log)", "log");
+        // Set a filter for .log files (and gzipped rotated logs)
+        FileNameExtensionFilter logFilter = new FileNameExtensionFilter("Log Files (*.log, *.gz)", "log", "gz");
         fileChooser.setFileFilter(logFilter);
         fileChooser.setAcceptAllFileFilterUsed(true); // Allows user to select "All Files"
+        fileChooser.setMultiSelectionEnabled(true);
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
 
         System.out.println("Opening file chooser dialog...");
         int result = fileChooser.showOpenDialog(null); // Parent component is null
 
         if (result == JFileChooser.APPROVE_OPTION) {
-            File selectedFile = fileChooser.getSelectedFile();
-            return selectedFile; // Return the chosen file
+            File[] selectedFiles = fileChooser.getSelectedFiles();
+            if (selectedFiles.length == 0) selectedFiles = new File[] {fileChooser.getSelectedFile()};
+            return selectedFiles; // Return the chosen file(s)
         } else {
             System.out.println("File selection cancelled by user or failed.");
             return null; // Return null if no file was chosen
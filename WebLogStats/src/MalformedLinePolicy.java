@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a read does with lines that are not in Common Log Format. Every batch
+ * counts them per ParseError anyway (see LogMetrics); on top of that a policy can:
+ * - skip: do nothing else
+ * - count: print one line with the total at the end of the read
+ * - sample N: print the first N of them, then the total (the default, with N = 10)
+ * - quarantine FILE: write every one of them to FILE, from a background thread
+ *
+ * Nothing is printed or copied for lines that are not shown or quarantined, so a
+ * corrupt log costs the parse attempt and one counter per bad line.
+ * Policies are immutable; LogAnalyzer opens a Handler for each read.
+ */
+public final class MalformedLinePolicy {
+    public enum Action { SKIP, COUNT, SAMPLE, QUARANTINE }
+
+    public static final int DEFAULT_SAMPLE_SIZE = 10;
+
+    private final Action action;
+    private final int sampleSize;
+    private final Path quarantineFile;
+
+    private MalformedLinePolicy(Action action, int sampleSize, Path quarantineFile) {
+        this.action = action;
+        this.sampleSize = sampleSize;
+        this.quarantineFile = quarantineFile;
+    }
+
+    /** @return A policy that drops malformed lines without a word. */
+    public static MalformedLinePolicy skip() {
+        return new MalformedLinePolicy(Action.SKIP, 0, null);
+    }
+
+    /** @return A policy that prints only how many lines were malformed, once per read. */
+    public static MalformedLinePolicy countOnly() {
+        return new MalformedLinePolicy(Action.COUNT, 0, null);
+    }
+
+    /**
+     * @param size How many malformed lines to print per read (Integer.MAX_VALUE prints all of them).
+     * @return A policy that prints the first lines and then the total.
+     */
+    public static MalformedLinePolicy sample(int size) {
+        if (size < 0) throw new IllegalArgumentException("Sample size must not be negative: " + size);
+        return new MalformedLinePolicy(Action.SAMPLE, size, null);
+    }
+
+    /**
+     * @param file Where to write the malformed lines, as they were read; replaced by each read.
+     * @return A policy that saves the lines for a closer look and prints the total.
+     */
+    public static MalformedLinePolicy quarantine(Path file) {
+        if (file == null) throw new IllegalArgumentException("No quarantine file given");
+        return new MalformedLinePolicy(Action.QUARANTINE, 0, file);
+    }
+
+    /**
+     * Reads a policy from text, as given on a command line.
+     * @param spec "skip", "count", "sample" (10 lines), "sample:N" or "quarantine:FILE".
+     * @throws IllegalArgumentException If the text is not one of those.
+     */
+    public static MalformedLinePolicy parse(String spec) {
+        int colon = spec.indexOf(':');
+        String name = colon < 0 ? spec : spec.substring(0, colon);
+        String value = colon < 0 ? null : spec.substring(colon + 1);
+        switch (name) {
+            case "skip": if (value == null) return skip(); break;
+            case "count": if (value == null) return countOnly(); break;
+            case "sample":
+                try {
+                    return sample(value == null ? DEFAULT_SAMPLE_SIZE : Integer.parseInt(value));
+                } catch (NumberFormatException e) {
+                    break;
+                }
+            case "quarantine": if (value != null && !value.isEmpty()) return quarantine(Paths.get(value)); break;
+            default: break;
+        }
+        throw new IllegalArgumentException("Unknown malformed-line policy " + spec
+                + " (expected skip, count, sample, sample:N or quarantine:FILE)");
+    }
+
+    public Action getAction() {
+        return action;
+    }
+    /** @return Lines printed per read by a SAMPLE policy. */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+    /** @return The file of a QUARANTINE policy, otherwise null. */
+    public Path getQuarantineFile() {
+        return quarantineFile;
+    }
+
+    @Override
+    public String toString() {
+        switch (action) {
+            case SAMPLE: return "sample:" + sampleSize;
+            case QUARANTINE: return "quarantine:" + quarantineFile;
+            default: return action == Action.SKIP ? "skip" : "count";
+        }
+    }
+
+    /**
+     * Starts handling the malformed lines of one read.
+     * @param source Names the read in messages, e.g. the file name.
+     * @throws IOException If the quarantine file cannot be created.
+     */
+    Handler open(String source) throws IOException {
+        return new Handler(source, action == Action.QUARANTINE ? new QuarantineWriter(quarantineFile) : null);
+    }
+
+    /**
+     * The malformed lines of one read, under this policy. Shared by every thread
+     * of the read, so it only uses atomic counters and the thread-safe quarantine queue.
+     */
+    final class Handler {
+        private final String source;
+        private final QuarantineWriter quarantine;
+        private final LongAdder rejected = new LongAdder();
+        // How many have been offered for printing (SAMPLE only), so exactly sampleSize are shown
+        private final AtomicLong offered = new AtomicLong();
+
+        private Handler(String source, QuarantineWriter quarantine) {
+            this.source = source;
+            this.quarantine = quarantine;
+        }
+
+        /**
+         * Called by LogBatch for every line the parser rejected.
+         * @param line The line; only copied if it is printed or quarantined.
+         */
+        void reject(CharSequence line, ParseError error) {
+            rejected.increment();
+            switch (action) {
+                case SAMPLE:
+                    long n = offered.incrementAndGet();
+                    if (n <= sampleSize) {
+                        System.err.println("Error parsing line: '" + line + "' - Malformed log line (" + error.getDescription() + ")");
+                    } else if (n == sampleSize + 1L && sampleSize > 0) {
+                        System.err.println("(Further malformed lines in " + source + " are counted but not shown)");
+                    }
+                    break;
+                case QUARANTINE:
+                    quarantine.write(line.toString());
+                    break;
+                default:
+                    break; // SKIP and COUNT only count
+            }
+        }
+
+        /**
+         * Ends the read: finishes the quarantine file and prints the total if the policy asks for it.
+         * @param completed false if the read failed or was cancelled (then nothing is printed).
+         * @throws IOException If the quarantine file could not be written.
+         */
+        void close(boolean completed) throws IOException {
+            if (quarantine != null) quarantine.close();
+            long total = rejected.sum();
+            if (!completed || total == 0 || action == Action.SKIP) return;
+            if (action == Action.QUARANTINE) {
+                System.err.println(total + " malformed lines in " + source + " written to " + quarantineFile);
+            } else if (action == Action.COUNT || total > sampleSize) {
+                System.err.println(total + " malformed lines in " + source + " were skipped");
+            }
+        }
+    }
+}
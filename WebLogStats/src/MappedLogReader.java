@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a log file through FileChannel.map and hands each line to the parser as
+ * a ByteLine, so lines are never decoded into Strings just to be split apart.
+ * A single mapping is limited to 2 GB, so larger files are mapped one window at a
+ * time; a line that straddles two windows is picked up again by the next window.
+ */
+public class MappedLogReader {
+    public static final long DEFAULT_WINDOW_BYTES = 256L << 20; // 256 MB
+
+    private final long windowBytes;
+
+    public MappedLogReader() {
+        this(DEFAULT_WINDOW_BYTES);
+    }
+
+    /**
+     * @param windowBytes How much of the file to map at once (at most Integer.MAX_VALUE).
+     */
+    public MappedLogReader(long windowBytes) {
+        if (windowBytes < 1 || windowBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Window size must be between 1 and " + Integer.MAX_VALUE + " bytes");
+        }
+        this.windowBytes = windowBytes;
+    }
+
+    /**
+     * Parses a whole file on the calling thread into the given batch.
+     * @param file The log file to read.
+     * @param batch An empty batch to fill.
+     * @return The same batch, now covering the whole file.
+     * @throws IOException If the file cannot be read or mapped.
+     */
+    public LogBatch read(Path file, LogBatch batch) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            readRange(channel, 0, channel.size(), batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Parses the lines in the byte range [start, end) into the given batch.
+     * start must be at the beginning of a line; the last line may lack a newline.
+     * @throws IOException If the range cannot be mapped, or a single line is longer than 2 GB.
+     */
+    public void readRange(FileChannel channel, long start, long end, LogBatch batch) throws IOException {
+        ByteLine line = new ByteLine();
+        long position = start;
+        long window = windowBytes;
+        while (position < end) {
+            long mapEnd = Math.min(end, position + window);
+            int limit = (int) (mapEnd - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, limit);
+
+            int lineStart = 0;
+            for (int i = 0; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    addLine(batch, line, buffer, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+
+            if (mapEnd == end) {
+                if (lineStart < limit) addLine(batch, line, buffer, lineStart, limit); // last line without a newline
+                position = end;
+            } else if (lineStart == 0) {
+                // Not even one full line fits in the window: retry with a bigger one
+                if (window >= Integer.MAX_VALUE) throw new IOException("Line at byte " + position + " is longer than 2 GB");
+                window = Math.min(Integer.MAX_VALUE, window * 2);
+            } else {
+                position += lineStart; // Remap from the first incomplete line
+                window = windowBytes;
+            }
+        }
+    }
+
+    private static void addLine(LogBatch batch, ByteLine line, MappedByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') end--;
+        line.set(buffer, start, end - start);
+        batch.addLine(line);
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a set of log files (e.g. one per host per day) on several threads. Every
+ * file is parsed into its own LogBatch, and the batches are merged in the order
+ * the files were given, so the result does not depend on which thread finished
+ * first. Gzip-compressed files (typically rotated logs) are recognized by their
+ * magic bytes and decompressed on the fly; plain files go through MappedLogReader.
+ */
+public class MultiFileLogReader {
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private final int threads;
+
+    /**
+     * @param threads Number of files read at once (values below 1 use the number of available processors).
+     */
+    public MultiFileLogReader(int threads) {
+        this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * Parses every file and returns the merged batch.
+     * @param files The log files to read; their aggregates are merged in this order.
+     * @param newBatch Creates an empty batch; called once per file plus once for the result.
+     * @return One batch covering every file.
+     * @throws IOException If any file cannot be read.
+     */
+    public LogBatch read(List<Path> files, Supplier<LogBatch> newBatch) throws IOException {
+        List<Callable<LogBatch>> tasks = new ArrayList<>();
+        for (Path file : files) {
+            tasks.add(() -> readFile(file, newBatch.get()));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(threads, Math.max(1, files.size())));
+        try {
+            LogBatch merged = newBatch.get();
+            for (Future<LogBatch> result : pool.invokeAll(tasks)) {
+                merged.merge(result.get());
+            }
+            return merged;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading log files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof CancellationException) throw (CancellationException) e.getCause(); // See ReadProgress
+            throw new IOException("Error reading log files", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Parses one file (plain or gzip-compressed) into the given batch on the calling thread.
+     * @return The same batch.
+     * @throws IOException If the file cannot be read.
+     */
+    public static LogBatch readFile(Path file, LogBatch batch) throws IOException {
+        if (!isGzip(file)) return new MappedLogReader().read(file, batch);
+        try (BufferedReader reader = newReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                batch.addLine(line);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Opens a log file for reading as UTF-8 text, decompressing it if it is gzipped.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static BufferedReader newReader(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        try {
+            PushbackInputStream peek = new PushbackInputStream(in, 2);
+            byte[] magic = new byte[2];
+            int n = peek.read(magic);
+            if (n > 0) peek.unread(magic, 0, n);
+            in = n == 2 && isGzipMagic(magic) ? new GZIPInputStream(peek, 1 << 16) : peek;
+            return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Whether the file starts with the gzip magic number.
+     */
+    static boolean isGzip(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] magic = new byte[2];
+            return in.read(magic) == 2 && isGzipMagic(magic);
+        }
+    }
+
+    private static boolean isGzipMagic(byte[] magic) {
+        return ((magic[0] & 0xff) | ((magic[1] & 0xff) << 8)) == GZIP_MAGIC;
+    }
+
+    /**
+     * Turns a file name, a directory, or a glob into the list of files it names,
+     * sorted by path. A directory gives every regular file directly inside it; a glob
+     * ("logs/access-*.log*") may only use wildcards in its last path element.
+     * Snapshots saved next to the logs (see LogSnapshot) are never listed.
+     * @throws IOException If the directory cannot be listed, or nothing matches.
+     */
+    public static List<Path> expand(String pathOrGlob) throws IOException {
+        List<Path> files = new ArrayList<>();
+        boolean isGlob = pathOrGlob.matches(".*[*?\\[{].*");
+        Path directory;
+        PathMatcher matcher;
+        if (isGlob) {
+            // Split off the last element by hand: a wildcard is not a legal path character everywhere
+            int slash = Math.max(pathOrGlob.lastIndexOf('/'), pathOrGlob.lastIndexOf(File.separatorChar));
+            directory = Paths.get(slash < 0 ? "." : pathOrGlob.substring(0, slash + 1));
+            matcher = directory.getFileSystem().getPathMatcher("glob:" + pathOrGlob.substring(slash + 1));
+        } else {
+            directory = Paths.get(pathOrGlob);
+            if (Files.isRegularFile(directory)) {
+                files.add(directory);
+                return files;
+            }
+            matcher = p -> true;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (LogSnapshot.isSnapshotFile(entry)) continue; // Binary, and read through its log anyway
+                if (Files.isRegularFile(entry) && matcher.matches(entry.getFileName())) files.add(entry);
+            }
+        }
+        if (files.isEmpty()) throw new IOException("No log files match " + pathOrGlob);
+        Collections.sort(files);
+        return files;
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Reads one log file on several threads. The file is cut into byte ranges that
+ * each end on a newline, every range is parsed into its own LogBatch on a
+ * ForkJoinPool, and the batches are merged back in file order - so the result is
+ * the same as reading the file on one thread.
+ */
+public class ParallelLogReader {
+    // Enough chunks per thread that one slow chunk does not leave the other threads idle
+    private static final long MIN_CHUNK_BYTES = 1L << 20;     // 1 MB
+    private static final long MAX_CHUNK_BYTES = 32L << 20;    // 32 MB
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int threads;
+
+    /**
+     * @param threads Number of worker threads (values below 1 use the number of available processors).
+     */
+    public ParallelLogReader(int threads) {
+        this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * Parses the whole file into batches made by newBatch and returns them merged.
+     * @param file The log file to read.
+     * @param newBatch Creates an empty batch; called once per chunk plus once for the result.
+     * @return One batch covering the whole file, in file order.
+     * @throws IOException If the file cannot be read.
+     */
+    public LogBatch read(Path file, Supplier<LogBatch> newBatch) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> ranges = splitOnNewlines(channel);
+            List<Callable<LogBatch>> tasks = new ArrayList<>();
+            for (long[] range : ranges) {
+                tasks.add(() -> readRange(channel, range[0], range[1], newBatch.get()));
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                LogBatch merged = newBatch.get();
+                for (Future<LogBatch> result : pool.invokeAll(tasks)) {
+                    merged.merge(result.get());
+                }
+                return merged;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading " + file, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                if (e.getCause() instanceof CancellationException) throw (CancellationException) e.getCause(); // See ReadProgress
+                throw new IOException("Error reading " + file, e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Cuts the file into [start, end) ranges; every range except possibly the last
+     * ends just after a '\n', so no line is split between two ranges.
+     */
+    private List<long[]> splitOnNewlines(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkBytes = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, size / ((long) threads * CHUNKS_PER_THREAD)));
+        List<long[]> ranges = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + chunkBytes);
+            // Walk forward from the tentative end to just past the next newline
+            while (end < size) {
+                probe.clear();
+                int n = channel.read(probe, end);
+                if (n <= 0) { end = size; break; }
+                int nl = -1;
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') { nl = i; break; }
+                }
+                if (nl >= 0) { end += nl + 1; break; }
+                end += n;
+            }
+            ranges.add(new long[] {start, end});
+            start = end;
+        }
+        return ranges;
+    }
+
+    /**
+     * Parses the bytes in [start, end) straight from a memory mapping. Mapping does
+     * not move the channel's shared position, so many ranges can be read concurrently.
+     */
+    private static LogBatch readRange(FileChannel channel, long start, long end, LogBatch batch) throws IOException {
+        new MappedLogReader().readRange(channel, start, end, batch);
+        return batch;
+    }
+}
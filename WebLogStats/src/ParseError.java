@@ -0,0 +1,24 @@
+/**
+ * Why WebLogParser.parse rejected a line, for counting malformed lines by cause
+ * (see ParsedLine.getError and LogMetrics).
+ */
+public enum ParseError {
+    MISSING_IP("no IP address"),
+    MISSING_TIMESTAMP("no [timestamp]"),
+    MISSING_REQUEST("no quoted request"),
+    UNTERMINATED_REQUEST("request not closed by a quote and a space"),
+    MISSING_STATUS("no status code"),
+    BAD_STATUS("status code is not a number"),
+    BAD_BYTES("byte count is not a number");
+
+    private final String description;
+
+    ParseError(String description) {
+        this.description = description;
+    }
+
+    /** @return A short human-readable reason, e.g. "no status code". */
+    public String getDescription() {
+        return description;
+    }
+}
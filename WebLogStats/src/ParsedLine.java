@@ -0,0 +1,121 @@
+import java.util.Date;
+
+/**
+ * The fields of one log line as found by WebLogParser.parse. Text fields are kept
+ * as start/end offsets into the original line, so nothing is copied until a caller
+ * actually asks for the String. Instances are mutable and meant to be reused:
+ * keep one per thread and pass it to every parse call.
+ */
+public class ParsedLine {
+    /** Marker stored in epochMillis when the timestamp could not be decoded. */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    CharSequence line;
+    int ipStart, ipEnd;
+    int requestStart, requestEnd;
+    // Parts of the request "METHOD /path?query PROTOCOL", all inside [requestStart, requestEnd)
+    int methodStart, methodEnd;
+    int pathStart, pathEnd;
+    int queryStart = -1, queryEnd = -1;
+    int protocolStart, protocolEnd;
+    long epochMillis = NO_TIME;
+    int statusCode;
+    int bytesReturned;
+    // Why the last parse failed, or null after a successful one
+    ParseError error;
+
+    /** @return Why the last parse call rejected the line, or null if it succeeded. */
+    public ParseError getError() {
+        return error;
+    }
+    public CharSequence getLine() {
+        return line;
+    }
+    public int getIpStart() {
+        return ipStart;
+    }
+    public int getIpEnd() {
+        return ipEnd;
+    }
+    public int getRequestStart() {
+        return requestStart;
+    }
+    public int getRequestEnd() {
+        return requestEnd;
+    }
+    /** @return Start of the method ("GET"); the method is empty if the request has no space. */
+    public int getMethodStart() {
+        return methodStart;
+    }
+    public int getMethodEnd() {
+        return methodEnd;
+    }
+    /** @return Start of the path, without the query string. */
+    public int getPathStart() {
+        return pathStart;
+    }
+    public int getPathEnd() {
+        return pathEnd;
+    }
+    /** @return Whether the path was followed by a '?' (the query may still be empty). */
+    public boolean hasQuery() {
+        return queryStart >= 0;
+    }
+    /** @return Start of the query string after the '?', or -1 if there is none. */
+    public int getQueryStart() {
+        return queryStart;
+    }
+    public int getQueryEnd() {
+        return queryEnd;
+    }
+    /** @return Start of the protocol ("HTTP/1.1"); empty for HTTP/0.9-style requests. */
+    public int getProtocolStart() {
+        return protocolStart;
+    }
+    public int getProtocolEnd() {
+        return protocolEnd;
+    }
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+    public boolean hasTime() {
+        return epochMillis != NO_TIME;
+    }
+    public int getStatusCode() {
+        return statusCode;
+    }
+    public int getBytesReturned() {
+        return bytesReturned;
+    }
+
+    // --- Materializers: these allocate, so call them only for fields you keep ---
+    public String getIpAddress() {
+        return line.subSequence(ipStart, ipEnd).toString();
+    }
+    public String getRequest() {
+        return line.subSequence(requestStart, requestEnd).toString();
+    }
+    public String getMethod() {
+        return line.subSequence(methodStart, methodEnd).toString();
+    }
+    public String getPath() {
+        return line.subSequence(pathStart, pathEnd).toString();
+    }
+    public String getQuery() {
+        return hasQuery() ? line.subSequence(queryStart, queryEnd).toString() : null;
+    }
+    public String getProtocol() {
+        return line.subSequence(protocolStart, protocolEnd).toString();
+    }
+    public Date getAccessTime() {
+        return hasTime() ? new Date(epochMillis) : null;
+    }
+
+    /**
+     * Builds a standalone LogEntry from the current fields.
+     * @return A new LogEntry (copies the IP and request text).
+     */
+    public LogEntry toLogEntry() {
+        return new LogEntry(getIpAddress(), getAccessTime(), getRequest(), statusCode, bytesReturned);
+    }
+}
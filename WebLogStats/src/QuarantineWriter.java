@@ -0,0 +1,115 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Appends rejected log lines to a file on a background thread, so the parsing
+ * threads only hand a String to a queue and never wait for the disk. The queue
+ * is bounded: if the disk cannot keep up, the parsers slow down rather than the
+ * memory filling up. Lines from parallel chunks arrive in whatever order the
+ * chunks reach them.
+ *
+ * A write error stops the writing (later lines are dropped, so the parsers are
+ * never blocked) and is thrown by close().
+ */
+public class QuarantineWriter implements Closeable {
+    private static final int QUEUE_LINES = 8192;
+    // Tells the writer thread that no more lines will come
+    private static final String END = new String("END");
+
+    private final Path file;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_LINES);
+    private final BufferedWriter writer;
+    private final Thread thread;
+    private volatile IOException failure;
+    private boolean closed = false;
+
+    /**
+     * Creates (or truncates) the file and starts the writer thread.
+     * @throws IOException If the file cannot be created.
+     */
+    public QuarantineWriter(Path file) throws IOException {
+        this.file = file;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        this.thread = new Thread(this::drain, "QuarantineWriter " + file.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues one line (without its terminator). Blocks only while the queue is full.
+     */
+    public void write(String line) {
+        try {
+            queue.put(line);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // The line is lost; the caller is being stopped anyway
+        }
+    }
+
+    // The writer thread: writes whatever has queued up, and flushes whenever the queue runs dry.
+    // After a write error it keeps taking lines (and drops them), so writers never block on a full queue.
+    private void drain() {
+        List<String> lines = new ArrayList<>();
+        try {
+            while (true) {
+                lines.add(queue.take());
+                queue.drainTo(lines);
+                for (String line : lines) {
+                    if (line == END) return; // Identity: only the marker itself ends the loop
+                    if (failure == null) {
+                        try {
+                            writer.write(line);
+                            writer.newLine();
+                        } catch (IOException e) {
+                            failure = e;
+                        }
+                    }
+                }
+                lines.clear();
+                if (failure == null && queue.isEmpty()) {
+                    try {
+                        writer.flush();
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes every queued line, closes the file and stops the thread.
+     * @throws IOException If a line could not be written or the file not closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        write(END);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            if (failure == null) failure = e;
+        }
+        if (failure != null) throw new IOException("Could not write quarantine file " + file + ": " + failure.getMessage(), failure);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small least-recently-used cache of query results for LogAnalyzer, so an
+ * interactive query that is repeated (the same date range, the same day, the
+ * same status range) is answered by one lookup instead of a new scan.
+ *
+ * Every result is stored under the generation of the data it was computed from.
+ * LogAnalyzer bumps its generation whenever new data comes in (a read, or a
+ * refresh that found new lines); the first lookup with a newer generation
+ * empties the cache, and a result computed from older data is never stored.
+ * Safe to use from several threads.
+ */
+public class QueryCache {
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final LinkedHashMap<List<Object>, Object> results;
+    private int capacity;
+    private long generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    public QueryCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The most results kept; 0 turns caching off.
+     */
+    public QueryCache(int capacity) {
+        // Access order: every hit moves the entry to the end, so the eldest is the least recently used
+        this.results = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+                return size() > QueryCache.this.capacity;
+            }
+        };
+        setCapacity(capacity);
+    }
+
+    /**
+     * @param generation The generation of the data the caller would query.
+     * @param key The query name followed by its parameters (immutable values only).
+     * @return The stored result, or null if there is none for this generation.
+     */
+    synchronized Object get(long generation, List<Object> key) {
+        startGeneration(generation);
+        Object result = results.get(key);
+        if (result != null) hits++;
+        else misses++;
+        return result;
+    }
+
+    /**
+     * Stores a result, unless it was computed from data older than the cache's.
+     */
+    synchronized void put(long generation, List<Object> key, Object result) {
+        if (generation < this.generation || capacity == 0 || result == null) return;
+        startGeneration(generation);
+        results.put(key, result);
+    }
+
+    private void startGeneration(long generation) {
+        if (generation > this.generation) {
+            results.clear();
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Changes the number of results kept, dropping the least recently used ones if it shrinks.
+     * @param capacity The most results kept; 0 turns caching off.
+     */
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Cache capacity must not be negative: " + capacity);
+        this.capacity = capacity;
+        while (results.size() > capacity) {
+            results.remove(results.keySet().iterator().next());
+        }
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    /** @return How many results are stored. */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /** @return How many lookups found a stored result. */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** @return How many lookups had to run the query. */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Drops every stored result (the hit and miss counts are kept). */
+    public synchronized void clear() {
+        results.clear();
+    }
+}
@@ -0,0 +1,223 @@
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Request rates per IP over sliding windows, computed as requests stream in, with
+ * a flag raised when an IP goes over a limit (a scraper, a flood, a broken client).
+ *
+ * A time wheel of 60 one-second slots holds how often each IP asked in each of
+ * the last 60 seconds, and a running total per IP covers the whole minute. A
+ * request costs two counter updates; when the newest second moves on, the slots
+ * that fell out of the minute are subtracted from the totals and dropped. So
+ * memory grows with the IPs active within the last minute, not with every IP ever
+ * seen, and the rates of one IP are read with a single lookup.
+ *
+ * Log timestamps have whole seconds, so the per-second rate is the count in the
+ * current second and the per-minute rate the count over the last 60 seconds.
+ * Requests out of time order still count if they are less than a minute older
+ * than the newest; older ones are only counted as late.
+ *
+ * When an IP's count goes over a limit, a Burst is handed to the Listener; after
+ * that, the same IP and window are flagged again at most once a minute while it
+ * stays busy. Not thread-safe: feed it from one thread.
+ */
+public class RateMonitor {
+    public static final int DEFAULT_MAX_PER_SECOND = 20;
+    public static final int DEFAULT_MAX_PER_MINUTE = 300;
+
+    private static final int SLOTS = 60; // Seconds in the minute window
+    // Flag seconds are kept modulo this, which fits an int (see flag)
+    private static final long FLAG_PERIOD = 1L << 31;
+
+    public enum Window { SECOND, MINUTE }
+
+    /** Receives every burst as it is detected. */
+    public interface Listener {
+        void burstDetected(Burst burst);
+    }
+
+    /** An IP that went over a limit. */
+    public static class Burst {
+        private final int ip;
+        private final String ipAddress;
+        private final Window window;
+        private final int count;
+        private final int limit;
+        private final long epochSeconds;
+
+        Burst(int ip, String ipAddress, Window window, int count, int limit, long epochSeconds) {
+            this.ip = ip;
+            this.ipAddress = ipAddress;
+            this.window = window;
+            this.count = count;
+            this.limit = limit;
+            this.epochSeconds = epochSeconds;
+        }
+
+        /** @return The IP as given to RateMonitor.add (an IpDictionary id for LogAnalyzer). */
+        public int getIp() {
+            return ip;
+        }
+        /** @return The address, or null if the monitor has no IpDictionary. */
+        public String getIpAddress() {
+            return ipAddress;
+        }
+        public Window getWindow() {
+            return window;
+        }
+        /** @return The requests in the window when the limit was passed (limit + 1). */
+        public int getCount() {
+            return count;
+        }
+        public int getLimit() {
+            return limit;
+        }
+        /** @return The second the limit was passed in. */
+        public Date getTime() {
+            return new Date(epochSeconds * 1000L);
+        }
+
+        @Override
+        public String toString() {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            return format.format(getTime()) + " " + (ipAddress != null ? ipAddress : "#" + ip) + " over "
+                    + limit + " requests per " + window.name().toLowerCase();
+        }
+    }
+
+    private final int maxPerSecond;
+    private final int maxPerMinute;
+    private final Listener listener;
+    private IpDictionary ips;
+    // Requests per IP in each of the last 60 seconds; slot = epoch second mod 60
+    private final IntIntMap[] slots = new IntIntMap[SLOTS];
+    // Requests per IP over the whole wheel (the sum of the slots); IPs leave it when they reach 0
+    private final IntIntMap lastMinute = new IntIntMap();
+    // The second each IP was last flagged in (modulo FLAG_PERIOD), per window; dropped with the IP
+    private final IntIntMap flaggedSecond = new IntIntMap();
+    private final IntIntMap flaggedMinute = new IntIntMap();
+    private long newestSecond = Long.MIN_VALUE;
+    private long requests = 0;
+    private long lateRequests = 0;
+    private long bursts = 0;
+    private int peakActiveIPs = 0;
+
+    public RateMonitor(Listener listener) {
+        this(DEFAULT_MAX_PER_SECOND, DEFAULT_MAX_PER_MINUTE, listener);
+    }
+
+    /**
+     * @param maxPerSecond Most requests an IP may make in one second, or 0 for no limit.
+     * @param maxPerMinute Most requests an IP may make in 60 seconds, or 0 for no limit.
+     * @param listener Receives the bursts.
+     */
+    public RateMonitor(int maxPerSecond, int maxPerMinute, Listener listener) {
+        if (maxPerSecond < 0 || maxPerMinute < 0) throw new IllegalArgumentException("Limits must not be negative");
+        this.maxPerSecond = maxPerSecond;
+        this.maxPerMinute = maxPerMinute;
+        this.listener = listener;
+        for (int i = 0; i < SLOTS; i++) slots[i] = new IntIntMap();
+    }
+
+    /**
+     * Lets bursts carry the address text of the IP ids (set by LogBatch and LogAnalyzer).
+     */
+    void setIpDictionary(IpDictionary ips) {
+        this.ips = ips;
+    }
+
+    /**
+     * Counts one request.
+     * @param ip Identifies the client (e.g. an IpDictionary id).
+     * @param epochMillis When the request was made.
+     */
+    public void add(int ip, long epochMillis) {
+        long second = Math.floorDiv(epochMillis, 1000L);
+        if (second > newestSecond) {
+            advanceTo(second);
+        } else if (second <= newestSecond - SLOTS) {
+            lateRequests++; // Its second has already left the wheel
+            return;
+        }
+        requests++;
+        int inSecond = slots[slotOf(second)].addTo(ip, 1);
+        int inMinute = lastMinute.addTo(ip, 1);
+        if (lastMinute.size() > peakActiveIPs) peakActiveIPs = lastMinute.size();
+        if (maxPerSecond > 0 && inSecond > maxPerSecond) flag(ip, Window.SECOND, inSecond, maxPerSecond, second, flaggedSecond);
+        if (maxPerMinute > 0 && inMinute > maxPerMinute) flag(ip, Window.MINUTE, inMinute, maxPerMinute, second, flaggedMinute);
+    }
+
+    private void flag(int ip, Window window, int count, int limit, long second, IntIntMap flagged) {
+        // Only "within a minute of now" is ever asked, and a flag is dropped once its IP has been
+        // quiet for a minute, so the second modulo FLAG_PERIOD (68 years) is as good as the full one
+        if (flagged.containsKey(ip)) {
+            long since = Math.floorMod(second - flagged.get(ip, 0), FLAG_PERIOD);
+            if (since < SLOTS || since > FLAG_PERIOD - SLOTS) return; // Already flagged within the minute (either side, for late requests)
+        }
+        flagged.put(ip, (int) Math.floorMod(second, FLAG_PERIOD));
+        bursts++;
+        listener.burstDetected(new Burst(ip, ips != null ? ips.get(ip) : null, window, count, limit, second));
+    }
+
+    // Turns the wheel: the slots of the seconds that fall out of the minute are subtracted and emptied
+    private void advanceTo(long second) {
+        if (newestSecond != Long.MIN_VALUE) {
+            long steps = Math.min(second - newestSecond, SLOTS);
+            for (long s = newestSecond + 1; s <= newestSecond + steps; s++) expire(slotOf(s));
+        }
+        newestSecond = second;
+    }
+
+    private void expire(int slot) {
+        IntIntMap expired = slots[slot];
+        if (expired.isEmpty()) return;
+        expired.forEach((ip, count) -> {
+            if (lastMinute.addTo(ip, -count) == 0) {
+                lastMinute.remove(ip);
+                flaggedSecond.remove(ip);
+                flaggedMinute.remove(ip);
+            }
+        });
+        // A fresh table sized for the second it held: a steady stream does not regrow it, and a flood's table is gone a minute later
+        slots[slot] = new IntIntMap(expired.size());
+    }
+
+    private static int slotOf(long second) {
+        return (int) Math.floorMod(second, (long) SLOTS);
+    }
+
+    /** @return The IP's requests in the newest second seen. */
+    public int getRequestsLastSecond(int ip) {
+        return newestSecond == Long.MIN_VALUE ? 0 : slots[slotOf(newestSecond)].get(ip, 0);
+    }
+    /** @return The IP's requests in the 60 seconds up to the newest second seen. */
+    public int getRequestsLastMinute(int ip) {
+        return lastMinute.get(ip, 0);
+    }
+    /** @return IPs with requests in the last 60 seconds. */
+    public int getActiveIPs() {
+        return lastMinute.size();
+    }
+    /** @return The most IPs that were active within one minute (what the memory use grew with). */
+    public int getPeakActiveIPs() {
+        return peakActiveIPs;
+    }
+    /** @return Requests counted (late ones excluded). */
+    public long getRequests() {
+        return requests;
+    }
+    /** @return Requests that came a minute or more after newer ones and were not counted. */
+    public long getLateRequests() {
+        return lateRequests;
+    }
+    /** @return Bursts reported so far. */
+    public long getBursts() {
+        return bursts;
+    }
+    public int getMaxPerSecond() {
+        return maxPerSecond;
+    }
+    public int getMaxPerMinute() {
+        return maxPerMinute;
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live progress of a read, and the switch to cancel it. The reading threads add
+ * to it while a GUI (or anything else) polls it from another thread, so every
+ * field is safe to read at any time. Pass a new one to LogAnalyzer.setProgress
+ * for each read (a cancelled one stays cancelled).
+ *
+ * Batches report lines in blocks (see LogBatch), so the counts lag the parser by
+ * at most a few thousand lines per thread and the hot loop stays free of shared writes.
+ */
+public class ReadProgress {
+    // Summed per thread and only added up when polled
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private volatile long totalBytes = -1;
+    private volatile boolean cancelled = false;
+    private volatile boolean done = false;
+
+    /**
+     * @return Lines read so far, malformed and blank ones included.
+     */
+    public long getLinesRead() {
+        return lines.sum();
+    }
+
+    /**
+     * @return Bytes of log text read so far (uncompressed, for gzipped logs).
+     */
+    public long getBytesRead() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return The size of the input in bytes, or -1 if it is not known up front (e.g. gzipped logs).
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return How much of the input has been read, from 0 to 1, or -1 if the total is unknown.
+     */
+    public double getFraction() {
+        if (done) return 1;
+        long total = totalBytes;
+        if (total < 0) return -1;
+        return total == 0 ? 0 : Math.min(1, getBytesRead() / (double) total);
+    }
+
+    /**
+     * Asks the read to stop. The reading threads notice within a few thousand lines
+     * and the read method throws a CancellationException; whatever was loaded
+     * before the read stays in place.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return Whether the read has completed (false while running, and after a failed or cancelled read).
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    // --- Called by the readers ---
+
+    /** Sets the size of the input, once it is known (-1 if it cannot be). */
+    void start(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Counts a block of lines.
+     * @throws CancellationException If cancel() has been called.
+     */
+    void add(long lineCount, long byteCount) {
+        lines.add(lineCount);
+        bytes.add(byteCount);
+        checkCancelled();
+    }
+
+    void checkCancelled() {
+        if (cancelled) throw new CancellationException("Read cancelled");
+    }
+
+    void finish() {
+        done = true;
+    }
+}
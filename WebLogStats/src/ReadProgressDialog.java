@@ -0,0 +1,95 @@
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * A small window that shows how far a background read has got (lines, bytes and
+ * read speed, polled from a ReadProgress a few times a second) and lets the user
+ * cancel it. The read itself runs elsewhere, e.g. in a SwingWorker; the dialog
+ * only looks at the progress, so it never slows the reading threads down.
+ */
+public class ReadProgressDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
+    private static final int REFRESH_MILLIS = 200;
+
+    private final ReadProgress progress;
+    private final long startNanos = System.nanoTime();
+    private final JProgressBar progressBar;
+    private final JLabel countsLabel;
+    private final JButton cancelButton;
+    private final Timer refreshTimer;
+
+    /**
+     * Creates the dialog; call setVisible(true) to show it and dispose() once the read is over.
+     * @param owner The window to center on, or null.
+     * @param description What is being read, e.g. the file name.
+     * @param progress The progress of the read; the Cancel button cancels it.
+     */
+    public ReadProgressDialog(Frame owner, String description, ReadProgress progress) {
+        super(owner, "Reading Log", false); // Not modal: the rest of the GUI stays usable
+        this.progress = progress;
+        setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE); // Closing the window means Cancel
+
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        panel.add(new JLabel("Reading " + description + " ..."), BorderLayout.NORTH);
+
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setStringPainted(true);
+        progressBar.setPreferredSize(new Dimension(400, progressBar.getPreferredSize().height));
+        panel.add(progressBar, BorderLayout.CENTER);
+
+        JPanel bottomPanel = new JPanel(new BorderLayout(5, 5));
+        countsLabel = new JLabel(" ");
+        countsLabel.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        cancelButton = new JButton("Cancel");
+        bottomPanel.add(countsLabel, BorderLayout.CENTER);
+        bottomPanel.add(cancelButton, BorderLayout.EAST);
+        panel.add(bottomPanel, BorderLayout.SOUTH);
+        add(panel);
+
+        cancelButton.addActionListener(e -> cancel());
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                cancel();
+            }
+        });
+
+        refreshTimer = new Timer(REFRESH_MILLIS, e -> refresh());
+        refreshTimer.start();
+        refresh();
+
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    private void cancel() {
+        progress.cancel();
+        cancelButton.setEnabled(false);
+        cancelButton.setText("Cancelling...");
+    }
+
+    // Runs on the EDT from the timer: only reads the progress counters
+    private void refresh() {
+        double fraction = progress.getFraction();
+        if (fraction < 0) {
+            progressBar.setIndeterminate(true); // e.g. a gzipped log, whose unpacked size is unknown
+            progressBar.setString("");
+        } else {
+            progressBar.setIndeterminate(false);
+            progressBar.setValue((int) (fraction * 1000));
+            progressBar.setString(String.format("%.0f%%", fraction * 100));
+        }
+        long bytes = progress.getBytesRead();
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        countsLabel.setText(String.format("%,d lines   %.1f MB   %.1f MB/s",
+                progress.getLinesRead(), bytes / 1e6, seconds > 0 ? bytes / 1e6 / seconds : 0));
+    }
+
+    @Override
+    public void dispose() {
+        refreshTimer.stop();
+        super.dispose();
+    }
+}
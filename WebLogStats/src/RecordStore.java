@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Column-oriented storage for parsed log entries. Each field is its own primitive
+ * column and the IP and request text are dictionary-encoded, so a row costs about
+ * 24 bytes instead of a LogEntry with its Date and Strings. Times are kept as long
+ * epoch seconds, so any date a log can hold survives (an int would end in 2038). Rows are numbered
+ * 0..size()-1 in file order; LogEntry objects are only built when a caller asks
+ * for one (e.g. to print it).
+ */
+public class RecordStore {
+    /** Stored in the time column when the entry's timestamp could not be read. */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    private final LongColumn epochSeconds;
+    private final IntColumn statusCodes;
+    private final IntColumn bytesReturned;
+    private final IntColumn ipIds;
+    private final IntColumn requestIds;
+    private final IpDictionary ips;
+    private final StringDictionary requests;
+
+    /**
+     * @param ips The dictionary the IP ids in this store refer to (shared with the LogStats of the same batch).
+     */
+    public RecordStore(IpDictionary ips) {
+        this(ips, new LongColumn(), new IntColumn(), new IntColumn(), new IntColumn(), new IntColumn(), new StringDictionary());
+    }
+
+    private RecordStore(IpDictionary ips, LongColumn epochSeconds, IntColumn statusCodes, IntColumn bytesReturned,
+                        IntColumn ipIds, IntColumn requestIds, StringDictionary requests) {
+        this.ips = ips;
+        this.epochSeconds = epochSeconds;
+        this.statusCodes = statusCodes;
+        this.bytesReturned = bytesReturned;
+        this.ipIds = ipIds;
+        this.requestIds = requestIds;
+        this.requests = requests;
+    }
+
+    /**
+     * Appends the fields of a parsed line.
+     * @param p The parsed line (the request text is only copied if it is new).
+     * @param ipId The line's IP id, already looked up in this store's IpDictionary.
+     * @return The new row number.
+     */
+    public int add(ParsedLine p, int ipId) {
+        return addRow(p.hasTime() ? toSeconds(p.getEpochMillis()) : NO_TIME,
+                p.getStatusCode(), p.getBytesReturned(), ipId,
+                requests.idOf(p.getLine(), p.getRequestStart(), p.getRequestEnd()));
+    }
+
+    private int addRow(long seconds, int status, int bytes, int ipId, int requestId) {
+        epochSeconds.add(seconds);
+        statusCodes.add(status);
+        bytesReturned.add(bytes);
+        ipIds.add(ipId);
+        requestIds.add(requestId);
+        return epochSeconds.size() - 1;
+    }
+
+    /**
+     * Appends every row of another store (which has its own dictionaries) after
+     * the rows already here, translating its ids into this store's ids.
+     * @param later The rows that come after this store's rows.
+     * @param ipMap Translates later's IP ids into this store's (see IpDictionary.remapFrom).
+     */
+    public void appendAll(RecordStore later, int[] ipMap) {
+        int[] requestMap = new int[later.requests.size()];
+        for (int id = 0; id < requestMap.length; id++) requestMap[id] = requests.idOf(later.requests.get(id));
+
+        for (int row = 0; row < later.size(); row++) {
+            addRow(later.epochSeconds.get(row), later.statusCodes.get(row), later.bytesReturned.get(row),
+                    ipMap[later.ipIds.get(row)], requestMap[later.requestIds.get(row)]);
+        }
+    }
+
+    private static long toSeconds(long epochMillis) {
+        return Math.floorDiv(epochMillis, 1000L);
+    }
+
+    public int size() {
+        return epochSeconds.size();
+    }
+
+    // --- Per-row accessors ---
+    public long getEpochSeconds(int row) {
+        return epochSeconds.get(row);
+    }
+    public boolean hasTime(int row) {
+        return epochSeconds.get(row) != NO_TIME;
+    }
+    public int getStatusCode(int row) {
+        return statusCodes.get(row);
+    }
+    public int getBytesReturned(int row) {
+        return bytesReturned.get(row);
+    }
+    public int getIpId(int row) {
+        return ipIds.get(row);
+    }
+    public int getRequestId(int row) {
+        return requestIds.get(row);
+    }
+    public String getIpAddress(int row) {
+        return ips.get(ipIds.get(row));
+    }
+    public String getRequest(int row) {
+        return requests.get(requestIds.get(row));
+    }
+    public Date getAccessTime(int row) {
+        long seconds = epochSeconds.get(row);
+        return seconds == NO_TIME ? null : new Date(seconds * 1000L);
+    }
+
+    /**
+     * Builds a LogEntry for one row (for display; not needed for analysis).
+     */
+    public LogEntry getEntry(int row) {
+        return new LogEntry(getIpAddress(row), getAccessTime(row), getRequest(row), getStatusCode(row), getBytesReturned(row));
+    }
+
+    public IpDictionary getIpDictionary() {
+        return ips;
+    }
+    public StringDictionary getRequestDictionary() {
+        return requests;
+    }
+
+    // --- Snapshot support (see LogSnapshot); the IpDictionary is saved by the caller ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        epochSeconds.writeTo(out);
+        statusCodes.writeTo(out);
+        bytesReturned.writeTo(out);
+        ipIds.writeTo(out);
+        requestIds.writeTo(out);
+        requests.writeTo(out);
+    }
+
+    static RecordStore readFrom(SnapshotReader in, IpDictionary ips) throws IOException {
+        return new RecordStore(ips, LongColumn.readFrom(in), IntColumn.readFrom(in), IntColumn.readFrom(in),
+                IntColumn.readFrom(in), IntColumn.readFrom(in), StringDictionary.readFrom(in));
+    }
+
+    /**
+     * @return Approximate heap used by the columns (not counting dictionary strings).
+     */
+    public long columnHeapBytes() {
+        return epochSeconds.heapBytes() + statusCodes.heapBytes() + bytesReturned.heapBytes()
+                + ipIds.heapBytes() + requestIds.heapBytes();
+    }
+}
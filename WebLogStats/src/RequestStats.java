@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hits, bytes served and error counts per request path and per HTTP method,
+ * filled while the log is read. Paths and methods are interned in a
+ * StringDictionary straight from the line, so a repeated URL costs one lookup and
+ * one dictionary entry, and a line only allocates when it brings a new path.
+ * Paths are counted without their query string, so "/search?q=a" and
+ * "/search?q=b" are both "/search".
+ */
+public class RequestStats {
+    /** The totals of one path or method. */
+    public static class Totals {
+        private final String key;
+        private final int hits;
+        private final long bytes;
+        private final int clientErrors;
+        private final int serverErrors;
+
+        Totals(String key, int hits, long bytes, int clientErrors, int serverErrors) {
+            this.key = key;
+            this.hits = hits;
+            this.bytes = bytes;
+            this.clientErrors = clientErrors;
+            this.serverErrors = serverErrors;
+        }
+
+        /** @return The path or method ("" for requests without a method). */
+        public String getKey() {
+            return key;
+        }
+        public int getHits() {
+            return hits;
+        }
+        public long getBytes() {
+            return bytes;
+        }
+        /** @return Requests answered with a 4xx status. */
+        public int getClientErrors() {
+            return clientErrors;
+        }
+        /** @return Requests answered with a 5xx status. */
+        public int getServerErrors() {
+            return serverErrors;
+        }
+        /** @return The share of requests answered with 4xx or 5xx, from 0 to 1. */
+        public double getErrorRate() {
+            return hits == 0 ? 0 : (clientErrors + serverErrors) / (double) hits;
+        }
+
+        @Override
+        public String toString() {
+            return key + " " + hits + " hits, " + bytes + " bytes, "
+                    + String.format("%.1f", getErrorRate() * 100) + "% errors";
+        }
+    }
+
+    /** Counters per distinct string, as parallel arrays indexed by dictionary id. */
+    private static class Table {
+        private final StringDictionary keys;
+        private int[] hits = new int[16];
+        private long[] bytes = new long[16];
+        private int[] clientErrors = new int[16];
+        private int[] serverErrors = new int[16];
+
+        Table() {
+            this(new StringDictionary());
+        }
+
+        private Table(StringDictionary keys) {
+            this.keys = keys;
+        }
+
+        void add(CharSequence s, int start, int end, int status, long byteCount) {
+            count(keys.idOf(s, start, end), 1, byteCount,
+                    status >= 400 && status < 500 ? 1 : 0, status >= 500 && status < 600 ? 1 : 0);
+        }
+
+        private void count(int id, int hitCount, long byteCount, int clientErrorCount, int serverErrorCount) {
+            if (id == hits.length) {
+                int grown = hits.length * 2;
+                hits = Arrays.copyOf(hits, grown);
+                bytes = Arrays.copyOf(bytes, grown);
+                clientErrors = Arrays.copyOf(clientErrors, grown);
+                serverErrors = Arrays.copyOf(serverErrors, grown);
+            }
+            hits[id] += hitCount;
+            bytes[id] += byteCount;
+            clientErrors[id] += clientErrorCount;
+            serverErrors[id] += serverErrorCount;
+        }
+
+        void merge(Table other) {
+            for (int id = 0; id < other.keys.size(); id++) {
+                count(keys.idOf(other.keys.get(id)), other.hits[id], other.bytes[id],
+                        other.clientErrors[id], other.serverErrors[id]);
+            }
+        }
+
+        Totals totals(int id) {
+            return new Totals(keys.get(id), hits[id], bytes[id], clientErrors[id], serverErrors[id]);
+        }
+
+        List<Totals> all() {
+            List<Totals> result = new ArrayList<>(keys.size());
+            for (int id = 0; id < keys.size(); id++) result.add(totals(id));
+            // Most hits first; ties in name order so the listing is stable
+            result.sort((a, b) -> a.hits != b.hits ? Integer.compare(b.hits, a.hits) : a.key.compareTo(b.key));
+            return result;
+        }
+
+        void writeTo(SnapshotWriter out) throws IOException {
+            int size = keys.size();
+            keys.writeTo(out);
+            out.writeInts(hits, 0, size);
+            for (int id = 0; id < size; id++) out.writeLong(bytes[id]);
+            out.writeInts(clientErrors, 0, size);
+            out.writeInts(serverErrors, 0, size);
+        }
+
+        static Table readFrom(SnapshotReader in) throws IOException {
+            Table table = new Table(StringDictionary.readFrom(in));
+            int size = table.keys.size();
+            int length = Math.max(16, Integer.highestOneBit(Math.max(1, size - 1)) << 1);
+            table.hits = new int[length];
+            table.bytes = new long[length];
+            table.clientErrors = new int[length];
+            table.serverErrors = new int[length];
+            in.readInts(table.hits, 0, size);
+            for (int id = 0; id < size; id++) table.bytes[id] = in.readLong();
+            in.readInts(table.clientErrors, 0, size);
+            in.readInts(table.serverErrors, 0, size);
+            return table;
+        }
+    }
+
+    private final Table paths;
+    private final Table methods;
+
+    public RequestStats() {
+        this(new Table(), new Table());
+    }
+
+    private RequestStats(Table paths, Table methods) {
+        this.paths = paths;
+        this.methods = methods;
+    }
+
+    /**
+     * Counts one parsed line under its path and its method.
+     */
+    public void add(ParsedLine p) {
+        CharSequence line = p.getLine();
+        paths.add(line, p.getPathStart(), p.getPathEnd(), p.getStatusCode(), p.getBytesReturned());
+        methods.add(line, p.getMethodStart(), p.getMethodEnd(), p.getStatusCode(), p.getBytesReturned());
+    }
+
+    /**
+     * Adds the counters of another part of the log (e.g. another chunk or file).
+     */
+    public void merge(RequestStats other) {
+        paths.merge(other.paths);
+        methods.merge(other.methods);
+    }
+
+    /** @return How many distinct paths were seen. */
+    public int getPathCount() {
+        return paths.keys.size();
+    }
+
+    /**
+     * @return The totals of every path, most hits first.
+     */
+    public List<Totals> getPaths() {
+        return paths.all();
+    }
+
+    /**
+     * @return The totals of every method, most hits first.
+     */
+    public List<Totals> getMethods() {
+        return methods.all();
+    }
+
+    /**
+     * @param path A path without query string, e.g. "/index.html".
+     * @return Its totals (all zero if it was never requested).
+     */
+    public Totals getPath(String path) {
+        return find(paths, path);
+    }
+
+    /**
+     * @param method A method, e.g. "GET".
+     * @return Its totals (all zero if it never occurred).
+     */
+    public Totals getMethod(String method) {
+        return find(methods, method);
+    }
+
+    private static Totals find(Table table, String key) {
+        int id = table.keys.find(key);
+        return id >= 0 ? table.totals(id) : new Totals(key, 0, 0, 0, 0);
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        paths.writeTo(out);
+        methods.writeTo(out);
+    }
+
+    static RequestStats readFrom(SnapshotReader in) throws IOException {
+        return new RequestStats(Table.readFrom(in), Table.readFrom(in));
+    }
+}
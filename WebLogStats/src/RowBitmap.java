@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of RecordStore row numbers. While the set is sparse it is a sorted int
+ * array; once more than 1 row in 32 is set it switches to a plain bitmap of longs,
+ * whichever is smaller. Sets can be OR-ed and AND-ed without looking at the rows
+ * themselves, which is how the status and date indexes are combined.
+ */
+public class RowBitmap {
+    private static final int MIN_ROWS_FOR_DENSE = 64;
+
+    // Sparse form: rows[0..count) in ascending order. Unused once words != null.
+    private int[] rows = new int[4];
+    private int count = 0;
+    // Dense form: bit r of words[r >> 6] is set if row r is in the set
+    private long[] words = null;
+
+    /**
+     * Adds a row. In the sparse form rows must be added in ascending order
+     * (which is the order they are read from the file).
+     */
+    public void add(int row) {
+        if (words != null) {
+            setBit(row);
+            return;
+        }
+        if (count > 0 && row <= rows[count - 1]) {
+            if (row == rows[count - 1]) return;
+            toDense(); // Out of order: fall back to the form that does not care
+            setBit(row);
+            return;
+        }
+        if (count == rows.length) rows = Arrays.copyOf(rows, count * 2);
+        rows[count++] = row;
+        if (count >= MIN_ROWS_FOR_DENSE && (long) count * 32 > row) toDense();
+    }
+
+    public boolean contains(int row) {
+        if (words != null) {
+            int w = row >>> 6;
+            return w < words.length && (words[w] & (1L << row)) != 0;
+        }
+        return Arrays.binarySearch(rows, 0, count, row) >= 0;
+    }
+
+    /**
+     * @return The number of rows in the set.
+     */
+    public int cardinality() {
+        if (words == null) return count;
+        int total = 0;
+        for (long word : words) total += Long.bitCount(word);
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return cardinality() == 0;
+    }
+
+    /**
+     * Calls the consumer for every row, in ascending order.
+     */
+    public void forEach(IntConsumer consumer) {
+        if (words == null) {
+            for (int i = 0; i < count; i++) consumer.accept(rows[i]);
+            return;
+        }
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                consumer.accept((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * @return A new set holding the rows in either a or b.
+     */
+    public static RowBitmap or(RowBitmap a, RowBitmap b) {
+        RowBitmap result = new RowBitmap();
+        if (a.words == null && b.words == null) {
+            // Merge two sorted arrays
+            int i = 0, j = 0;
+            while (i < a.count || j < b.count) {
+                int next;
+                if (j >= b.count || (i < a.count && a.rows[i] < b.rows[j])) next = a.rows[i++];
+                else if (i >= a.count || b.rows[j] < a.rows[i]) next = b.rows[j++];
+                else { next = a.rows[i++]; j++; }
+                result.add(next);
+            }
+            return result;
+        }
+        result.words = new long[0];
+        a.forEachWord(result);
+        b.forEachWord(result);
+        return result;
+    }
+
+    /**
+     * @return A new set holding the rows in both a and b.
+     */
+    public static RowBitmap and(RowBitmap a, RowBitmap b) {
+        RowBitmap result = new RowBitmap();
+        if (a.words != null && b.words != null) {
+            result.words = new long[Math.min(a.words.length, b.words.length)];
+            for (int w = 0; w < result.words.length; w++) result.words[w] = a.words[w] & b.words[w];
+            return result;
+        }
+        // At least one side is sparse: walk it and test the other
+        RowBitmap sparse = a.words == null ? a : b;
+        RowBitmap other = sparse == a ? b : a;
+        for (int i = 0; i < sparse.count; i++) {
+            if (other.contains(sparse.rows[i])) result.add(sparse.rows[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the rows of a later bitmap, shifted by rowOffset (used when merging chunks).
+     */
+    public void appendShifted(RowBitmap later, int rowOffset) {
+        later.forEach(row -> add(row + rowOffset));
+    }
+
+    private void forEachWord(RowBitmap target) {
+        if (words == null) {
+            for (int i = 0; i < count; i++) target.setBit(rows[i]);
+        } else {
+            target.ensureWords(words.length);
+            for (int w = 0; w < words.length; w++) target.words[w] |= words[w];
+        }
+    }
+
+    private void toDense() {
+        words = new long[0];
+        for (int i = 0; i < count; i++) setBit(rows[i]);
+        rows = null;
+        count = 0;
+    }
+
+    private void setBit(int row) {
+        ensureWords((row >>> 6) + 1);
+        words[row >>> 6] |= 1L << row;
+    }
+
+    private void ensureWords(int needed) {
+        if (needed > words.length) words = Arrays.copyOf(words, Math.max(needed, words.length * 2));
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        out.writeBoolean(words != null);
+        if (words == null) {
+            out.writeInt(count);
+            out.writeInts(rows, 0, count);
+        } else {
+            out.writeInt(words.length);
+            for (long word : words) out.writeLong(word);
+        }
+    }
+
+    static RowBitmap readFrom(SnapshotReader in) throws IOException {
+        RowBitmap bitmap = new RowBitmap();
+        boolean dense = in.readBoolean();
+        int length = in.readLength();
+        if (dense) {
+            bitmap.rows = null;
+            bitmap.words = new long[length];
+            for (int w = 0; w < length; w++) bitmap.words[w] = in.readLong();
+        } else {
+            bitmap.rows = new int[Math.max(4, length)];
+            in.readInts(bitmap.rows, 0, length);
+            bitmap.count = length;
+        }
+        return bitmap;
+    }
+}
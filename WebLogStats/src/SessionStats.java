@@ -0,0 +1,170 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Totals and distributions of the sessions (visits) a Sessionizer closed: how many
+ * there were, how long they lasted, and how many pages and bytes each took, plus
+ * the number of sessions per IP. Only counters are kept, never the sessions
+ * themselves. Filled by LogAnalyzer.getSessionStats and not changed afterwards.
+ */
+public class SessionStats implements Sessionizer.Listener {
+    // Upper bounds (inclusive) of the duration buckets in seconds; the last bucket is open-ended
+    private static final long[] DURATION_BOUNDS = {0, 60, 5 * 60, 15 * 60, 30 * 60, 60 * 60};
+    private static final String[] DURATION_LABELS = {
+            "single request", "up to 1 min", "1-5 min", "5-15 min", "15-30 min", "30-60 min", "over 1 h"};
+    private static final long[] PAGE_BOUNDS = {0, 1, 2, 5, 10, 20};
+    private static final String[] PAGE_LABELS = {"0 (assets only)", "1", "2", "3-5", "6-10", "11-20", "over 20"};
+
+    private final IpDictionary ips;
+    private final long timeoutMillis;
+    private long sessions = 0;
+    private long requests = 0;
+    private long pages = 0;
+    private long bytes = 0;
+    private long totalDurationMillis = 0;
+    private long maxDurationMillis = 0;
+    private int maxPages = 0;
+    private long maxBytes = 0;
+    private final long[] durationCounts = new long[DURATION_LABELS.length];
+    private final long[] pageCounts = new long[PAGE_LABELS.length];
+    // Sessions per IP id, grown as ids come in
+    private int[] sessionsPerIp = new int[64];
+    // Copied from the Sessionizer once the stream has ended
+    private long lateRequests = 0;
+    private int peakOpenSessions = 0;
+    private long undatedRequests = 0;
+
+    /**
+     * @param ips The dictionary of the IP ids the sessions carry.
+     * @param timeoutMillis The session timeout used (for display).
+     */
+    public SessionStats(IpDictionary ips, long timeoutMillis) {
+        this.ips = ips;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public void sessionClosed(Sessionizer.Session session) {
+        sessions++;
+        requests += session.getRequests();
+        pages += session.getPages();
+        bytes += session.getBytes();
+        long duration = session.getDurationMillis();
+        totalDurationMillis += duration;
+        maxDurationMillis = Math.max(maxDurationMillis, duration);
+        maxPages = Math.max(maxPages, session.getPages());
+        maxBytes = Math.max(maxBytes, session.getBytes());
+        durationCounts[bucket(DURATION_BOUNDS, duration / 1000)]++;
+        pageCounts[bucket(PAGE_BOUNDS, session.getPages())]++;
+
+        int ip = session.getIp();
+        if (ip >= sessionsPerIp.length) sessionsPerIp = Arrays.copyOf(sessionsPerIp, Math.max(ip + 1, sessionsPerIp.length * 2));
+        sessionsPerIp[ip]++;
+    }
+
+    private static int bucket(long[] bounds, long value) {
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) i++;
+        return i;
+    }
+
+    /**
+     * Records what the sessionizer saw besides the sessions, once it has finished.
+     * @param undatedRequests Requests left out because their timestamp could not be read.
+     */
+    void finish(Sessionizer sessionizer, long undatedRequests) {
+        this.lateRequests = sessionizer.getLateRequests();
+        this.peakOpenSessions = sessionizer.getPeakOpenSessions();
+        this.undatedRequests = undatedRequests;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+    public long getSessions() {
+        return sessions;
+    }
+    /** @return Requests in all sessions (undated requests are not in any). */
+    public long getRequests() {
+        return requests;
+    }
+    public long getPages() {
+        return pages;
+    }
+    public long getBytes() {
+        return bytes;
+    }
+
+    public double getMeanDurationSeconds() {
+        return sessions == 0 ? 0 : totalDurationMillis / 1000.0 / sessions;
+    }
+    public double getMaxDurationSeconds() {
+        return maxDurationMillis / 1000.0;
+    }
+    public double getMeanRequests() {
+        return sessions == 0 ? 0 : (double) requests / sessions;
+    }
+    public double getMeanPages() {
+        return sessions == 0 ? 0 : (double) pages / sessions;
+    }
+    public int getMaxPages() {
+        return maxPages;
+    }
+    public double getMeanBytes() {
+        return sessions == 0 ? 0 : (double) bytes / sessions;
+    }
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** @return Sessions per duration bucket, shortest first. */
+    public Map<String, Long> getDurationDistribution() {
+        return distribution(DURATION_LABELS, durationCounts);
+    }
+    /** @return Sessions per pages-per-session bucket, fewest first. */
+    public Map<String, Long> getPagesDistribution() {
+        return distribution(PAGE_LABELS, pageCounts);
+    }
+
+    private static Map<String, Long> distribution(String[] labels, long[] counts) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < labels.length; i++) result.put(labels[i], counts[i]);
+        return result;
+    }
+
+    /**
+     * @return The number of sessions of every IP that had any (compare with LogAnalyzer.getVisitCounts, which counts requests).
+     */
+    public IpCounts getSessionsPerIP() {
+        int n = 0;
+        for (int count : sessionsPerIp) if (count > 0) n++;
+        int[] ids = new int[n];
+        int[] counts = new int[n];
+        n = 0;
+        for (int id = 0; id < sessionsPerIp.length; id++) {
+            if (sessionsPerIp[id] > 0) {
+                ids[n] = id;
+                counts[n++] = sessionsPerIp[id];
+            }
+        }
+        return new IpCounts(ips, ids, counts);
+    }
+
+    /** @return The number of sessions of one IP id (0 if it had none). */
+    public int getSessionCount(int ip) {
+        return ip >= 0 && ip < sessionsPerIp.length ? sessionsPerIp[ip] : 0;
+    }
+
+    /** @return Requests that arrived later than the tolerance (still sessionized, if possibly split). */
+    public long getLateRequests() {
+        return lateRequests;
+    }
+    /** @return The most sessions that were open at once while sessionizing. */
+    public int getPeakOpenSessions() {
+        return peakOpenSessions;
+    }
+    public long getUndatedRequests() {
+        return undatedRequests;
+    }
+}
@@ -0,0 +1,350 @@
+import java.util.Arrays;
+
+/**
+ * Groups a stream of requests into sessions (visits): the requests of one IP belong
+ * to the same session until the IP has been quiet for longer than the timeout.
+ * A page load that pulls in a dozen images is then one visit, not a dozen.
+ *
+ * Requests are expected in roughly time order, as they appear in a log. One that
+ * is up to the tolerance older than the newest request seen is still put in the
+ * right session: a session is only closed once the newest request is more than
+ * timeout + tolerance past its last request, so no request within the tolerance
+ * can arrive for it any more. Until then an IP may have several open sessions
+ * (a later request that came after a gap starts a new one), and a late request
+ * that falls within the timeout of two of them joins them into one. Requests
+ * older than the tolerance are counted as late and sessionized the same way
+ * while their sessions are still open.
+ *
+ * Only the open sessions are kept, grouped by IP and least recently active IP
+ * first, so memory grows with the number of IPs active within the timeout, not
+ * with the log. A request costs one IntIntMap lookup and a few pointer moves. Closed sessions are handed to a Listener (e.g. SessionStats) as
+ * they close.
+ * Not thread-safe: feed it from one thread.
+ */
+public class Sessionizer {
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+    public static final long DEFAULT_TOLERANCE_MILLIS = 60 * 1000L;
+
+    // Requests for files with these extensions are part of a page, not pages themselves
+    private static final String[] ASSET_EXTENSIONS = {
+            ".gif", ".jpg", ".jpeg", ".png", ".bmp", ".ico", ".xbm", ".svg", ".webp",
+            ".css", ".js", ".woff", ".woff2", ".ttf", ".eot", ".map"};
+
+    /** Receives every session once it is closed. */
+    public interface Listener {
+        void sessionClosed(Session session);
+    }
+
+    /** One visit: an IP's requests with no gap longer than the timeout. */
+    public static class Session {
+        private final int ip;
+        private long start;
+        private long end;
+        private int requests = 0;
+        private int pages = 0;
+        private long bytes = 0;
+        // The IP's next open session (the open sessions of an IP form a chain)
+        private Session next;
+        // On the first session of a chain only: the IPs active just before and just after this one
+        private Session older;
+        private Session newer;
+
+        Session(int ip, long epochMillis) {
+            this.ip = ip;
+            this.start = epochMillis;
+            this.end = epochMillis;
+        }
+
+        private void add(long epochMillis, long bytesReturned, boolean page) {
+            if (epochMillis < start) start = epochMillis;
+            if (epochMillis > end) end = epochMillis;
+            requests++;
+            if (page) pages++;
+            bytes += bytesReturned;
+        }
+
+        // Takes in another session of the same IP that a request has joined to this one
+        private void absorb(Session other) {
+            start = Math.min(start, other.start);
+            end = Math.max(end, other.end);
+            requests += other.requests;
+            pages += other.pages;
+            bytes += other.bytes;
+        }
+
+        // Whether a request at this time continues the session (it may come before its start when out of order)
+        private boolean accepts(long epochMillis, long timeoutMillis) {
+            return epochMillis >= start - timeoutMillis && epochMillis <= end + timeoutMillis;
+        }
+
+        /** @return The IP, as given to Sessionizer.add (an IpDictionary id for LogAnalyzer). */
+        public int getIp() {
+            return ip;
+        }
+        /** @return The time of the first request, in epoch milliseconds. */
+        public long getStart() {
+            return start;
+        }
+        /** @return The time of the last request, in epoch milliseconds. */
+        public long getEnd() {
+            return end;
+        }
+        /** @return From the first to the last request (0 for a single request). */
+        public long getDurationMillis() {
+            return end - start;
+        }
+        public int getRequests() {
+            return requests;
+        }
+        /** @return Requests that were pages rather than images, scripts or style sheets. */
+        public int getPages() {
+            return pages;
+        }
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private final long timeoutMillis;
+    private final long toleranceMillis;
+    private final Listener listener;
+    // The chain of open sessions of each IP is kept in a slot of chains, found through chainSlots;
+    // the slots of closed chains are reused, so the array grows with the IPs open at once
+    private final IntIntMap chainSlots = new IntIntMap();
+    private Session[] chains = new Session[16];
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount = 0;
+    private int usedSlots = 0;
+    // The first sessions of the chains in a doubly-linked list, least recently active IP first:
+    // every request moves its IP to the end, so expire() only looks at the front
+    private Session quietest;
+    private Session busiest;
+    private int openSessions = 0;
+    private int maxOpenSessions = Integer.MAX_VALUE;
+    private long newest = Long.MIN_VALUE;
+    private long requests = 0;
+    private long lateRequests = 0;
+    private long forcedCloses = 0;
+    private int peakOpenSessions = 0;
+
+    public Sessionizer(Listener listener) {
+        this(DEFAULT_TIMEOUT_MILLIS, DEFAULT_TOLERANCE_MILLIS, listener);
+    }
+
+    /**
+     * @param timeoutMillis How long an IP may be quiet before its next request starts a new session.
+     * @param toleranceMillis How far out of time order requests may arrive and still be sessionized exactly.
+     * @param listener Receives the sessions as they close.
+     */
+    public Sessionizer(long timeoutMillis, long toleranceMillis, Listener listener) {
+        if (timeoutMillis <= 0 || toleranceMillis < 0) {
+            throw new IllegalArgumentException("Timeout must be positive and tolerance not negative");
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.toleranceMillis = toleranceMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * Caps the open sessions: beyond the cap, the one quiet longest is closed early
+     * (and counted in getForcedCloses). A safety net against floods of distinct IPs;
+     * unlimited by default.
+     */
+    public void setMaxOpenSessions(int maxOpenSessions) {
+        if (maxOpenSessions < 1) throw new IllegalArgumentException("At least one open session is needed");
+        this.maxOpenSessions = maxOpenSessions;
+    }
+
+    /**
+     * Adds one request.
+     * @param ip Identifies the client (e.g. an IpDictionary id).
+     * @param epochMillis When the request was made.
+     * @param bytes Bytes returned.
+     * @param page Whether the request was for a page (see isPageRequest).
+     */
+    public void add(int ip, long epochMillis, long bytes, boolean page) {
+        requests++;
+        if (epochMillis > newest) newest = epochMillis;
+        else if (epochMillis < newest - toleranceMillis) lateRequests++;
+
+        // The request joins every open session of the IP it is within the timeout of
+        // (more than one if it fills a gap between them); with none, it starts a new one
+        int slot = chainSlots.get(ip, -1);
+        Session first = slot < 0 ? null : chains[slot];
+        Session joined = null;
+        Session kept = null;
+        for (Session session = first; session != null; session = session.next) {
+            if (!session.accepts(epochMillis, timeoutMillis)) {
+                kept = session;
+            } else if (joined == null) {
+                joined = session;
+                kept = session;
+            } else {
+                joined.absorb(session);
+                kept.next = session.next; // kept is never null here: joined comes before
+                openSessions--;
+            }
+        }
+        if (joined == null) {
+            joined = new Session(ip, epochMillis);
+            if (first == null) {
+                first = joined;
+                slot = newSlot();
+                chains[slot] = first;
+                chainSlots.put(ip, slot);
+            } else {
+                // Behind the first session, so the chain keeps its place in the list
+                joined.next = first.next;
+                first.next = joined;
+            }
+            openSessions++;
+            if (openSessions > peakOpenSessions) peakOpenSessions = openSessions;
+        }
+        joined.add(epochMillis, bytes, page);
+        makeBusiest(first);
+        expire();
+    }
+
+    // Closes the sessions no request within the tolerance can extend any more, plus any beyond the cap
+    private void expire() {
+        long horizon = newest - toleranceMillis - timeoutMillis;
+        for (Session first = quietest; first != null; ) {
+            Session newer = first.newer;
+            // Close what has expired in this IP's chain; its other sessions may still grow
+            Session head = null;
+            Session tail = null;
+            for (Session session = first; session != null; ) {
+                Session next = session.next;
+                if (session.getEnd() < horizon) {
+                    close(session);
+                } else if (head == null) {
+                    head = tail = session;
+                } else {
+                    tail.next = session;
+                    tail = session;
+                }
+                session = next;
+            }
+            if (tail != null) tail.next = null;
+            if (head == null) {
+                removeChain(first);
+            } else {
+                if (head != first) replaceFirst(first, head);
+                if (openSessions <= maxOpenSessions) break; // The IPs after this one were active more recently
+                // Over the cap: the IP quiet longest loses its sessions early
+                removeChain(head);
+                for (Session session = head; session != null; session = session.next) {
+                    forcedCloses++;
+                    close(session);
+                }
+            }
+            first = newer;
+        }
+    }
+
+    private int newSlot() {
+        if (freeSlotCount > 0) return freeSlots[--freeSlotCount];
+        if (usedSlots == chains.length) chains = Arrays.copyOf(chains, chains.length * 2);
+        return usedSlots++;
+    }
+
+    // Moves the chain that starts with this session to the end of the list
+    private void makeBusiest(Session first) {
+        if (first == busiest) return;
+        if (first.older != null || first == quietest) unlink(first);
+        first.older = busiest;
+        first.newer = null;
+        if (busiest != null) busiest.newer = first;
+        else quietest = first;
+        busiest = first;
+    }
+
+    private void unlink(Session first) {
+        if (first.older != null) first.older.newer = first.newer;
+        else quietest = first.newer;
+        if (first.newer != null) first.newer.older = first.older;
+        else busiest = first.older;
+        first.older = null;
+        first.newer = null;
+    }
+
+    // Puts a chain's new first session (its old one was closed) in the old one's place
+    private void replaceFirst(Session old, Session first) {
+        first.older = old.older;
+        first.newer = old.newer;
+        if (first.older != null) first.older.newer = first;
+        else quietest = first;
+        if (first.newer != null) first.newer.older = first;
+        else busiest = first;
+        old.older = null;
+        old.newer = null;
+        chains[chainSlots.get(first.getIp(), -1)] = first;
+    }
+
+    // Forgets the chain that starts with this session (its sessions are closed by the caller)
+    private void removeChain(Session first) {
+        unlink(first);
+        int slot = chainSlots.get(first.getIp(), -1);
+        chainSlots.remove(first.getIp());
+        chains[slot] = null;
+        if (freeSlotCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    private void close(Session session) {
+        openSessions--;
+        listener.sessionClosed(session);
+    }
+
+    /**
+     * Closes every open session; call once the stream has ended.
+     */
+    public void finish() {
+        while (quietest != null) {
+            Session first = quietest;
+            removeChain(first);
+            for (Session session = first; session != null; session = session.next) close(session);
+        }
+    }
+
+    /**
+     * Tells pages from the images, scripts and style sheets they pull in, by the
+     * extension of the requested path (the query string is ignored).
+     * @param request A request as logged, e.g. "GET /index.html HTTP/1.0".
+     */
+    public static boolean isPageRequest(CharSequence request) {
+        ParsedLine parts = new ParsedLine();
+        WebLogParser.splitRequest(request, 0, request.length(), parts);
+        String path = request.subSequence(parts.getPathStart(), parts.getPathEnd()).toString().toLowerCase();
+        for (String extension : ASSET_EXTENSIONS) {
+            if (path.endsWith(extension)) return false;
+        }
+        return true;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+    public long getToleranceMillis() {
+        return toleranceMillis;
+    }
+    /** @return Requests added so far. */
+    public long getRequests() {
+        return requests;
+    }
+    /** @return Requests that arrived more than the tolerance older than the newest one before them. */
+    public long getLateRequests() {
+        return lateRequests;
+    }
+    /** @return Sessions closed early because of setMaxOpenSessions. */
+    public long getForcedCloses() {
+        return forcedCloses;
+    }
+    public int getOpenSessions() {
+        return openSessions;
+    }
+    /** @return The most sessions that were open at once (what the memory use grew with). */
+    public int getPeakOpenSessions() {
+        return peakOpenSessions;
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file written by SnapshotWriter through a memory mapping. Int and long arrays
+ * are bulk-copied straight out of the mapped pages, so loading a column is a
+ * memory copy rather than a parse. As with MappedLogReader, files over 2 GB are
+ * mapped one window at a time.
+ */
+public class SnapshotReader implements Closeable {
+    private static final long WINDOW_BYTES = 256L << 20; // 256 MB
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+
+    /**
+     * @throws IOException If the file cannot be opened.
+     */
+    public SnapshotReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    public int readInt() throws IOException {
+        return need(4).getInt();
+    }
+
+    public long readLong() throws IOException {
+        return need(8).getLong();
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readInt() != 0;
+    }
+
+    public byte[] readBytes() throws IOException {
+        byte[] bytes = new byte[readLength()];
+        need(bytes.length).get(bytes);
+        return bytes;
+    }
+
+    public String readString() throws IOException {
+        return new String(readBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Fills values[offset, offset + length).
+     */
+    public void readInts(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            need(4);
+            int n = Math.min(length, window.remaining() / 4);
+            window.asIntBuffer().get(values, offset, n);
+            window.position(window.position() + n * 4);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Fills values[offset, offset + length) with longs written by SnapshotWriter.writeLongs.
+     */
+    public void readLongs(long[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            need(8);
+            int n = Math.min(length, window.remaining() / 8);
+            window.asLongBuffer().get(values, offset, n);
+            window.position(window.position() + n * 8);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Reads an array written by SnapshotWriter.writeIntArray.
+     */
+    public int[] readIntArray() throws IOException {
+        int[] values = new int[readLength()];
+        readInts(values, 0, values.length);
+        return values;
+    }
+
+    /**
+     * Reads a length or count, rejecting values that cannot be right (a damaged file).
+     */
+    public int readLength() throws IOException {
+        int length = readInt();
+        if (length < 0 || length > size) throw new IOException("Snapshot is damaged (bad length " + length + ")");
+        return length;
+    }
+
+    /**
+     * @return The mapped window, positioned where at least the given number of bytes can be read.
+     */
+    private MappedByteBuffer need(int bytes) throws IOException {
+        if (window != null && window.remaining() >= bytes) return window;
+        long position = window == null ? 0 : windowStart + window.position();
+        if (position + bytes > size) throw new EOFException("Snapshot is truncated");
+        long length = Math.min(size - position, Math.max(WINDOW_BYTES, bytes));
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = position;
+        return window;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,116 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the primitive values of a LogSnapshot to a file through one reusable
+ * direct buffer. Int and long arrays are copied into the buffer in bulk, so writing a
+ * column costs about as much as copying it. Everything is little-endian, to
+ * match SnapshotReader.
+ */
+public class SnapshotWriter implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Creates (or replaces) the file.
+     * @throws IOException If the file cannot be opened for writing.
+     */
+    public SnapshotWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    public void writeInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        writeInt(value ? 1 : 0);
+    }
+
+    /**
+     * Writes a length followed by the bytes.
+     */
+    public void writeBytes(byte[] bytes) throws IOException {
+        writeInt(bytes.length);
+        int done = 0;
+        while (done < bytes.length) {
+            ensure(1);
+            int n = Math.min(bytes.length - done, buffer.remaining());
+            buffer.put(bytes, done, n);
+            done += n;
+        }
+    }
+
+    public void writeString(String s) throws IOException {
+        writeBytes(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes values[offset, offset + length) with no length prefix.
+     */
+    public void writeInts(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(4);
+            int n = Math.min(length, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(values, offset, n);
+            buffer.position(buffer.position() + n * 4);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Writes values[offset, offset + length) with no length prefix.
+     */
+    public void writeLongs(long[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(8);
+            int n = Math.min(length, buffer.remaining() / 8);
+            buffer.asLongBuffer().put(values, offset, n);
+            buffer.position(buffer.position() + n * 8);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Writes a whole array, preceded by its length.
+     */
+    public void writeIntArray(int[] values) throws IOException {
+        writeInt(values.length);
+        writeInts(values, 0, values.length);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the most frequent items of a stream in fixed memory with the
+ * Space-Saving algorithm (Metwally et al.): at most `capacity` counters are kept,
+ * and a new item that finds them all taken replaces the item with the smallest
+ * count, inheriting that count as its possible error. Every item that occurs more
+ * than total / capacity times is guaranteed to be tracked, and each reported count
+ * is at most `error` above the true count.
+ *
+ * Items are identified by a 64-bit hash (see HyperLogLog.hashChars); their text is
+ * only copied when an item gets a counter, so a line with a tracked item costs a
+ * hash lookup and a heap step, and allocates nothing.
+ */
+public class SpaceSaving {
+    /** One tracked item: its text, its (over)estimated count, and the most that count can be over. */
+    public static class Entry {
+        private final String item;
+        private final long count;
+        private final long error;
+
+        Entry(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getItem() {
+            return item;
+        }
+        /** @return An upper bound on how often the item occurred. */
+        public long getCount() {
+            return count;
+        }
+        /** @return How much getCount() may overstate the true count. */
+        public long getError() {
+            return error;
+        }
+        /** @return A lower bound on how often the item occurred. */
+        public long getGuaranteedCount() {
+            return count - error;
+        }
+
+        @Override
+        public String toString() {
+            return item + " (" + (error == 0 ? String.valueOf(count) : (count - error) + "-" + count) + ")";
+        }
+    }
+
+    private final int capacity;
+    private long total = 0;
+    private int size = 0;
+
+    // Counter i: item hash, text, count and error
+    private final long[] hashes;
+    private final String[] items;
+    private final long[] counts;
+    private final long[] errors;
+    // Min-heap of counter indexes ordered by count, and each counter's place in it
+    private final int[] heap;
+    private final int[] heapPos;
+    // Open-addressing table of counter index + 1 (0 = empty), keyed by hash
+    private final int[] table;
+
+    /**
+     * @param capacity How many items to track; the top results are reliable for k well below this.
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+        this.capacity = capacity;
+        hashes = new long[capacity];
+        items = new String[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        heap = new int[capacity];
+        heapPos = new int[capacity];
+        table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    }
+
+    /**
+     * Counts one occurrence of the item in [start, end) of s.
+     * @param hash The item's hash (HyperLogLog.hashChars of the same range).
+     */
+    public void add(long hash, CharSequence s, int start, int end) {
+        total++;
+        int counter = find(hash);
+        if (counter >= 0) {
+            counts[counter]++;
+            siftDown(heapPos[counter]);
+            return;
+        }
+        String item = s.subSequence(start, end).toString();
+        if (size < capacity) {
+            insert(hash, item, 1, 0);
+        } else {
+            // Replace the smallest counter; its count becomes the newcomer's possible error
+            int victim = heap[0];
+            unlink(victim);
+            hashes[victim] = hash;
+            items[victim] = item;
+            errors[victim] = counts[victim];
+            counts[victim]++;
+            link(victim);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Folds in a summary of another part of the stream (e.g. another chunk or file).
+     * An item missing from one side may have occurred there up to that side's
+     * smallest count, so that amount is added to its count and its error
+     * (Agarwal et al., "Mergeable Summaries").
+     */
+    public void merge(SpaceSaving other) {
+        long myFloor = size == capacity ? counts[heap[0]] : 0;
+        long otherFloor = other.size == other.capacity ? other.counts[other.heap[0]] : 0;
+        // The counters of both sides side by side: this one's first, then the items only the other has
+        int n = 0;
+        long[] mergedHashes = new long[size + other.size];
+        String[] mergedItems = new String[size + other.size];
+        long[] mergedCounts = new long[size + other.size];
+        long[] mergedErrors = new long[size + other.size];
+        for (int i = 0; i < size; i++, n++) {
+            int match = other.find(hashes[i]);
+            mergedHashes[n] = hashes[i];
+            mergedItems[n] = items[i];
+            mergedCounts[n] = counts[i] + (match >= 0 ? other.counts[match] : otherFloor);
+            mergedErrors[n] = errors[i] + (match >= 0 ? other.errors[match] : otherFloor);
+        }
+        for (int i = 0; i < other.size; i++) {
+            if (find(other.hashes[i]) >= 0) continue;
+            mergedHashes[n] = other.hashes[i];
+            mergedItems[n] = other.items[i];
+            mergedCounts[n] = other.counts[i] + myFloor;
+            mergedErrors[n] = other.errors[i] + myFloor;
+            n++;
+        }
+        // Highest counts first, ties by item as in top(), so the same counters survive whatever the merge order
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> mergedCounts[a] != mergedCounts[b]
+                ? Long.compare(mergedCounts[b], mergedCounts[a]) : mergedItems[a].compareTo(mergedItems[b]));
+
+        long newTotal = total + other.total;
+        clear();
+        for (int i = 0; i < n && i < capacity; i++) {
+            int c = order[i];
+            insert(mergedHashes[c], mergedItems[c], mergedCounts[c], mergedErrors[c]);
+        }
+        total = newTotal;
+    }
+
+    /**
+     * @return The k items with the highest counts, highest first (fewer if fewer are tracked).
+     */
+    public List<Entry> top(int k) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> counts[a] != counts[b] ? Long.compare(counts[b], counts[a]) : items[a].compareTo(items[b]));
+        List<Entry> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, size); i++) {
+            int c = order[i];
+            result.add(new Entry(items[c], counts[c], errors[c]));
+        }
+        return result;
+    }
+
+    /**
+     * @return How many occurrences were counted in total.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return The most any reported count can overstate the truth: the smallest
+     *         tracked count once every counter is in use (at most total / capacity), else 0.
+     */
+    public long getMaxError() {
+        return size == capacity ? counts[heap[0]] : 0;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // --- Counter bookkeeping ---
+
+    private void insert(long hash, String item, long count, long error) {
+        int counter = size++;
+        hashes[counter] = hash;
+        items[counter] = item;
+        counts[counter] = count;
+        errors[counter] = error;
+        link(counter);
+        heap[counter] = counter;
+        heapPos[counter] = counter;
+        siftUp(counter);
+    }
+
+    private void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(items, null);
+        size = 0;
+        total = 0;
+    }
+
+    private int find(long hash) {
+        int mask = table.length - 1;
+        for (int slot = slotOf(hash); table[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[table[slot] - 1] == hash) return table[slot] - 1;
+        }
+        return -1;
+    }
+
+    private void link(int counter) {
+        int mask = table.length - 1;
+        int slot = slotOf(hashes[counter]);
+        while (table[slot] != 0) slot = (slot + 1) & mask;
+        table[slot] = counter + 1;
+    }
+
+    /**
+     * Removes a counter from the table, moving later entries of its probe run back
+     * so that lookups never stop early at the hole.
+     */
+    private void unlink(int counter) {
+        int mask = table.length - 1;
+        int slot = slotOf(hashes[counter]);
+        while (table[slot] != counter + 1) slot = (slot + 1) & mask;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = slotOf(hashes[table[next] - 1]);
+            // Move the entry back if its home slot is not between the hole and where it sits now
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private int slotOf(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (table.length - 1);
+    }
+
+    private void siftUp(int pos) {
+        int counter = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[counter]) break;
+            place(heap[parent], pos);
+            pos = parent;
+        }
+        place(counter, pos);
+    }
+
+    private void siftDown(int pos) {
+        int counter = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) break;
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) child++;
+            if (counts[heap[child]] >= counts[counter]) break;
+            place(heap[child], pos);
+            pos = child;
+        }
+        place(counter, pos);
+    }
+
+    private void place(int counter, int pos) {
+        heap[pos] = counter;
+        heapPos[counter] = pos;
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(total);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(hashes[i]);
+            out.writeString(items[i]);
+            out.writeLong(counts[i]);
+            out.writeLong(errors[i]);
+        }
+    }
+
+    static SpaceSaving readFrom(SnapshotReader in) throws IOException {
+        int capacity = in.readInt();
+        if (capacity < 1 || capacity > (1 << 24)) throw new IOException("Snapshot is damaged (bad top-k capacity)");
+        SpaceSaving summary = new SpaceSaving(capacity);
+        long total = in.readLong();
+        int size = in.readLength();
+        if (size > capacity) throw new IOException("Snapshot is damaged (bad top-k size)");
+        for (int i = 0; i < size; i++) {
+            long hash = in.readLong();
+            String item = in.readString();
+            long count = in.readLong();
+            summary.insert(hash, item, count, in.readLong());
+        }
+        summary.total = total;
+        return summary;
+    }
+}
@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One RowBitmap of RecordStore rows per HTTP status code, built while the file is
+ * read. A status range query ORs the few bitmaps in the range instead of checking
+ * every row, and the result can be AND-ed with a date filter.
+ */
+public class StatusIndex {
+    private final TreeMap<Integer, RowBitmap> rowsByStatus = new TreeMap<>();
+    // Most consecutive lines share a status code
+    private int lastStatus = -1;
+    private RowBitmap lastRows;
+
+    /**
+     * Records that a row has the given status. Rows must be added in ascending order.
+     */
+    public void add(int status, int row) {
+        if (status != lastStatus || lastRows == null) {
+            lastRows = rowsByStatus.computeIfAbsent(status, k -> new RowBitmap());
+            lastStatus = status;
+        }
+        lastRows.add(row);
+    }
+
+    /**
+     * Adds the rows of an index built for a later part of the file.
+     * @param later The other index.
+     * @param rowOffset How many rows came before the other index's row 0.
+     */
+    public void merge(StatusIndex later, int rowOffset) {
+        for (Map.Entry<Integer, RowBitmap> status : later.rowsByStatus.entrySet()) {
+            rowsByStatus.computeIfAbsent(status.getKey(), k -> new RowBitmap()).appendShifted(status.getValue(), rowOffset);
+        }
+        lastRows = null;
+    }
+
+    /**
+     * @return The rows whose status is between low and high (inclusive).
+     */
+    public RowBitmap rowsInRange(int low, int high) {
+        RowBitmap result = new RowBitmap();
+        if (low > high) return result;
+        for (RowBitmap rows : rowsByStatus.subMap(low, true, high, true).values()) {
+            result = RowBitmap.or(result, rows);
+        }
+        return result;
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        out.writeInt(rowsByStatus.size());
+        for (Map.Entry<Integer, RowBitmap> status : rowsByStatus.entrySet()) {
+            out.writeInt(status.getKey());
+            status.getValue().writeTo(out);
+        }
+    }
+
+    static StatusIndex readFrom(SnapshotReader in) throws IOException {
+        StatusIndex index = new StatusIndex();
+        int statuses = in.readLength();
+        for (int i = 0; i < statuses; i++) {
+            int status = in.readInt();
+            index.rowsByStatus.put(status, RowBitmap.readFrom(in));
+        }
+        return index;
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Assigns a small int id to each distinct string, so a column can store the id
+ * instead of repeating the text on every row. Lookups can be done straight from a
+ * range of a CharSequence (e.g. a ByteLine), which only allocates a String the
+ * first time a value is seen.
+ */
+public class StringDictionary {
+    private String[] values = new String[16];
+    private int[] hashes = new int[16];
+    private int size = 0;
+    // Open-addressing table of id + 1 (0 means empty)
+    private int[] table = new int[32];
+
+    /**
+     * Returns the id for the characters in [start, end) of s, adding them if new.
+     */
+    public int idOf(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                // Byte views show raw UTF-8 bytes, so compare non-ASCII text in decoded form
+                return idOf(s.subSequence(start, end).toString());
+            }
+            h = 31 * h + c;
+        }
+        return lookupOrAdd(s, start, end, h);
+    }
+
+    /**
+     * Returns the id for the given string, adding it if new.
+     */
+    public int idOf(String s) {
+        return lookupOrAdd(s, 0, s.length(), s.hashCode());
+    }
+
+    /**
+     * Looks up a string without adding it.
+     * @return Its id, or -1 if it is not in the dictionary.
+     */
+    public int find(String s) {
+        int h = s.hashCode();
+        int mask = table.length - 1;
+        for (int slot = spread(h) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == h && values[id].equals(s)) return id;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The string with the given id.
+     */
+    public String get(int id) {
+        return values[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int lookupOrAdd(CharSequence s, int start, int end, int h) {
+        int mask = table.length - 1;
+        int slot = spread(h) & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (hashes[id] == h && sameChars(values[id], s, start, end)) return id;
+            slot = (slot + 1) & mask;
+        }
+
+        String value = (s instanceof String && start == 0 && end == s.length())
+                ? (String) s : s.subSequence(start, end).toString();
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int id = size++;
+        values[id] = value;
+        hashes[id] = h;
+        table[slot] = id + 1;
+        if (size * 2 > table.length) rehash();
+        return id;
+    }
+
+    private void rehash() {
+        int[] bigger = new int[table.length * 2];
+        int mask = bigger.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(hashes[id]) & mask;
+            while (bigger[slot] != 0) slot = (slot + 1) & mask;
+            bigger[slot] = id + 1;
+        }
+        table = bigger;
+    }
+
+    private static boolean sameChars(String value, CharSequence s, int start, int end) {
+        if (value.length() != end - start) return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != s.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9; // Fibonacci hashing so similar strings land far apart
+        return h ^ (h >>> 16);
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) out.writeString(values[id]);
+        out.writeInts(hashes, 0, size);
+        out.writeIntArray(table);
+    }
+
+    static StringDictionary readFrom(SnapshotReader in) throws IOException {
+        StringDictionary dictionary = new StringDictionary();
+        int size = in.readLength();
+        dictionary.values = new String[Math.max(16, size)];
+        for (int id = 0; id < size; id++) dictionary.values[id] = in.readString();
+        dictionary.hashes = new int[dictionary.values.length];
+        in.readInts(dictionary.hashes, 0, size);
+        dictionary.table = in.readIntArray();
+        if (Integer.bitCount(dictionary.table.length) != 1 || size * 2 > dictionary.table.length) {
+            throw new IOException("Snapshot is damaged (bad dictionary table)");
+        }
+        dictionary.size = size;
+        return dictionary;
+    }
+}
@@ -2,12 +2,19 @@
 
 import javax.swing.*;
 import java.awt.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.LinkedHashMap; // For MONTH_MAP
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SummaryStatsWindow extends JFrame {
 
@@ -25,8 +32,42 @@ public class SummaryStatsWindow extends JFrame {
     private JButton analyzeDateButton;
     private JTextArea selectedDateResultsTextArea; // New text area
 
-    // Data needed across methods
-    private HashMap<String, ArrayList<String>> dayToIPsMap; // Make this a field
+    // Data needed across methods: per-day totals from the single summary pass
+    // (set on the worker thread, read by later tasks on the same thread)
+    private volatile DailyVisitsMetric dailyVisits;
+
+    // Analyses run here, one at a time and in the order they were asked for, so the
+    // EDT never waits on the log and two analyses never use the analyzer at once
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "SummaryStatsWindow worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The date query being computed, if any (only touched on the EDT)
+    private SwingWorker<Void, String> dateWorker;
+
+    private static final DateTimeFormatter DAY_MONTH_FORMATTER = DateTimeFormatter.ofPattern("MMM dd", Locale.US);
+    private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("MMM dd, yyyy HH:mm", Locale.US);
+
+    // Sums rollup buckets for display
+    private static class TrafficTotals {
+        long requests = 0;
+        long bytes = 0;
+        long[] statusClasses = new long[6];
+
+        void add(TimeRollup.Bucket bucket) {
+            requests += bucket.getRequests();
+            bytes += bucket.getBytes();
+            for (int i = 0; i < statusClasses.length; i++) statusClasses[i] += bucket.getStatusClassCount(i);
+        }
+
+        String describeStatusClasses() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 1; i <= 5; i++) sb.append(i).append("xx: ").append(statusClasses[i]).append("  ");
+            if (statusClasses[0] > 0) sb.append("other: ").append(statusClasses[0]);
+            return sb.toString().trim();
+        }
+    }
 
     // Month mapping (similar to LogAnalysisWindow)
     private static final Map<String, Integer> MONTH_MAP = createMonthMap();
@@ -128,63 +169,106 @@ public class SummaryStatsWindow extends JFrame {
         analyzeDateButton.addActionListener(e -> analyzeSelectedDate());
     }
 
-    // Populate the main summary text area (logic moved here)
+    // Populate the main summary text area. The aggregation pass over the log runs on
+    // the background worker and each section is shown as soon as it is ready.
     private void populateSummaryResults() {
-        fileInfoLabel.setText("Analyzing File: " + shortFilename);
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("🚀 Welcome to the Log Stats Extravaganza! 🚀\n");
-        sb.append("=============================================\n\n");
-
-        // Perform calculations first
-        HashMap<String, Integer> ipCountsMap = analyzer.countVisitsPerIP();
-        int totalUniqueIPs = ipCountsMap.size();
-        int maxVisits = analyzer.mostNumberVisitsByIP(ipCountsMap);
-        ArrayList<String> ipsWithMaxVisits = analyzer.iPsMostVisits(ipCountsMap);
-        this.dayToIPsMap = analyzer.iPsForDays(); // Initialize the field here
-        String busiestDay = analyzer.dayWithMostIPVisits(this.dayToIPsMap); // Use field
-        ArrayList<String> busiestDayFrequentIPs = new ArrayList<>();
-        int maxVisitsOnBusiestDay = 0;
-
-        if (busiestDay != null && this.dayToIPsMap.containsKey(busiestDay)) { // Use field
-            busiestDayFrequentIPs = analyzer.iPsWithMostVisitsOnDay(this.dayToIPsMap, busiestDay); // Use field
-            HashMap<String, Integer> countsOnBusiestDay = new HashMap<>();
-            ArrayList<String> ipsOnBusiest = this.dayToIPsMap.get(busiestDay); // Use field
-            if (ipsOnBusiest != null) {
-                for (String ip : ipsOnBusiest) {
-                    countsOnBusiestDay.put(ip, countsOnBusiestDay.getOrDefault(ip, 0) + 1);
+        fileInfoLabel.setText("Analyzing File: " + shortFilename + " (computing summary...)");
+        summaryResultsTextArea.setText("");
+
+        SwingWorker<Void, String> summaryWorker = new SwingWorker<Void, String>() {
+            @Override
+            protected Void doInBackground() {
+                StringBuilder sb = new StringBuilder();
+                sb.append("🚀 Welcome to the Log Stats Extravaganza! 🚀\n");
+                sb.append("=============================================\n\n");
+                publish(sb.toString());
+
+                // Perform calculations first: every statistic below comes out of one shared pass
+                AggregationEngine engine = new AggregationEngine();
+                VisitsPerIPMetric ipVisits = engine.register(new VisitsPerIPMetric());
+                DailyVisitsMetric daily = engine.register(new DailyVisitsMetric());
+                analyzer.aggregate(engine);
+                dailyVisits = daily; // Keep for date queries, which run after this on the same worker
+
+                int totalUniqueIPs = ipVisits.getUniqueIPs();
+                int maxVisits = ipVisits.getMaxVisits();
+                ArrayList<String> ipsWithMaxVisits = analyzer.toAddresses(ipVisits.getIPsWithMostVisits());
+                LocalDate busiestDate = daily.getBusiestDay();
+                String busiestDay = busiestDate == null ? null : DAY_MONTH_FORMATTER.format(busiestDate);
+                ArrayList<String> busiestDayFrequentIPs = new ArrayList<>();
+                int maxVisitsOnBusiestDay = 0;
+                int totalVisitsOnBusiestDay = 0;
+
+                if (busiestDate != null) {
+                    DailyVisitsMetric.DayTotals busiestTotals = daily.get(busiestDate);
+                    busiestDayFrequentIPs = analyzer.toAddresses(busiestTotals.getTopIPs());
+                    maxVisitsOnBusiestDay = busiestTotals.getMaxVisitsByOneIP();
+                    totalVisitsOnBusiestDay = busiestTotals.getVisits();
+                }
+
+                // Format Output (same as before)
+                sb.setLength(0);
+                sb.append("--- 📈 IP Visit Frequency Analysis --- \n");
+                sb.append("Total Unique IP Addresses Found: ").append(totalUniqueIPs).append("\n");
+                sb.append("🥇 Maximum Visits by a Single IP: ").append(maxVisits).append("\n");
+                sb.append("🏆 IP Address(es) with Most Visits (").append(maxVisits).append(" times):\n");
+                if (ipsWithMaxVisits.isEmpty()) sb.append("   (No visits recorded? Spooky! 👻)\n");
+                else for (String ip : ipsWithMaxVisits) sb.append("   - ").append(ip).append("\n");
+                sb.append("\n");
+                sb.append("--- 📅 Daily Activity Pulse --- \n");
+                TimeRollup days = analyzer.getTrafficRollup(TimeRollup.Granularity.DAY);
+                sb.append("Total Days with Recorded Activity: ").append(days.getBuckets().size()).append("\n");
+                if (busiestDay != null) {
+                    sb.append("💥 Busiest Day Overall (Most Visits): ").append(busiestDay)
+                      .append(" (with ").append(totalVisitsOnBusiestDay).append(" total visits recorded)\n");
+                    sb.append("   --- Spotlight on ").append(busiestDay).append(" ---\n");
+                    if (!busiestDayFrequentIPs.isEmpty()) {
+                        sb.append("   🥇 Most Frequent Visitor(s) on ").append(busiestDay).append(" (").append(maxVisitsOnBusiestDay).append(" times that day):\n");
+                         for(String ip : busiestDayFrequentIPs) sb.append("      - ").append(ip).append("\n");
+                    } else sb.append("   (No specific frequent visitors found for this day, or only single visits.)\n");
+                } else sb.append("   (No daily activity found to determine a busiest day.)\n");
+                publish(sb.toString());
+
+                // Traffic totals come from the pre-built rollups, not from the records
+                sb.setLength(0);
+                sb.append("\n--- 📊 Traffic Rollups --- \n");
+                TrafficTotals total = new TrafficTotals();
+                for (TimeRollup.Bucket day : days.getBuckets().values()) total.add(day);
+                sb.append("Requests: ").append(total.requests).append("   Bytes Sent: ").append(total.bytes).append("\n");
+                sb.append("By Status Class: ").append(total.describeStatusClasses()).append("\n");
+                Map.Entry<Long, TimeRollup.Bucket> busiestHour = analyzer.getTrafficRollup(TimeRollup.Granularity.HOUR).getBusiest();
+                if (busiestHour != null) {
+                    sb.append("⏰ Busiest Hour: ").append(HOUR_FORMATTER.format(analyzer.getTrafficRollup(TimeRollup.Granularity.HOUR).startOf(busiestHour.getKey())))
+                      .append(" (").append(busiestHour.getValue().getRequests()).append(" requests, ~")
+                      .append(busiestHour.getValue().getUniqueIPs()).append(" unique IPs)\n");
+                }
+                Map.Entry<Long, TimeRollup.Bucket> busiestMinute = analyzer.getTrafficRollup(TimeRollup.Granularity.MINUTE).getBusiest();
+                if (busiestMinute != null) {
+                    sb.append("⚡ Peak Minute: ").append(HOUR_FORMATTER.format(analyzer.getTrafficRollup(TimeRollup.Granularity.MINUTE).startOf(busiestMinute.getKey())))
+                      .append(" (").append(busiestMinute.getValue().getRequests()).append(" requests)\n");
                 }
-                maxVisitsOnBusiestDay = analyzer.mostNumberVisitsByIP(countsOnBusiestDay);
+                sb.append("\n=============================================\n");
+                sb.append("✨ Overall Summary Complete! Use controls below to query specific dates. ✨\n");
+                publish(sb.toString());
+                return null;
+            }
+
+            @Override
+            protected void process(List<String> sections) { // On the EDT
+                for (String section : sections) summaryResultsTextArea.append(section);
             }
-        }
 
-        // Format Output (same as before)
-        sb.append("--- 📈 IP Visit Frequency Analysis --- \n");
-        sb.append("Total Unique IP Addresses Found: ").append(totalUniqueIPs).append("\n");
-        sb.append("🥇 Maximum Visits by a Single IP: ").append(maxVisits).append("\n");
-        sb.append("🏆 IP Address(es) with Most Visits (").append(maxVisits).append(" times):\n");
-        if (ipsWithMaxVisits.isEmpty()) sb.append("   (No visits recorded? Spooky! 👻)\n");
-        else for (String ip : ipsWithMaxVisits) sb.append("   - ").append(ip).append("\n");
-        sb.append("\n");
-        sb.append("--- 📅 Daily Activity Pulse --- \n");
-        sb.append("Total Days with Recorded Activity: ").append(dayToIPsMap.size()).append("\n");
-        if (busiestDay != null) {
-            int totalVisitsOnBusiestDay = dayToIPsMap.get(busiestDay) != null ? dayToIPsMap.get(busiestDay).size() : 0;
-            sb.append("💥 Busiest Day Overall (Most Visits): ").append(busiestDay)
-              .append(" (with ").append(totalVisitsOnBusiestDay).append(" total visits recorded)\n");
-            sb.append("   --- Spotlight on ").append(busiestDay).append(" ---\n");
-            if (!busiestDayFrequentIPs.isEmpty()) {
-                sb.append("   🥇 Most Frequent Visitor(s) on ").append(busiestDay).append(" (").append(maxVisitsOnBusiestDay).append(" times that day):\n");
-                 for(String ip : busiestDayFrequentIPs) sb.append("      - ").append(ip).append("\n");
-            } else sb.append("   (No specific frequent visitors found for this day, or only single visits.)\n");
-        } else sb.append("   (No daily activity found to determine a busiest day.)\n");
-        sb.append("\n=============================================\n");
-        sb.append("✨ Overall Summary Complete! Use controls below to query specific dates. ✨\n");
-
-        summaryResultsTextArea.setText(sb.toString());
-        summaryResultsTextArea.setCaretPosition(0);
+            @Override
+            protected void done() {
+                fileInfoLabel.setText("Analyzing File: " + shortFilename);
+                reportFailure(this, summaryResultsTextArea);
+                summaryResultsTextArea.setCaretPosition(0);
+            }
+        };
+        worker.execute(summaryWorker);
     }
 
+
     // Populate the date selector dropdowns
     private void populateDateSelectors() {
         Date minDate = analyzer.getMinDate();
@@ -237,64 +321,111 @@ public class SummaryStatsWindow extends JFrame {
             return;
         }
 
-        // Construct the "MMM dd" key format
-        String dayKey = String.format("%s %02d", monthStr, dayInt);
-
-        StringBuilder resultSb = new StringBuilder();
-        resultSb.append("--- Analysis for ").append(monthStr).append(" ").append(dayInt).append(", ").append(yearInt).append(" ---\n\n");
-
-        // 1. Get Unique IPs for the day
-        ArrayList<String> uniqueIPs = analyzer.uniqueIPVisitsOnDay(dayKey); // Use existing method
-        resultSb.append("Unique IP visits on ").append(dayKey).append(":\n");
-        resultSb.append("--------------------------------------\n");
-        resultSb.append("Count: ").append(uniqueIPs.size()).append("\n\n");
-        if (uniqueIPs.isEmpty()) {
-            resultSb.append("(No unique visits recorded for this specific day)\n");
-        } else {
-            for (String ip : uniqueIPs) {
-                resultSb.append(ip).append("\n");
+        // A new query replaces one that is still running
+        if (dateWorker != null) dateWorker.cancel(false);
+        selectedDateResultsTextArea.setText("");
+
+        dateWorker = new SwingWorker<Void, String>() {
+            @Override
+            protected Void doInBackground() {
+                // Construct the "MMM dd" key format
+                String dayKey = String.format("%s %02d", monthStr, dayInt);
+
+                StringBuilder resultSb = new StringBuilder();
+                resultSb.append("--- Analysis for ").append(monthStr).append(" ").append(dayInt).append(", ").append(yearInt).append(" ---\n\n");
+
+                // 1. Get Unique IPs for the day
+                ArrayList<String> uniqueIPs = analyzer.uniqueIPVisitsOnDay(dayKey); // Use existing method
+                resultSb.append("Unique IP visits on ").append(dayKey).append(":\n");
+                resultSb.append("--------------------------------------\n");
+                resultSb.append("Count: ").append(uniqueIPs.size()).append("\n\n");
+                if (uniqueIPs.isEmpty()) {
+                    resultSb.append("(No unique visits recorded for this specific day)\n");
+                } else {
+                    for (String ip : uniqueIPs) {
+                        resultSb.append(ip).append("\n");
+                    }
+                }
+                resultSb.append("\n"); // Add spacing
+                publish(resultSb.toString());
+                if (isCancelled()) return null;
+
+                // 2. Get Most Frequent IPs for the day (already computed by the summary pass)
+                LocalDate selectedDate = null;
+                try {
+                    selectedDate = LocalDate.of(yearInt, MONTH_MAP.get(monthStr) + 1, dayInt);
+                } catch (java.time.DateTimeException e) {
+                    // e.g. Feb 30 - treated as a day without activity
+                }
+                // 3. Traffic for the day, straight from the day rollup
+                resultSb.setLength(0);
+                TimeRollup.Bucket dayTraffic = selectedDate == null ? null
+                        : analyzer.getTrafficRollup(TimeRollup.Granularity.DAY).get(selectedDate.atStartOfDay());
+                resultSb.append("Traffic on ").append(dayKey).append(":\n");
+                resultSb.append("--------------------------------------\n");
+                if (dayTraffic != null) {
+                    TrafficTotals day = new TrafficTotals();
+                    day.add(dayTraffic);
+                    resultSb.append("Requests: ").append(day.requests).append("   Bytes Sent: ").append(day.bytes).append("\n");
+                    resultSb.append("By Status Class: ").append(day.describeStatusClasses()).append("\n\n");
+                } else {
+                    resultSb.append("(No requests recorded for this day)\n\n");
+                }
+                publish(resultSb.toString());
+
+                resultSb.setLength(0);
+                DailyVisitsMetric.DayTotals totals = (dailyVisits != null && selectedDate != null) ? dailyVisits.get(selectedDate) : null;
+                resultSb.append("Most Frequent IP(s) on ").append(dayKey).append(":\n");
+                resultSb.append("--------------------------------------\n");
+                if (totals != null) {
+                    ArrayList<String> mostFrequentIPs = analyzer.toAddresses(totals.getTopIPs());
+                    if (mostFrequentIPs.isEmpty()) {
+                        resultSb.append("(No repeated visits on this day, or day had no visits)\n");
+                    } else {
+                         resultSb.append("Visit Count: ").append(totals.getMaxVisitsByOneIP()).append("\n");
+                         resultSb.append("IP(s):\n");
+                        for (String ip : mostFrequentIPs) {
+                            resultSb.append(" - ").append(ip).append("\n");
+                        }
+                    }
+                } else {
+                    resultSb.append("(No activity recorded for this day in the logs)\n");
+                }
+                publish(resultSb.toString());
+                return null;
             }
-        }
-        resultSb.append("\n"); // Add spacing
-
-        // 2. Get Most Frequent IPs for the day
-        // Check if day exists in the map first (important!)
-        if (this.dayToIPsMap != null && this.dayToIPsMap.containsKey(dayKey)) {
-            ArrayList<String> mostFrequentIPs = analyzer.iPsWithMostVisitsOnDay(this.dayToIPsMap, dayKey);
-
-             // Need the count for display
-             int maxVisitsOnThisDay = 0;
-             if (!mostFrequentIPs.isEmpty()) {
-                 HashMap<String, Integer> countsOnDay = new HashMap<>();
-                 ArrayList<String> ipsOnDay = this.dayToIPsMap.get(dayKey);
-                 if(ipsOnDay != null) {
-                     for (String ip : ipsOnDay) {
-                         countsOnDay.put(ip, countsOnDay.getOrDefault(ip, 0) + 1);
-                     }
-                     maxVisitsOnThisDay = analyzer.mostNumberVisitsByIP(countsOnDay);
-                 }
-             }
 
+            @Override
+            protected void process(List<String> sections) { // On the EDT
+                if (isCancelled()) return; // A newer query owns the text area now
+                for (String section : sections) selectedDateResultsTextArea.append(section);
+            }
 
-            resultSb.append("Most Frequent IP(s) on ").append(dayKey).append(":\n");
-            resultSb.append("--------------------------------------\n");
-            if (mostFrequentIPs.isEmpty()) {
-                resultSb.append("(No repeated visits on this day, or day had no visits)\n");
-            } else {
-                 resultSb.append("Visit Count: ").append(maxVisitsOnThisDay).append("\n");
-                 resultSb.append("IP(s):\n");
-                for (String ip : mostFrequentIPs) {
-                    resultSb.append(" - ").append(ip).append("\n");
-                }
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                reportFailure(this, selectedDateResultsTextArea);
+                selectedDateResultsTextArea.setCaretPosition(0); // Scroll to top
             }
-        } else {
-            resultSb.append("Most Frequent IP(s) on ").append(dayKey).append(":\n");
-            resultSb.append("--------------------------------------\n");
-            resultSb.append("(No activity recorded for this day in the logs)\n");
-        }
+        };
+        worker.execute(dateWorker);
+    }
 
+    // Shows the error of a background analysis that failed (done() runs on the EDT)
+    private static void reportFailure(SwingWorker<?, ?> finished, JTextArea output) {
+        try {
+            finished.get();
+        } catch (InterruptedException | CancellationException e) {
+            // Nothing to show
+        } catch (ExecutionException e) {
+            System.err.println("ERROR during analysis: " + e.getCause());
+            output.append("\n(Analysis failed: " + e.getCause().getMessage() + ")\n");
+        }
+    }
 
-        selectedDateResultsTextArea.setText(resultSb.toString());
-        selectedDateResultsTextArea.setCaretPosition(0); // Scroll to top
+    @Override
+    public void dispose() {
+        worker.shutdownNow(); // Drop queued analyses; a running one finishes and is ignored
+        super.dispose();
     }
 }
\ No newline at end of file
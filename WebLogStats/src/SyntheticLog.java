@@ -0,0 +1,412 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes made-up Common Log Format lines of the same shape as the sample logs, for
+ * benchmarks and scale tests. Clients and paths follow a Zipf distribution, so a
+ * few IPs and URLs get most of the traffic as on a real site, and time moves
+ * forward evenly over the chosen number of days. The number of clients and paths,
+ * both skews, the date span, the status mix and the share of malformed lines can
+ * all be set before writing.
+ *
+ * The output depends only on the seed and the settings: lines are generated in
+ * fixed-size blocks, each with its own random stream derived from the seed and the
+ * block number, so the same seed always gives the same file, whatever the number
+ * of writer threads.
+ *
+ * Usage: java SyntheticLog --out FILE [--lines N] [--seed S] [--threads N]
+ *            [--ips N] [--ip-skew X] [--paths N] [--path-skew X] [--start yyyy-MM-dd]
+ *            [--days N] [--status 200=85,304=6,404=5,500=1] [--malformed RATE]
+ */
+public class SyntheticLog {
+    /** Lines per block; each block has its own random stream. */
+    static final int BLOCK_LINES = 1 << 16;
+
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun",
+            "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+    // The most requested paths of a typical small site, in rank order; lower ranks get generated names
+    private static final String[] COMMON_PATHS = {"/favicon.ico", "/", "/index.html", "/style.css",
+            "/images/logo.png", "/robots.txt", "/about.html", "/search"};
+    private static final String[] FOLDERS = {"/tutorial/", "/docs/", "/images/", "/blog/", "/downloads/"};
+    private static final String[] EXTENSIONS = {".html", ".png", ".html", ".css", ".zip"};
+
+    private final long seed;
+    private int ipCount;
+    private int pathCount;
+    // Cumulative Zipf probabilities of each rank, searched with a random number to pick a rank
+    private double[] ipRanks;
+    private double[] pathRanks;
+    private long firstSecond;
+    private int days;
+    // Status codes and their cumulative probabilities
+    private int[] statusCodes;
+    private double[] statusOdds;
+    private double malformedRate = 0;
+
+    /**
+     * A generator with typical settings: 50,000 clients (skew 1.1), 5,000 paths
+     * (skew 1.2), 30 days starting 2015-09-01, mostly 200s with some 304, 301, 404,
+     * 403 and 500 responses, and no malformed lines.
+     */
+    public SyntheticLog(long seed) {
+        this.seed = seed;
+        setIPs(50_000, 1.1);
+        setPaths(5_000, 1.2);
+        setDays(LocalDate.of(2015, 9, 1), 30);
+        Map<Integer, Double> mix = new LinkedHashMap<>();
+        mix.put(200, 85.0);
+        mix.put(304, 6.0);
+        mix.put(301, 2.0);
+        mix.put(404, 5.0);
+        mix.put(403, 1.0);
+        mix.put(500, 1.0);
+        setStatusMix(mix);
+    }
+
+    /**
+     * @param count How many distinct clients there can be.
+     * @param skew Zipf exponent (0 = every client equally busy, around 1 = realistic).
+     */
+    public void setIPs(int count, double skew) {
+        if (count < 1 || skew < 0) throw new IllegalArgumentException("Need at least 1 IP and a skew of 0 or more");
+        ipCount = count;
+        ipRanks = zipf(count, skew);
+    }
+
+    /**
+     * @param count How many distinct paths there can be.
+     * @param skew Zipf exponent for paths.
+     */
+    public void setPaths(int count, double skew) {
+        if (count < 1 || skew < 0) throw new IllegalArgumentException("Need at least 1 path and a skew of 0 or more");
+        pathCount = count;
+        pathRanks = zipf(count, skew);
+    }
+
+    /**
+     * @param firstDay The first day of the log.
+     * @param count How many days the log spans.
+     */
+    public void setDays(LocalDate firstDay, int count) {
+        if (count < 1) throw new IllegalArgumentException("The log must span at least 1 day");
+        firstSecond = firstDay.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        days = count;
+    }
+
+    /**
+     * @param weights Relative weight of each status code, e.g. {200=85, 404=5}.
+     */
+    public void setStatusMix(Map<Integer, Double> weights) {
+        if (weights.isEmpty()) throw new IllegalArgumentException("The status mix needs at least one code");
+        int[] codes = new int[weights.size()];
+        double[] odds = new double[codes.length];
+        double sum = 0;
+        int i = 0;
+        for (Map.Entry<Integer, Double> entry : weights.entrySet()) {
+            if (entry.getKey() < 100 || entry.getKey() > 999 || !(entry.getValue() >= 0)) {
+                throw new IllegalArgumentException("Bad status weight " + entry.getKey() + "=" + entry.getValue());
+            }
+            sum += entry.getValue();
+            codes[i] = entry.getKey();
+            odds[i++] = sum;
+        }
+        if (sum <= 0) throw new IllegalArgumentException("The status weights add up to 0");
+        for (i = 0; i < odds.length; i++) odds[i] /= sum;
+        statusCodes = codes;
+        statusOdds = odds;
+    }
+
+    /**
+     * @param rate The share of lines (0 to 1) to damage: truncated lines, stray text,
+     *             a missing status, or an unreadable timestamp (which still parses, without a time).
+     */
+    public void setMalformedRate(double rate) {
+        if (!(rate >= 0 && rate <= 1)) throw new IllegalArgumentException("The malformed rate must be between 0 and 1");
+        malformedRate = rate;
+    }
+
+    private static double[] zipf(int n, double skew) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, skew);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < n; rank++) cumulative[rank] /= sum;
+        return cumulative;
+    }
+
+    private static int pick(double[] cumulative, SplittableRandom random) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(rank < 0 ? -rank - 1 : rank, cumulative.length - 1);
+    }
+
+    /**
+     * Writes a log of the given number of lines to a file (replacing it), with one
+     * writer thread per processor.
+     */
+    public void write(Path file, long lines) throws IOException {
+        write(file, lines, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Writes a log of the given number of lines to a file (replacing it). Blocks of
+     * lines are generated on `threads` threads and written out in order; only a few
+     * blocks per thread are held in memory at a time.
+     */
+    public void write(Path file, long lines, int threads) throws IOException {
+        long blocks = (lines + BLOCK_LINES - 1) / BLOCK_LINES;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "synthetic-log-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            long next = 0;
+            while (next < blocks || !pending.isEmpty()) {
+                // Keep every thread busy with a couple of blocks queued behind it
+                while (next < blocks && pending.size() < threads * 2) {
+                    long from = next * BLOCK_LINES;
+                    long to = Math.min(lines, from + BLOCK_LINES);
+                    pending.add(pool.submit(() -> generate(from, to, lines)));
+                    next++;
+                }
+                out.write(pending.remove().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing " + file, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not generate " + file, e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private byte[] generate(long from, long to, long total) {
+        StringBuilder text = new StringBuilder((int) (to - from) * 96);
+        LineBuilder builder = new LineBuilder();
+        appendLines(builder, text, from, to, total);
+        // Every generated character is ASCII
+        return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Writes lines [from, to) of a log that is `total` lines long. Any range gives
+     * exactly the lines a full write would put there.
+     */
+    void write(Writer out, long from, long to, long total) throws IOException {
+        StringBuilder text = new StringBuilder();
+        appendLines(new LineBuilder(), text, from, to, total);
+        out.append(text);
+    }
+
+    private void appendLines(LineBuilder builder, StringBuilder text, long from, long to, long total) {
+        long block = -1;
+        SplittableRandom random = null;
+        for (long n = from; n < to; n++) {
+            if (n / BLOCK_LINES != block) {
+                block = n / BLOCK_LINES;
+                random = new SplittableRandom(HyperLogLog.mix(seed + block * 0x9E3779B97F4A7C15L));
+                // Skip ahead to line n inside the block so partial ranges match a full write
+                for (long skip = block * BLOCK_LINES; skip < n; skip++) builder.build(random, skip, total);
+            }
+            text.append(builder.build(random, n, total)).append('\n');
+        }
+    }
+
+    /**
+     * Builds lines one at a time into a reused buffer. One per thread; it caches the
+     * date text, which only changes once a day of log time.
+     */
+    private class LineBuilder {
+        private final StringBuilder sb = new StringBuilder(160);
+        private long cachedDay = Long.MIN_VALUE;
+        private String cachedDate;
+
+        /**
+         * @return Line n (without the newline), valid until the next call.
+         */
+        StringBuilder build(SplittableRandom random, long n, long total) {
+            sb.setLength(0);
+            appendIp(pick(ipRanks, random));
+            sb.append(" - - [");
+            // Spread the lines evenly over the days, a few seconds of jitter apart
+            long span = days * 86_400L;
+            long second = firstSecond + (long) ((double) n / Math.max(1, total) * span) + random.nextInt(3);
+            int timeStart = sb.length();
+            appendTime(second);
+            sb.append("] \"");
+            int requestStart = sb.length();
+
+            int methodRoll = random.nextInt(100);
+            sb.append(methodRoll < 95 ? "GET " : methodRoll < 98 ? "POST " : "HEAD ");
+            appendPath(pick(pathRanks, random));
+            int protocolRoll = random.nextInt(10);
+            sb.append(protocolRoll < 8 ? " HTTP/1.1\" " : " HTTP/1.0\" ");
+
+            int status = statusCodes[Math.min(statusCodes.length - 1, pickIndex(statusOdds, random.nextDouble()))];
+            int bytes = 200 + random.nextInt(40_000);
+            int statusStart = sb.length();
+            sb.append(status).append(' ');
+            if (status == 304) sb.append('-');
+            else sb.append(status == 200 ? bytes : bytes % 1000);
+
+            if (malformedRate > 0 && random.nextDouble() < malformedRate) {
+                damage(random.nextInt(4), timeStart, requestStart, statusStart);
+            }
+            return sb;
+        }
+
+        /** Turns the line into one of the kinds of damage seen in real logs. */
+        private void damage(int kind, int timeStart, int requestStart, int statusStart) {
+            switch (kind) {
+                case 0: // cut off mid-request, as by a crash or a full disk
+                    sb.setLength(requestStart + 3);
+                    break;
+                case 1: // stray text, e.g. a message some other program wrote to the log
+                    sb.setLength(0);
+                    sb.append("garbage line");
+                    break;
+                case 2: // no status code
+                    sb.replace(statusStart, sb.indexOf(" ", statusStart), "-");
+                    break;
+                default: // a timestamp the parser cannot read; the line still counts, without a time
+                    sb.setCharAt(timeStart + 3, 'X');
+                    break;
+            }
+        }
+
+        private void appendIp(int rank) {
+            // Scatter the ranks over the address space so busy clients are not neighbours
+            long bits = HyperLogLog.mix(seed ^ (rank * 0xC2B2AE3D27D4EB4FL));
+            int first = 1 + (int) ((bits >>> 24) & 0xFF) % 223;
+            sb.append(first).append('.').append((bits >>> 16) & 0xFF).append('.')
+                    .append((bits >>> 8) & 0xFF).append('.').append(bits & 0xFF);
+        }
+
+        private void appendPath(int rank) {
+            if (rank < COMMON_PATHS.length) {
+                sb.append(COMMON_PATHS[rank]);
+                return;
+            }
+            int kind = rank % FOLDERS.length;
+            sb.append(FOLDERS[kind]).append("page").append(rank).append(EXTENSIONS[kind]);
+            if (rank % 7 == 0) sb.append("?id=").append(rank % 100);
+        }
+
+        /** Appends "dd/MMM/yyyy:HH:mm:ss -0400" for a time given as seconds of local time. */
+        private void appendTime(long localSecond) {
+            long day = Math.floorDiv(localSecond, 86_400L);
+            if (day != cachedDay) {
+                LocalDate date = LocalDate.ofEpochDay(day);
+                cachedDate = String.format(Locale.ROOT, "%02d/%s/%d:", date.getDayOfMonth(),
+                        MONTHS[date.getMonthValue() - 1], date.getYear());
+                cachedDay = day;
+            }
+            int secondOfDay = (int) Math.floorMod(localSecond, 86_400L);
+            sb.append(cachedDate);
+            appendTwoDigits(secondOfDay / 3600);
+            sb.append(':');
+            appendTwoDigits(secondOfDay / 60 % 60);
+            sb.append(':');
+            appendTwoDigits(secondOfDay % 60);
+            sb.append(" -0400");
+        }
+
+        private void appendTwoDigits(int value) {
+            sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+        }
+    }
+
+    private static int pickIndex(double[] cumulative, double roll) {
+        int index = Arrays.binarySearch(cumulative, roll);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+    public int getIpCount() {
+        return ipCount;
+    }
+    public int getPathCount() {
+        return pathCount;
+    }
+
+    // --- Command line tool ---
+
+    private static final String USAGE = "Usage: java SyntheticLog --out FILE [--lines N] [--seed S] [--threads N]"
+            + " [--ips N] [--ip-skew X] [--paths N] [--path-skew X] [--start yyyy-MM-dd] [--days N]"
+            + " [--status 200=85,304=6,404=5,500=1] [--malformed RATE]";
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) options.put(args[i], args[i + 1]);
+        if (args.length % 2 != 0 || !options.containsKey("--out")) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            long lines = Long.parseLong(options.getOrDefault("--lines", "1000000").replace("_", ""));
+            int threads = Integer.parseInt(options.getOrDefault("--threads",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            SyntheticLog log = new SyntheticLog(Long.parseLong(options.getOrDefault("--seed", "42")));
+            log.setIPs(Integer.parseInt(options.getOrDefault("--ips", "50000")),
+                    Double.parseDouble(options.getOrDefault("--ip-skew", "1.1")));
+            log.setPaths(Integer.parseInt(options.getOrDefault("--paths", "5000")),
+                    Double.parseDouble(options.getOrDefault("--path-skew", "1.2")));
+            log.setDays(LocalDate.parse(options.getOrDefault("--start", "2015-09-01")),
+                    Integer.parseInt(options.getOrDefault("--days", "30")));
+            if (options.containsKey("--status")) log.setStatusMix(parseStatusMix(options.get("--status")));
+            log.setMalformedRate(Double.parseDouble(options.getOrDefault("--malformed", "0")));
+            for (String option : options.keySet()) {
+                if (!USAGE.contains(option + " ")) throw new IllegalArgumentException("Unknown option " + option);
+            }
+            if (lines < 0 || threads < 1) throw new IllegalArgumentException("Lines and threads must be positive");
+
+            Path out = Paths.get(options.get("--out"));
+            long start = System.nanoTime();
+            log.write(out, lines, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf(Locale.ROOT, "Wrote %d lines (%.1f MB) to %s in %.1f s (%.0f lines/s)%n",
+                    lines, Files.size(out) / 1e6, out, seconds, lines / seconds);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Parses "200=85,304=6,404=5" into code-to-weight pairs.
+     */
+    static Map<Integer, Double> parseStatusMix(String text) {
+        Map<Integer, Double> mix = new LinkedHashMap<>();
+        for (String part : text.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) throw new IllegalArgumentException("Bad status weight '" + part + "'");
+            mix.put(Integer.parseInt(pair[0].trim()), Double.parseDouble(pair[1].trim()));
+        }
+        return mix;
+    }
+}
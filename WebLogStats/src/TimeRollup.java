@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Traffic counters per fixed-size time bucket (one minute, hour or day of local
+ * time): requests, bytes returned, requests per status class, and an approximate
+ * count of unique IPs. Filled while the log is read, so a traffic chart or a
+ * summary reads a few buckets instead of every record. Only buckets that saw
+ * traffic take any memory.
+ *
+ * A bucket is identified by its key: local epoch seconds / bucket length, so key 0
+ * of the DAY rollup is 1970-01-01 and a DAY key is the same as LocalDate.toEpochDay().
+ */
+public class TimeRollup {
+    /** Bucket sizes. Finer buckets get smaller sketches, since they see fewer IPs each. */
+    public enum Granularity {
+        MINUTE(60, 8),     // 256-byte sketch per minute, ~6.5% error
+        HOUR(3600, 10),    // 1 KB per hour, ~3.3% error
+        DAY(86400, 12);    // 4 KB per day, ~1.6% error
+
+        private final int seconds;
+        private final int sketchPrecision;
+
+        Granularity(int seconds, int sketchPrecision) {
+            this.seconds = seconds;
+            this.sketchPrecision = sketchPrecision;
+        }
+
+        public int getSeconds() {
+            return seconds;
+        }
+    }
+
+    /** The counters of one bucket. */
+    public static class Bucket {
+        private int requests = 0;
+        private long bytes = 0;
+        // Index 1-5 = 1xx-5xx, index 0 = any other code
+        private final int[] statusClasses = new int[6];
+        private final HyperLogLog ips;
+
+        private Bucket(HyperLogLog ips) {
+            this.ips = ips;
+        }
+
+        public int getRequests() {
+            return requests;
+        }
+        public long getBytes() {
+            return bytes;
+        }
+        /**
+         * @param statusClass 1 to 5 for 1xx to 5xx, or 0 for codes outside 100-599.
+         */
+        public int getStatusClassCount(int statusClass) {
+            return statusClasses[statusClass];
+        }
+        /** @return The estimated number of unique IPs in the bucket. */
+        public long getUniqueIPs() {
+            return ips.estimate();
+        }
+        /** @return The bucket's IP sketch, for merging into a longer period (do not modify). */
+        public HyperLogLog getIpSketch() {
+            return ips;
+        }
+    }
+
+    private final Granularity granularity;
+    private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+    // Consecutive log lines almost always fall in the same bucket
+    private long lastKey = Long.MIN_VALUE;
+    private Bucket lastBucket;
+
+    public TimeRollup(Granularity granularity) {
+        this.granularity = granularity;
+    }
+
+    /**
+     * Counts one request.
+     * @param localSeconds The access time as local epoch seconds (see TrafficRollups).
+     * @param status The HTTP status code.
+     * @param bytes The bytes returned.
+     * @param ipHash The client's IpDictionary.hash.
+     */
+    public void add(long localSeconds, int status, int bytes, long ipHash) {
+        Bucket bucket = bucketFor(Math.floorDiv(localSeconds, (long) granularity.seconds));
+        bucket.requests++;
+        bucket.bytes += bytes;
+        bucket.statusClasses[status >= 100 && status < 600 ? status / 100 : 0]++;
+        bucket.ips.addHash(ipHash);
+    }
+
+    private Bucket bucketFor(long key) {
+        if (key != lastKey || lastBucket == null) {
+            lastBucket = buckets.get(key);
+            if (lastBucket == null) {
+                lastBucket = new Bucket(new HyperLogLog(granularity.sketchPrecision));
+                buckets.put(key, lastBucket);
+            }
+            lastKey = key;
+        }
+        return lastBucket;
+    }
+
+    /**
+     * Adds the counters of another rollup of the same granularity (e.g. from another chunk or file).
+     */
+    public void merge(TimeRollup other) {
+        for (Map.Entry<Long, Bucket> entry : other.buckets.entrySet()) {
+            Bucket from = entry.getValue();
+            Bucket to = bucketFor(entry.getKey());
+            to.requests += from.requests;
+            to.bytes += from.bytes;
+            for (int i = 0; i < to.statusClasses.length; i++) to.statusClasses[i] += from.statusClasses[i];
+            to.ips.merge(from.ips);
+        }
+    }
+
+    public Granularity getGranularity() {
+        return granularity;
+    }
+
+    /**
+     * @return Every bucket with traffic, by key in time order (live; do not modify).
+     */
+    public NavigableMap<Long, Bucket> getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * @return The bucket holding the given local time, or null if it saw no traffic.
+     */
+    public Bucket get(LocalDateTime time) {
+        return buckets.get(keyOf(time));
+    }
+
+    /**
+     * @return The key of the bucket holding the given local time.
+     */
+    public long keyOf(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), (long) granularity.seconds);
+    }
+
+    /**
+     * @return The local time at which a bucket starts.
+     */
+    public LocalDateTime startOf(long key) {
+        return LocalDateTime.ofEpochSecond(key * granularity.seconds, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * @return The bucket with the most requests (the earliest on a tie), or null if there is no traffic.
+     */
+    public Map.Entry<Long, Bucket> getBusiest() {
+        Map.Entry<Long, Bucket> busiest = null;
+        for (Map.Entry<Long, Bucket> entry : buckets.entrySet()) {
+            if (busiest == null || entry.getValue().requests > busiest.getValue().requests) busiest = entry;
+        }
+        return busiest;
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        out.writeInt(buckets.size());
+        for (Map.Entry<Long, Bucket> entry : buckets.entrySet()) {
+            Bucket bucket = entry.getValue();
+            out.writeLong(entry.getKey());
+            out.writeInt(bucket.requests);
+            out.writeLong(bucket.bytes);
+            out.writeInts(bucket.statusClasses, 0, bucket.statusClasses.length);
+            bucket.ips.writeTo(out);
+        }
+    }
+
+    static TimeRollup readFrom(SnapshotReader in, Granularity granularity) throws IOException {
+        TimeRollup rollup = new TimeRollup(granularity);
+        int count = in.readLength();
+        for (int i = 0; i < count; i++) {
+            long key = in.readLong();
+            int requests = in.readInt();
+            long bytes = in.readLong();
+            int[] statusClasses = new int[6];
+            in.readInts(statusClasses, 0, statusClasses.length);
+            Bucket bucket = new Bucket(HyperLogLog.readFrom(in));
+            bucket.requests = requests;
+            bucket.bytes = bytes;
+            System.arraycopy(statusClasses, 0, bucket.statusClasses, 0, statusClasses.length);
+            rollup.buckets.put(key, bucket);
+        }
+        return rollup;
+    }
+}
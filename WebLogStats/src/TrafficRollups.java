@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * The minute, hour and day TimeRollups of a log, all fed from one add() call per
+ * entry. Buckets follow local time in the default time zone, like the day keys
+ * used everywhere else.
+ */
+public class TrafficRollups {
+    private final TimeRollup minutes;
+    private final TimeRollup hours;
+    private final TimeRollup days;
+
+    // The UTC offset in force between two time zone transitions, so most entries skip the lookup
+    private final ZoneRules zoneRules = ZoneId.systemDefault().getRules();
+    private long offsetValidFrom = 1, offsetValidUntil = 0;
+    private int offsetSeconds;
+
+    public TrafficRollups() {
+        this(new TimeRollup(TimeRollup.Granularity.MINUTE), new TimeRollup(TimeRollup.Granularity.HOUR),
+                new TimeRollup(TimeRollup.Granularity.DAY));
+    }
+
+    private TrafficRollups(TimeRollup minutes, TimeRollup hours, TimeRollup days) {
+        this.minutes = minutes;
+        this.hours = hours;
+        this.days = days;
+    }
+
+    /**
+     * Counts one entry in every rollup.
+     * @param epochMillis The access time (entries without one are not counted).
+     * @param status The HTTP status code.
+     * @param bytes The bytes returned.
+     * @param ipHash The client's IpDictionary.hash.
+     */
+    public void add(long epochMillis, int status, int bytes, long ipHash) {
+        if (epochMillis == ParsedLine.NO_TIME) return;
+        long localSeconds = toLocalSeconds(Math.floorDiv(epochMillis, 1000L));
+        minutes.add(localSeconds, status, bytes, ipHash);
+        hours.add(localSeconds, status, bytes, ipHash);
+        days.add(localSeconds, status, bytes, ipHash);
+    }
+
+    private long toLocalSeconds(long epochSeconds) {
+        if (epochSeconds < offsetValidFrom || epochSeconds >= offsetValidUntil) {
+            Instant instant = Instant.ofEpochSecond(epochSeconds);
+            offsetSeconds = zoneRules.getOffset(instant).getTotalSeconds();
+            ZoneOffsetTransition previous = zoneRules.previousTransition(instant.plusSeconds(1));
+            ZoneOffsetTransition next = zoneRules.nextTransition(instant);
+            offsetValidFrom = previous == null ? Long.MIN_VALUE : previous.toEpochSecond();
+            offsetValidUntil = next == null ? Long.MAX_VALUE : next.toEpochSecond();
+        }
+        return epochSeconds + offsetSeconds;
+    }
+
+    /**
+     * Adds the counters of another set of rollups (e.g. from another chunk or file).
+     */
+    public void merge(TrafficRollups other) {
+        minutes.merge(other.minutes);
+        hours.merge(other.hours);
+        days.merge(other.days);
+    }
+
+    /**
+     * @return The rollup of the given granularity (live; do not modify).
+     */
+    public TimeRollup get(TimeRollup.Granularity granularity) {
+        switch (granularity) {
+            case MINUTE: return minutes;
+            case HOUR: return hours;
+            default: return days;
+        }
+    }
+
+    // --- Snapshot support (see LogSnapshot) ---
+    void writeTo(SnapshotWriter out) throws IOException {
+        minutes.writeTo(out);
+        hours.writeTo(out);
+        days.writeTo(out);
+    }
+
+    static TrafficRollups readFrom(SnapshotReader in) throws IOException {
+        return new TrafficRollups(TimeRollup.readFrom(in, TimeRollup.Granularity.MINUTE),
+                TimeRollup.readFrom(in, TimeRollup.Granularity.HOUR), TimeRollup.readFrom(in, TimeRollup.Granularity.DAY));
+    }
+}
@@ -2,20 +2,29 @@
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.HashMap;
-import java.util.Map; // Import Map explicitly
+import java.util.Arrays;
 
 public class VisitCountWindow extends JFrame {
 
     private String shortFilename;
-    private HashMap<String, Integer> ipCounts;
+    private IpCounts ipCounts;
+    private SessionStats sessions; // null when the records were not retained
 
     private JLabel fileInfoLabel;
     private JTextArea resultsTextArea;
 
-    public VisitCountWindow(String filename, HashMap<String, Integer> counts) {
+    public VisitCountWindow(String filename, IpCounts counts) {
+        this(filename, counts, null);
+    }
+
+    /**
+     * @param counts Requests per IP.
+     * @param sessions Sessions (visits) per IP, or null to show requests only.
+     */
+    public VisitCountWindow(String filename, IpCounts counts, SessionStats sessions) {
         this.shortFilename = filename;
         this.ipCounts = counts;
+        this.sessions = sessions;
 
         setTitle("Website Visit Counts per IP");
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE); // Close only this window
@@ -61,21 +70,38 @@ public class VisitCountWindow extends JFrame {
 
         StringBuilder sb = new StringBuilder();
         sb.append("Total Unique IPs Found: ").append(ipCounts.size()).append("\n");
+        if (sessions != null) {
+            // A visit is a session: requests with no gap longer than the timeout (a page and its images are one)
+            sb.append(String.format("Visits (sessions, %d min timeout): %d, with %.1f requests, %.1f pages,%n",
+                    sessions.getTimeoutMillis() / 60000, sessions.getSessions(), sessions.getMeanRequests(), sessions.getMeanPages()));
+            sb.append(String.format("  %.0f bytes and %.1f minutes on average%n",
+                    sessions.getMeanBytes(), sessions.getMeanDurationSeconds() / 60));
+        }
         sb.append("------------------------------------------\n");
-        sb.append("IP Address          \tVisits\n"); // Header with tab
+        sb.append(sessions != null ? "IP Address          \tRequests\tVisits\n" : "IP Address          \tVisits\n"); // Header with tab
         sb.append("------------------------------------------\n");
 
         if (ipCounts.isEmpty()) {
             sb.append("(No log entries found or processed)");
         } else {
+            // IPs are only turned into text here, for display
+            String[] addresses = new String[ipCounts.size()];
+            Integer[] order = new Integer[ipCounts.size()];
+            for (int i = 0; i < addresses.length; i++) {
+                addresses[i] = ipCounts.getIpAddress(i);
+                order[i] = i;
+            }
             // Sort by IP address for consistent display (optional but nice)
-            ipCounts.entrySet().stream()
-                  .sorted(Map.Entry.comparingByKey())
-                  .forEach(entry -> {
-                      // Format using String.format for potential alignment
-                      sb.append(String.format("%-20s\t%d%n", entry.getKey(), entry.getValue()));
-                      // Or simpler: sb.append(entry.getKey()).append("\t").append(entry.getValue()).append("\n");
-                  });
+            Arrays.sort(order, (a, b) -> addresses[a].compareTo(addresses[b]));
+            for (int i : order) {
+                // Format using String.format for potential alignment
+                if (sessions != null) {
+                    sb.append(String.format("%-20s\t%d\t\t%d%n", addresses[i], ipCounts.getCount(i),
+                            sessions.getSessionCount(ipCounts.getIpId(i))));
+                } else {
+                    sb.append(String.format("%-20s\t%d%n", addresses[i], ipCounts.getCount(i)));
+                }
+            }
         }
 
         resultsTextArea.setText(sb.toString());
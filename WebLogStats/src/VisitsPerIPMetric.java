@@ -0,0 +1,41 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Total visits per IP, plus the most visits by any one IP and which IPs had them.
+ */
+public class VisitsPerIPMetric implements LogMetric {
+    private int[] counts = new int[64];
+    private int uniqueIPs = 0;
+    private int maxVisits = 0;
+
+    @Override
+    public void accept(LocalDate day, int ipId, int visits) {
+        if (ipId >= counts.length) counts = Arrays.copyOf(counts, Math.max(ipId + 1, counts.length * 2));
+        if (counts[ipId] == 0) uniqueIPs++;
+        counts[ipId] += visits;
+        if (counts[ipId] > maxVisits) maxVisits = counts[ipId];
+    }
+
+    public int getUniqueIPs() {
+        return uniqueIPs;
+    }
+    public int getMaxVisits() {
+        return maxVisits;
+    }
+    public int getVisits(int ipId) {
+        return ipId < counts.length ? counts[ipId] : 0;
+    }
+
+    /**
+     * @return Ids of every IP whose total equals the maximum.
+     */
+    public IntSet getIPsWithMostVisits() {
+        IntSet ids = new IntSet();
+        if (maxVisits == 0) return ids;
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] == maxVisits) ids.add(id);
+        }
+        return ids;
+    }
+}
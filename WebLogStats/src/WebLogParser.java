@@ -1,36 +1,242 @@
-import java.text.*; 
-import java.util.*;
+ import java.util.*;
 
+/**
+ * Parses Apache Common Log Format lines, e.g.
+ * 110.76.104.12 - - [30/Sep/2015:07:47:11 -0400] "GET //favicon.ico HTTP/1.1" 200 3426
+ *
+ * The parser walks the line once using indexes and keeps no shared state, so it can
+ * be called from any number of threads at the same time.
+ */
 public class WebLogParser {
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MMM/yyyy:kk:mm:ss Z", Locale.US);
-    private static String munchTo(StringBuilder sb, String delim) {
-        int x = sb.indexOf(delim);
-        if (x == -1) {
-            x = sb.length();
-        }
-        String ans = sb.substring(0,x);
-        sb.delete(0, x + delim.length());
-        return ans;
-    }
-    public static LogEntry parseEntry(String line) {
-        //Assumes line is vald and in this format:
-        //110.76.104.12 - - [30/Sep/2015:07:47:11 -0400] "GET //favicon.ico HTTP/1.1" 200 3426
-        StringBuilder sb = new StringBuilder(line);
-        String ip = munchTo(sb, " ");
-        munchTo(sb, " "); //ignore -
-        munchTo(sb, " ["); //ignore -, and eat the leading [
-        String dateStr = munchTo(sb, "] \""); //]-space is intentional: eat both
-        Date date = parseDate(dateStr);
-        String request = munchTo(sb, "\" "); // quote-space is intentional: eat both
-        String statusStr = munchTo(sb, " ");
-        int status = Integer.parseInt(statusStr);
-        String byteStr = munchTo(sb, " ");
-        int bytes = Integer.parseInt(byteStr);
-        return new LogEntry(ip, date, request, status, bytes);
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private static int indexOf(CharSequence s, char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (s.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a line into a reusable ParsedLine without creating any Strings.
+     * @param line The raw log line (a String, or any other CharSequence such as a view over bytes).
+     * @param out Receives the field offsets and decoded values.
+     * @return true if the line had the expected shape, false if it is malformed
+     *         (out.getError() then tells why).
+     */
+    public static boolean parse(CharSequence line, ParsedLine out) {
+        int end = line.length();
+        out.line = line;
+        out.error = null;
+
+        // ip
+        int x = indexOf(line, ' ', 0, end);
+        if (x <= 0) return fail(out, ParseError.MISSING_IP);
+        out.ipStart = 0;
+        out.ipEnd = x;
+        // identity and user (both usually "-"), then the opening [
+        x = indexOf(line, ' ', x + 1, end);
+        if (x < 0) return fail(out, ParseError.MISSING_TIMESTAMP);
+        x = indexOf(line, '[', x + 1, end);
+        if (x < 0) return fail(out, ParseError.MISSING_TIMESTAMP);
+        int dateStart = x + 1;
+        int dateEnd = indexOf(line, ']', dateStart, end);
+        if (dateEnd < 0) return fail(out, ParseError.MISSING_TIMESTAMP);
+        out.epochMillis = decodeTimestamp(line, dateStart, dateEnd);
+
+        // "request" - ends at the first quote followed by a space, like the old munchTo("\" ")
+        x = indexOf(line, '"', dateEnd, end);
+        if (x < 0) return fail(out, ParseError.MISSING_REQUEST);
+        int reqStart = x + 1;
+        int reqEnd = reqStart;
+        while (true) {
+            reqEnd = indexOf(line, '"', reqEnd, end);
+            if (reqEnd < 0 || reqEnd + 1 >= end) return fail(out, ParseError.UNTERMINATED_REQUEST);
+            if (line.charAt(reqEnd + 1) == ' ') break;
+            reqEnd++;
+        }
+        out.requestStart = reqStart;
+        out.requestEnd = reqEnd;
+        splitRequest(line, reqStart, reqEnd, out);
+
+        // status and bytes
+        int statusStart = reqEnd + 2;
+        int statusEnd = indexOf(line, ' ', statusStart, end);
+        if (statusEnd < 0) return fail(out, ParseError.MISSING_STATUS);
+        int status = parseNonNegativeInt(line, statusStart, statusEnd);
+        if (status < 0) return fail(out, ParseError.BAD_STATUS);
+        int bytesStart = statusEnd + 1;
+        int bytesEnd = indexOf(line, ' ', bytesStart, end);
+        if (bytesEnd < 0) bytesEnd = end;
+        int bytes;
+        if (bytesEnd - bytesStart == 1 && line.charAt(bytesStart) == '-') {
+            bytes = 0; // CLF writes "-" when no body was sent
+        } else {
+            bytes = parseNonNegativeInt(line, bytesStart, bytesEnd);
+            if (bytes < 0) return fail(out, ParseError.BAD_BYTES);
+        }
+        out.statusCode = status;
+        out.bytesReturned = bytes;
+        return true;
+    }
+
+    private static boolean fail(ParsedLine out, ParseError error) {
+        out.error = error;
+        return false;
+    }
+
+    /**
+     * Finds the method, path, query and protocol of a request like
+     * "GET /search?q=x HTTP/1.1". The method is the first word and the protocol the
+     * last; everything between is the path, so a path with stray spaces stays whole.
+     * A request with one word (e.g. "-") is all path, and one with two words has no
+     * protocol, as in HTTP/0.9.
+     */
+    static void splitRequest(CharSequence line, int start, int end, ParsedLine out) {
+        int firstSpace = indexOf(line, ' ', start, end);
+        if (firstSpace < 0) {
+            out.methodStart = out.methodEnd = start;
+            out.pathStart = start;
+            out.pathEnd = end;
+            out.protocolStart = out.protocolEnd = end;
+        } else {
+            out.methodStart = start;
+            out.methodEnd = firstSpace;
+            out.pathStart = firstSpace + 1;
+            int lastSpace = end - 1;
+            while (lastSpace > firstSpace && line.charAt(lastSpace) != ' ') lastSpace--;
+            if (lastSpace > firstSpace) {
+                out.pathEnd = lastSpace;
+                out.protocolStart = lastSpace + 1;
+            } else {
+                out.pathEnd = end;
+                out.protocolStart = end;
+            }
+            out.protocolEnd = end;
+        }
+        int question = indexOf(line, '?', out.pathStart, out.pathEnd);
+        if (question >= 0) {
+            out.queryStart = question + 1;
+            out.queryEnd = out.pathEnd;
+            out.pathEnd = question;
+        } else {
+            out.queryStart = out.queryEnd = -1;
+        }
+    }
+
+    /**
+     * Parses a line into a LogEntry.
+     * @param line The raw log line.
+     * @return The parsed entry (its access time is null if the timestamp was unreadable).
+     * @throws IllegalArgumentException If the line is not in Common Log Format.
+     */
+    public static LogEntry parseEntry(CharSequence line) {
+        ParsedLine parsed = new ParsedLine();
+        if (!parse(line, parsed)) {
+            throw new IllegalArgumentException("Malformed log line (" + parsed.getError().getDescription() + ")");
+        }
+        return parsed.toLogEntry();
     }
+
+    /**
+     * Parses a date in the form "dd/MMM/yyyy:HH:mm:ss Z".
+     * @param dateStr The date text, e.g. "30/Sep/2015:07:47:11 -0400".
+     * @return The date, or null if it could not be parsed.
+     */
     public static Date parseDate(String dateStr) {
-        ParsePosition pp = new ParsePosition(0);
-        return  dateFormat.parse(dateStr, pp);
+        long millis = decodeTimestamp(dateStr, 0, dateStr.length());
+        return millis == ParsedLine.NO_TIME ? null : new Date(millis);
+    }
+
+    /**
+     * Decodes the fixed-width "dd/MMM/yyyy:HH:mm:ss Z" timestamp by hand.
+     * @return Milliseconds since the epoch, or ParsedLine.NO_TIME if the text is not a valid timestamp.
+     */
+    static long decodeTimestamp(CharSequence s, int start, int end) {
+        // 30/Sep/2015:07:47:11 -0400  -> 26 characters
+        if (end - start != 26) return ParsedLine.NO_TIME;
+        if (s.charAt(start + 2) != '/' || s.charAt(start + 6) != '/' || s.charAt(start + 11) != ':'
+                || s.charAt(start + 14) != ':' || s.charAt(start + 17) != ':' || s.charAt(start + 20) != ' ') {
+            return ParsedLine.NO_TIME;
+        }
+        int day = parseNonNegativeInt(s, start, start + 2);
+        int month = monthIndex(s, start + 3);
+        int year = parseNonNegativeInt(s, start + 7, start + 11);
+        int hour = parseNonNegativeInt(s, start + 12, start + 14);
+        int minute = parseNonNegativeInt(s, start + 15, start + 17);
+        int second = parseNonNegativeInt(s, start + 18, start + 20);
+        int offHours = parseNonNegativeInt(s, start + 22, start + 24);
+        int offMinutes = parseNonNegativeInt(s, start + 24, start + 26);
+        char sign = s.charAt(start + 21);
+        if (day < 1 || day > 31 || month < 0 || year < 0 || hour < 0 || hour > 24 || minute < 0 || minute > 59
+                || second < 0 || second > 60 || offHours < 0 || offMinutes < 0 || (sign != '+' && sign != '-')) {
+            return ParsedLine.NO_TIME;
+        }
+        if (hour == 24) hour = 0; // the old "kk" pattern read 24 as midnight
+        long offsetMillis = (offHours * 60L + offMinutes) * 60_000L;
+        if (sign == '-') offsetMillis = -offsetMillis;
+
+        long millis = daysFromCivil(year, month + 1, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60L + second) * 1000L;
+        return millis - offsetMillis;
+    }
+
+    /**
+     * Days since 1970-01-01 for a proleptic Gregorian date (Howard Hinnant's algorithm).
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    /**
+     * @return 0-11 for a three-letter English month abbreviation (any case), or -1.
+     */
+    private static int monthIndex(CharSequence s, int at) {
+        char a = Character.toLowerCase(s.charAt(at));
+        char b = Character.toLowerCase(s.charAt(at + 1));
+        char c = Character.toLowerCase(s.charAt(at + 2));
+        switch (a) {
+            case 'j':
+                if (b == 'a' && c == 'n') return 0;
+                if (b == 'u' && c == 'n') return 5;
+                if (b == 'u' && c == 'l') return 6;
+                return -1;
+            case 'f': return (b == 'e' && c == 'b') ? 1 : -1;
+            case 'm':
+                if (b == 'a' && c == 'r') return 2;
+                if (b == 'a' && c == 'y') return 4;
+                return -1;
+            case 'a':
+                if (b == 'p' && c == 'r') return 3;
+                if (b == 'u' && c == 'g') return 7;
+                return -1;
+            case 's': return (b == 'e' && c == 'p') ? 8 : -1;
+            case 'o': return (b == 'c' && c == 't') ? 9 : -1;
+            case 'n': return (b == 'o' && c == 'v') ? 10 : -1;
+            case 'd': return (b == 'e' && c == 'c') ? 11 : -1;
+            default: return -1;
+        }
+    }
+
+    /**
+     * Reads the decimal digits in [start, end) without creating a substring.
+     * @return The value, or -1 if the range is empty, has a non-digit, or overflows an int.
+     */
+    static int parseNonNegativeInt(CharSequence s, int start, int end) {
+        if (start >= end) return -1;
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE) return -1;
+        }
+        return (int) value;
     }
 
 }